@@ -1,17 +1,52 @@
 package com.fscallflow.analyzer.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fscallflow.analyzer.correlate.CallJoiner;
 import com.fscallflow.analyzer.correlate.EventCorrelator;
+import com.fscallflow.analyzer.correlate.EventMerger;
+import com.fscallflow.analyzer.correlate.EventSource;
+import com.fscallflow.analyzer.correlate.IncrementalCorrelator;
+import com.fscallflow.analyzer.correlate.MergeJoinCorrelator;
+import com.fscallflow.analyzer.correlate.ShardedCorrelator;
+import com.fscallflow.analyzer.correlate.SharedKeyCallIdStrategy;
 import com.fscallflow.analyzer.model.AnalyzeResult;
-import com.fscallflow.analyzer.parser.FreeSwitchLogAdapter;
 import com.fscallflow.analyzer.model.UnifiedEvent;
+import com.fscallflow.analyzer.parser.FreeSwitchLogAdapter;
+import com.fscallflow.analyzer.parser.LiteralGate;
+import com.fscallflow.analyzer.parser.LogBundleReader;
+import com.fscallflow.analyzer.parser.ParallelLogParser;
+import com.fscallflow.analyzer.store.EventSegmentStore;
+import com.fscallflow.analyzer.store.RawLineStore;
+import com.fscallflow.analyzer.store.ResultCache;
+import com.fscallflow.analyzer.store.SegmentWriter;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
 @RestController
 @RequestMapping("/api/analyze")
@@ -20,18 +55,162 @@ import java.util.List;
 public class AnalyzeController {
 
     private final FreeSwitchLogAdapter logAdapter;
+    private final ParallelLogParser parallelParser;
+    private final LogBundleReader bundleReader;
     private final EventCorrelator correlator;
+    private final ObjectMapper objectMapper;
+    private final ResultCache resultCache;
+    private final EventSegmentStore segmentStore;
+
+    /** 上传文件超过该大小时，先落盘再走 mmap 并行解析 */
+    @Value("${analyzer.parse.parallel-min-bytes:16777216}")
+    private long parallelMinBytes;
+
+    /** 原始行 spool 文件目录，留空用系统临时目录 */
+    @Value("${analyzer.raw-store.dir:}")
+    private String rawStoreDir;
 
     /**
      * 兼容你现有前端：/api/analyze/log2，返回 List<AnalyzeResult>
+     *
+     * sharded=true 时按时间分片关联（跨天的大日志用），不再建全局并查集。
+     * segment 不为空时，把解析好的事件存成该 ID 的事件段（见 /api/segments），之后不用重新上传；
+     * 分片模式下没有全局分组，不能落段，同时给出两者返回 400。
      */
     @PostMapping(value = "/log2", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public List<AnalyzeResult> analyzeLogV2(@RequestPart("file") MultipartFile file) throws Exception {
-        log.info("收到日志文件: name={}, size={}", file.getOriginalFilename(), file.getSize());
-        try (InputStream in = file.getInputStream()) {
-            List<UnifiedEvent> events = logAdapter.parse(in);
-            log.info("解析得到 UnifiedEvent 数量: {}", events.size());
-            return correlator.buildCallResults(events);
+    public List<AnalyzeResult> analyzeLogV2(@RequestPart("file") MultipartFile file,
+                                            @RequestParam(value = "sharded", defaultValue = "false") boolean sharded,
+                                            @RequestParam(value = "segment", required = false) String segment) throws Exception {
+        log.info("收到日志文件: name={}, size={}, sharded={}, segment={}", file.getOriginalFilename(), file.getSize(), sharded, segment);
+        if (segment != null && !segment.isBlank()) {
+            if (sharded) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "分片模式不支持落事件段，segment 和 sharded=true 不能同时使用");
+            }
+            if (!segmentStore.enabled()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "没有配置 analyzer.segments.dir，事件段存储未开启");
+            }
+            String id;
+            try {
+                id = EventSegmentStore.checkId(segment.trim());
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+            }
+            if (!segmentStore.exists(id)) {
+                return analyzeAndPersist(file, id);
+            }
+            log.info("事件段 {} 已存在，不再重复写入", id);
+        }
+        return analyzeCached(file, sharded);
+    }
+
+    /**
+     * /api/analyze/log2?format=ndjson：同样的上传，按 NDJSON 逐通输出，
+     * 每通电话一行 {"type":"call","result":...}，最后一行是 {"type":"stats",...}。
+     * 关联、hub 判定和结果缓存都与 /log2 相同（同一个缓存 key），只是输出格式不同。
+     *
+     * 没命中缓存时解析完就按分组顺序逐通构图、逐通写出，边写边攒一份放进缓存；命中时直接按缓存的结果写。
+     * 分片模式要等全部分片拼接完才能按到达顺序排好，整份结果出来后再写。
+     * 解析失败时还没写出任何内容，直接返回错误状态码；构图中途失败时最后一行改写错误行，不放进缓存。
+     */
+    @PostMapping(value = "/log2", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, params = "format=ndjson")
+    public void analyzeLogV2Ndjson(@RequestPart("file") MultipartFile file,
+                                   @RequestParam(value = "sharded", defaultValue = "false") boolean sharded,
+                                   HttpServletResponse response) throws IOException {
+        log.info("收到日志文件(NDJSON): name={}, size={}, sharded={}", file.getOriginalFilename(), file.getSize(), sharded);
+        long start = System.nanoTime();
+        try (Upload upload = receive(file)) {
+            String key = cacheKey(upload, sharded);
+            List<AnalyzeResult> cached = key == null ? null : resultCache.get(key);
+            if (cached != null || sharded) {
+                List<AnalyzeResult> results = cached;
+                if (results != null) {
+                    log.info("命中结果缓存: key={}, 通话数 {}", key, results.size());
+                } else {
+                    results = analyze(upload, true);
+                    if (key != null) {
+                        resultCache.put(key, results);
+                    }
+                }
+                response.setContentType(NdjsonResultWriter.MEDIA_TYPE);
+                NdjsonResultWriter writer = new NdjsonResultWriter(objectMapper, response.getOutputStream());
+                results.forEach(writer);
+                writer.finish(elapsed(start));
+                return;
+            }
+
+            try (RawLineStore rawStore = openRawStore()) {
+                CallJoiner joiner = correlator.joiner(rawStore);
+                long count = parseUpload(upload, joiner);
+                log.info("解析得到 UnifiedEvent 数量: {}, 原始行落盘 {} 字节", count, rawStore.byteSize());
+
+                response.setContentType(NdjsonResultWriter.MEDIA_TYPE);
+                NdjsonResultWriter writer = new NdjsonResultWriter(objectMapper, response.getOutputStream());
+                List<AnalyzeResult> results = new ArrayList<>();
+                try {
+                    correlator.forEachResult(joiner, result -> {
+                        writer.accept(result);
+                        results.add(result);
+                    });
+                } catch (RuntimeException e) {
+                    log.warn("NDJSON 输出中断: 已输出通话数 {}", writer.calls(), e);
+                    try {
+                        writer.fail(e.getMessage() != null ? e.getMessage() : e.toString());
+                    } catch (IOException | RuntimeException ignored) {
+                        // 客户端已断开，错误行也写不出去
+                    }
+                    return;
+                }
+                if (key != null) {
+                    resultCache.put(key, results);
+                }
+                writer.finish(elapsed(start));
+            }
+        }
+    }
+
+    private static Map<String, Object> elapsed(long start) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("elapsedMs", (System.nanoTime() - start) / 1_000_000);
+        return stats;
+    }
+
+    /**
+     * 多文件 / 压缩包：files 可以是轮转的 freeswitch.log、freeswitch.log.1 …，也可以是 .gz / .tar / .tar.gz。
+     * 每个文件在自己的线程上解压、解析，按日志时间 k 路归并后再关联，跨轮转边界的通话能接上。
+     * 任何一个文件读不完（gzip 截断、tar 损坏）时请求返回 400，解析线程自身出错返回 500，不返回读到一半的结果。
+     */
+    @PostMapping(value = "/files", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public List<AnalyzeResult> analyzeFiles(@RequestPart("files") List<MultipartFile> files,
+                                            @RequestParam(value = "sharded", defaultValue = "false") boolean sharded) throws Exception {
+        List<EventSource> sources = new ArrayList<>();
+        try (RawLineStore rawStore = openRawStore()) {
+            for (MultipartFile f : files) {
+                sources.addAll(bundleReader.open(f.getOriginalFilename(), f.getInputStream(), sources.size()));
+            }
+            log.info("收到 {} 个上传，展开为 {} 条事件流, sharded={}", files.size(), sources.size(), sharded);
+
+            if (sharded) {
+                ShardedCorrelator shards = correlator.sharded(rawStore);
+                long count = EventMerger.merge(sources, (source, e) -> shards.accept(e));
+                log.info("归并得到 UnifiedEvent 数量: {}, 原始行落盘 {} 字节", count, rawStore.byteSize());
+                return shards.finish();
+            }
+            CallJoiner joiner = correlator.joiner(rawStore);
+            long count = EventMerger.merge(sources, (source, e) -> joiner.accept(e));
+            log.info("归并得到 UnifiedEvent 数量: {}, 原始行落盘 {} 字节", count, rawStore.byteSize());
+            return correlator.buildCallResults(joiner);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (UncheckedIOException e) {
+            log.warn("读取上传文件失败", e);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (IllegalStateException e) {
+            log.warn("解析上传文件失败", e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage(), e);
+        } finally {
+            for (EventSource source : sources) {
+                source.close();
+            }
         }
     }
 
@@ -40,10 +219,283 @@ public class AnalyzeController {
      */
     @PostMapping(value = "/log", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public AnalyzeResult analyzeLog(@RequestPart("file") MultipartFile file) throws Exception {
-        try (InputStream in = file.getInputStream()) {
-            List<UnifiedEvent> events = logAdapter.parse(in);
-            List<AnalyzeResult> results = correlator.buildCallResults(events);
-            return results.isEmpty() ? null : results.get(0);
+        List<AnalyzeResult> results = analyzeCached(file, false);
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    /**
+     * 流式上传：请求体直接是日志（application/octet-stream / text/plain，或 gzip 压缩），
+     * 不走 multipart，不受 multipart 大小限制。请求体边到达边解析、边关联，
+     * 通话一结束就构图，不等上传完成；内存只受 analyzer.stream.memory-budget-bytes 约束。
+     * 请求体没读完就出错（客户端中断、gzip 截断）时请求失败，不返回读到一半的结果。
+     */
+    @PostMapping(value = "/stream", consumes = {
+            MediaType.APPLICATION_OCTET_STREAM_VALUE, MediaType.TEXT_PLAIN_VALUE, "application/gzip"})
+    public List<AnalyzeResult> analyzeStream(InputStream body) throws IOException {
+        List<AnalyzeResult> results = new ArrayList<>();
+        IncrementalCorrelator incremental = correlator.incremental(results::add);
+        long count;
+        try (InputStream in = maybeGunzip(body)) {
+            count = logAdapter.parse(in, incremental);
+        } catch (IOException e) {
+            log.warn("流式上传读取失败: 已输出通话数 {}", results.size(), e);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "读取请求体失败: " + e.getMessage(), e);
+        }
+        incremental.finish();
+        log.info("流式上传: 事件数 {}, 通话数 {}, 超预算提前收尾 {}", count, results.size(), incremental.evicted());
+        return results;
+    }
+
+    /**
+     * /api/analyze/stream?format=ndjson：流式上传 + NDJSON 流式输出，
+     * 第一通电话的结果可以在上传还没结束时就返回给前端。
+     */
+    @PostMapping(value = "/stream", params = "format=ndjson", consumes = {
+            MediaType.APPLICATION_OCTET_STREAM_VALUE, MediaType.TEXT_PLAIN_VALUE, "application/gzip"})
+    public void analyzeStreamNdjson(InputStream body, HttpServletResponse response) throws IOException {
+        try (InputStream in = maybeGunzip(body)) {
+            writeNdjson(in, response);
+        }
+    }
+
+    /**
+     * 多来源关联：file 为 FS 日志，extra 为其他来源的日志（SBC、HTTP 网关等，行首时间戳 + key=value），
+     * source 按顺序给出每个 extra 的来源名称，缺省为 "EXT"。
+     * 各来源按日志时间归并，在 analyzer.join.window-ms 窗口内按 SIP Call-ID / globalCallId / traceId 连接。
+     * 任何一个来源读不完时请求返回 400，不返回读到一半的结果。
+     */
+    @PostMapping(value = "/join", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public List<AnalyzeResult> analyzeJoined(@RequestPart("file") MultipartFile file,
+                                             @RequestPart(value = "extra", required = false) List<MultipartFile> extras,
+                                             @RequestParam(value = "source", required = false) List<String> sourceNames) throws Exception {
+        List<EventSource> sources = new ArrayList<>();
+        try {
+            sources.add(logAdapter.source(file.getInputStream()));
+            if (extras != null) {
+                for (int i = 0; i < extras.size(); i++) {
+                    String name = sourceNames != null && i < sourceNames.size() && !sourceNames.get(i).isBlank()
+                            ? sourceNames.get(i).trim() : "EXT";
+                    sources.add(logAdapter.source(name, new SharedKeyCallIdStrategy(), extras.get(i).getInputStream()));
+                }
+            }
+
+            List<AnalyzeResult> results = new ArrayList<>();
+            MergeJoinCorrelator join = correlator.mergeJoin(results::add);
+            long count = join.run(sources);
+            log.info("多来源关联: 事件数 {}, 各来源 {}, 通话数 {}", count, join.counts(), results.size());
+            return results;
+        } catch (UncheckedIOException e) {
+            log.warn("读取上传文件失败", e);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } finally {
+            for (EventSource source : sources) {
+                source.close();
+            }
+        }
+    }
+
+    /**
+     * 各个正则前置过滤的命中统计：检查次数 / 放行给正则的次数 / 正则真正命中的次数。
+     */
+    @GetMapping("/prefilter-stats")
+    public List<LiteralGate.Stats> prefilterStats() {
+        return logAdapter.prefilterStats();
+    }
+
+    /**
+     * 结果缓存的命中统计
+     */
+    @GetMapping("/cache-stats")
+    public ResultCache.Stats cacheStats() {
+        return resultCache.stats();
+    }
+
+    /**
+     * 接收上传时顺带算出内容哈希，先查结果缓存，没命中再解析、关联并放进缓存。
+     */
+    private List<AnalyzeResult> analyzeCached(MultipartFile file, boolean sharded) throws IOException {
+        try (Upload upload = receive(file)) {
+            String key = cacheKey(upload, sharded);
+            List<AnalyzeResult> cached = key == null ? null : resultCache.get(key);
+            if (cached != null) {
+                log.info("命中结果缓存: key={}, 通话数 {}", key, cached.size());
+                return cached;
+            }
+            List<AnalyzeResult> results = analyze(upload, sharded);
+            if (key != null) {
+                resultCache.put(key, results);
+            }
+            return results;
+        }
+    }
+
+    /** 上传内容 + 模式对应的缓存 key；缓存关闭（没算哈希）时为 null */
+    private String cacheKey(Upload upload, boolean sharded) {
+        return upload.sha256() == null ? null : resultCache.key(upload.sha256(), sharded ? "log2-sharded" : "log2");
+    }
+
+    /**
+     * 解析、关联，并把全部分组的事件写成事件段；结果照常放进缓存。
+     */
+    private List<AnalyzeResult> analyzeAndPersist(MultipartFile file, String segment) throws IOException {
+        try (Upload upload = receive(file);
+             RawLineStore rawStore = openRawStore();
+             SegmentWriter writer = segmentStore.create(segment)) {
+            CallJoiner joiner = correlator.joiner(rawStore);
+            long count = parseUpload(upload, joiner);
+            List<AnalyzeResult> results = correlator.buildCallResults(joiner);
+            correlator.forEachGroup(joiner, (groupId, events) -> {
+                try {
+                    writer.add(groupId, events);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("写入事件段失败: " + segment, e);
+                }
+            });
+            try {
+                writer.commit();
+                log.info("事件段 {} 已写入: 事件数 {}, 通话数 {}", segment, count, results.size());
+            } catch (FileAlreadyExistsException e) {
+                log.info("事件段 {} 已由并发的请求写入，丢弃本次写入", segment);
+            }
+            if (upload.sha256() != null) {
+                resultCache.put(resultCache.key(upload.sha256(), "log2"), results);
+            }
+            return results;
+        }
+    }
+
+    private List<AnalyzeResult> analyze(Upload upload, boolean sharded) throws IOException {
+        try (RawLineStore rawStore = openRawStore()) {
+            if (sharded) {
+                ShardedCorrelator shards = correlator.sharded(rawStore);
+                long count = parseUpload(upload, shards);
+                log.info("解析得到 UnifiedEvent 数量: {}, 原始行落盘 {} 字节", count, rawStore.byteSize());
+                return shards.finish();
+            }
+            CallJoiner joiner = correlator.joiner(rawStore);
+            long count = parseUpload(upload, joiner);
+            log.info("解析得到 UnifiedEvent 数量: {}, 原始行落盘 {} 字节", count, rawStore.byteSize());
+            return correlator.buildCallResults(joiner);
+        }
+    }
+
+    /**
+     * 每次分析一个原始行存储：事件进 EventStore 时行文本就写到堆外，请求结束删除。
+     */
+    private RawLineStore openRawStore() throws IOException {
+        return RawLineStore.create(rawStoreDir == null || rawStoreDir.isBlank() ? null : Path.of(rawStoreDir.trim()));
+    }
+
+    /**
+     * 边解析边关联，每结束一通电话就写一行 NDJSON，最后写统计行。
+     * 读流或关联中途失败时，已经写出的通话行收不回来，最后一行改写错误行而不是统计行。
+     */
+    private void writeNdjson(InputStream in, HttpServletResponse response) throws IOException {
+        long start = System.nanoTime();
+        response.setContentType(NdjsonResultWriter.MEDIA_TYPE);
+        NdjsonResultWriter writer = new NdjsonResultWriter(objectMapper, response.getOutputStream());
+        IncrementalCorrelator incremental = correlator.incremental(writer);
+        long count;
+        try {
+            count = logAdapter.parse(in, incremental);
+            incremental.finish();
+        } catch (IOException | RuntimeException e) {
+            log.warn("NDJSON 输出中断: 已输出通话数 {}", writer.calls(), e);
+            try {
+                writer.fail(e.getMessage() != null ? e.getMessage() : e.toString());
+            } catch (IOException | RuntimeException ignored) {
+                // 客户端已断开，错误行也写不出去
+            }
+            return;
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("events", count);
+        stats.put("droppedNoise", incremental.droppedNoise());
+        stats.put("evicted", incremental.evicted());
+        stats.put("elapsedMs", (System.nanoTime() - start) / 1_000_000);
+        writer.finish(stats);
+        log.info("NDJSON 输出: 事件数 {}, 通话数 {}", count, writer.calls());
+    }
+
+    /**
+     * 按 gzip 魔数判断是否压缩，不依赖 Content-Type / Content-Encoding 是否写对。
+     */
+    private static InputStream maybeGunzip(InputStream body) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(body, 64 * 1024);
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        in.reset();
+        if (b1 == 0x1f && b2 == 0x8b) {
+            return new GZIPInputStream(in, 64 * 1024);
+        }
+        return in;
+    }
+
+    /**
+     * 接收上传：大文件在落临时文件的同时算 SHA-256，小文件单独扫一遍算（缓存关闭时不算）。
+     */
+    private Upload receive(MultipartFile file) throws IOException {
+        boolean hash = resultCache.enabled();
+        if (file.getSize() < parallelMinBytes) {
+            String sha256 = null;
+            if (hash) {
+                try (InputStream in = file.getInputStream()) {
+                    sha256 = sha256(in, null);
+                }
+            }
+            return new Upload(file, null, sha256);
+        }
+
+        Path spool = Files.createTempFile("fs-upload-", ".log");
+        try (InputStream in = file.getInputStream();
+             OutputStream out = Files.newOutputStream(spool)) {
+            return new Upload(file, spool, sha256(in, out));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spool);
+            throw e;
+        }
+    }
+
+    /** 读完 in 算 SHA-256（十六进制），out 不为 null 时同时把内容写过去 */
+    private static String sha256(InputStream in, OutputStream out) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buf = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            digest.update(buf, 0, n);
+            if (out != null) {
+                out.write(buf, 0, n);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 小文件直接流式解析；大文件已经落到临时文件，按分片并行解析。
+     */
+    private long parseUpload(Upload upload, Consumer<UnifiedEvent> sink) throws IOException {
+        if (upload.spool() == null) {
+            try (InputStream in = upload.file().getInputStream()) {
+                return logAdapter.parse(in, sink);
+            }
+        }
+        return parallelParser.parse(upload.spool(), sink);
+    }
+
+    /** 一次上传：小文件直接读 MultipartFile，大文件读落盘的 spool；close 时删除 spool */
+    private record Upload(MultipartFile file, Path spool, String sha256) implements Closeable {
+        @Override
+        public void close() throws IOException {
+            if (spool != null) {
+                Files.deleteIfExists(spool);
+            }
         }
     }
 }
@@ -0,0 +1,64 @@
+package com.fscallflow.analyzer.controller;
+
+import com.fscallflow.analyzer.job.AnalyzeJobService;
+import com.fscallflow.analyzer.job.JobStatus;
+import com.fscallflow.analyzer.job.ResultPage;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 异步分析任务接口：提交后立即返回任务 ID，不占着请求线程等分析结束。
+ *
+ * - POST   /api/analyze/jobs                 提交日志，返回任务状态
+ * - GET    /api/analyze/jobs/{id}            查询进度
+ * - GET    /api/analyze/jobs/{id}/results    分页取结果（page 从 0 开始）
+ * - DELETE /api/analyze/jobs/{id}            取消
+ */
+@RestController
+@RequestMapping("/api/analyze/jobs")
+@RequiredArgsConstructor
+public class AnalyzeJobController {
+
+    private final AnalyzeJobService jobs;
+
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public JobStatus submit(@RequestPart("file") MultipartFile file) throws IOException {
+        try {
+            return jobs.submit(file);
+        } catch (RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "分析任务队列已满，请稍后再试");
+        }
+    }
+
+    @GetMapping("/{id}")
+    public JobStatus status(@PathVariable String id) {
+        return found(jobs.status(id));
+    }
+
+    @GetMapping("/{id}/results")
+    public ResultPage results(@PathVariable String id,
+                              @RequestParam(value = "page", defaultValue = "0") int page,
+                              @RequestParam(value = "size", defaultValue = "20") int size) {
+        return found(jobs.results(id, page, size));
+    }
+
+    @DeleteMapping("/{id}")
+    public JobStatus cancel(@PathVariable String id) {
+        return found(jobs.cancel(id));
+    }
+
+    private static <T> T found(T value) {
+        if (value == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "任务不存在或已过期");
+        }
+        return value;
+    }
+}
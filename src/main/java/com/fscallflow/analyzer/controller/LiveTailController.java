@@ -0,0 +1,36 @@
+package com.fscallflow.analyzer.controller;
+
+import com.fscallflow.analyzer.tail.LiveTailService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * 实时跟读：/api/tail/events 是 SSE 流，推送结束的通话（call）和进行中通话的最新构图（progress）。
+ * 需要配置 analyzer.tail.path。
+ */
+@RestController
+@RequestMapping("/api/tail")
+@RequiredArgsConstructor
+public class LiveTailController {
+
+    private final LiveTailService tail;
+
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events() {
+        if (!tail.enabled()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "没有配置 analyzer.tail.path，实时跟读未开启");
+        }
+        return tail.subscribe();
+    }
+
+    @GetMapping("/status")
+    public LiveTailService.Status status() {
+        return tail.status();
+    }
+}
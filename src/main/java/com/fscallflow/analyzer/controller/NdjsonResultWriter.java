@@ -0,0 +1,84 @@
+package com.fscallflow.analyzer.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fscallflow.analyzer.model.AnalyzeResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 把 AnalyzeResult 逐条写成 NDJSON（每行一个 JSON 对象），每写一条就 flush，
+ * 前端不用等全部分析完就能开始渲染，服务端也不用攒整份结果。
+ *
+ * 行格式：
+ * - {"type":"call","result":{...AnalyzeResult...}}
+ * - 最后一行 {"type":"stats", ...}；中途失败时最后一行改为 {"type":"error","message":"..."}，
+ *   前端据此知道结果不完整
+ *
+ * 用 Jackson 的流式 JsonGenerator 直接写到响应流上。不是线程安全的。
+ */
+class NdjsonResultWriter implements Consumer<AnalyzeResult> {
+
+    static final String MEDIA_TYPE = "application/x-ndjson";
+
+    private final JsonGenerator gen;
+    private long calls;
+
+    NdjsonResultWriter(ObjectMapper mapper, OutputStream out) throws IOException {
+        this.gen = mapper.createGenerator(out);
+        // 行之间自己写换行，不要 Jackson 默认的空格分隔
+        this.gen.setRootValueSeparator(null);
+    }
+
+    /** 写出一通电话；客户端断开时抛 UncheckedIOException，让上游停止解析 */
+    @Override
+    public void accept(AnalyzeResult result) {
+        try {
+            gen.writeStartObject();
+            gen.writeStringField("type", "call");
+            gen.writeFieldName("result");
+            gen.writeObject(result);
+            gen.writeEndObject();
+            endLine();
+            calls++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** 写出最后的统计行并 flush，calls 字段由这里补上 */
+    void finish(Map<String, ?> stats) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("type", "stats");
+        gen.writeNumberField("calls", calls);
+        for (Map.Entry<String, ?> e : stats.entrySet()) {
+            gen.writeFieldName(e.getKey());
+            gen.writeObject(e.getValue());
+        }
+        gen.writeEndObject();
+        endLine();
+    }
+
+    /** 中途失败：写出错误行代替统计行 */
+    void fail(String message) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("type", "error");
+        gen.writeNumberField("calls", calls);
+        gen.writeStringField("message", message);
+        gen.writeEndObject();
+        endLine();
+    }
+
+    long calls() {
+        return calls;
+    }
+
+    private void endLine() throws IOException {
+        gen.writeRaw('\n');
+        gen.flush();
+    }
+}
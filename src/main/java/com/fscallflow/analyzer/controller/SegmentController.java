@@ -0,0 +1,96 @@
+package com.fscallflow.analyzer.controller;
+
+import com.fscallflow.analyzer.correlate.EventCorrelator;
+import com.fscallflow.analyzer.model.AnalyzeResult;
+import com.fscallflow.analyzer.store.EventSegmentStore;
+import com.fscallflow.analyzer.store.Segment;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 事件段查询接口：读 /api/analyze/log2?segment=ID 存下来的段，只映射用到的那部分，不用重新解析日志。
+ *
+ * - GET /api/segments                          段列表
+ * - GET /api/segments/{id}/calls               通话索引，可用 fromMs / toMs（毫秒时间戳）按时间范围过滤
+ * - GET /api/segments/{id}/calls/{groupId}     单个通话重新构图
+ * - GET /api/segments/{id}/analyze             时间范围内的通话全部重新构图
+ *
+ * 需要配置 analyzer.segments.dir。段里只存事件，hub UUID 诊断不会带出来。
+ */
+@RestController
+@RequestMapping("/api/segments")
+@RequiredArgsConstructor
+public class SegmentController {
+
+    private final EventSegmentStore segments;
+    private final EventCorrelator correlator;
+
+    @GetMapping
+    public List<Segment.Info> list() throws IOException {
+        return segments.list();
+    }
+
+    @GetMapping("/{id}/calls")
+    public List<Segment.CallEntry> calls(@PathVariable String id,
+                                         @RequestParam(value = "fromMs", required = false) Long fromMs,
+                                         @RequestParam(value = "toMs", required = false) Long toMs) throws IOException {
+        try (Segment seg = open(id)) {
+            return seg.calls(toMicros(fromMs, Long.MIN_VALUE), toMicros(toMs, Long.MAX_VALUE));
+        }
+    }
+
+    @GetMapping("/{id}/calls/{groupId}")
+    public AnalyzeResult call(@PathVariable String id, @PathVariable String groupId) throws IOException {
+        try (Segment seg = open(id)) {
+            Segment.CallEntry entry = seg.call(groupId);
+            if (entry == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "事件段里没有这个通话: " + groupId);
+            }
+            AnalyzeResult result = correlator.resultOf(entry.groupId(), seg.events(entry));
+            if (result == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "该分组是噪声组，没有通话结果: " + groupId);
+            }
+            return result;
+        }
+    }
+
+    @GetMapping("/{id}/analyze")
+    public List<AnalyzeResult> analyze(@PathVariable String id,
+                                       @RequestParam(value = "fromMs", required = false) Long fromMs,
+                                       @RequestParam(value = "toMs", required = false) Long toMs) throws IOException {
+        try (Segment seg = open(id)) {
+            List<AnalyzeResult> results = new ArrayList<>();
+            for (Segment.CallEntry entry : seg.calls(toMicros(fromMs, Long.MIN_VALUE), toMicros(toMs, Long.MAX_VALUE))) {
+                AnalyzeResult result = correlator.resultOf(entry.groupId(), seg.events(entry));
+                if (result != null) {
+                    results.add(result);
+                }
+            }
+            return results;
+        }
+    }
+
+    private Segment open(String id) throws IOException {
+        if (!segments.enabled()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "没有配置 analyzer.segments.dir，事件段存储未开启");
+        }
+        try {
+            return segments.open(id);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (NoSuchFileException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "事件段不存在: " + id);
+        }
+    }
+
+    private static long toMicros(Long ms, long dflt) {
+        return ms == null ? dflt : Math.multiplyExact(ms, 1000L);
+    }
+}
@@ -0,0 +1,355 @@
+package com.fscallflow.analyzer.correlate;
+
+import com.fscallflow.analyzer.model.*;
+
+import java.util.*;
+
+/**
+ * 单通电话的特征累加器：按时间顺序逐个 {@link #add(UnifiedEvent)}，一遍循环收集
+ * 边、腿 ID、主被叫 / 坐席、队列、桥接和 DTMF 状态，最后由 {@link #toGraph(String)}
+ * 产出 CallGraph（含 CallSummary 和 Diagnosis）。
+ *
+ * 与原来“边循环 + 多次 stream 扫描”的结果逐字段一致：
+ * - 各类“取第一个”的属性按事件顺序取第一次出现的值
+ * - DTMF 的主通道过滤依赖全组的第一个 FS UUID，所以按键先按顺序暂存，收尾时再去重合并
+ *
+ * 不是线程安全的，一个实例只对应一个分组。
+ */
+public final class CallFeatureAccumulator {
+
+    private static final String[] CALLER_KEYS = {"callerNumber", "ani", "caller_id_number"};
+    private static final String[] CALLEE_KEYS = {"calleeNumber", "did", "destination_number"};
+    private static final String[] AGENT_KEYS = {"agentId", "agent_id", "extension"};
+
+    private final List<CallEdge> edges = new ArrayList<>();
+
+    private Long firstTs;
+    private Long lastTs;
+
+    // 下面这些 flag 用来“只保留第一条 / 最后一条”
+    private boolean inviteInAdded;
+    private boolean inviteOutAdded;
+    private boolean answerAdded;
+    private boolean bridgeAdded;
+    private Long lastHangupTs;   // 先记录时间，最后再补 HANGUP 边
+
+    private boolean anyQueueEvent;
+    private boolean anyBridge;
+    private boolean answered;
+    private boolean inbound;
+
+    /** 组内出现的 FS legId（真实 UUID），按出现顺序去重 */
+    private final LinkedHashSet<String> fsIds = new LinkedHashSet<>();
+
+    private String caller;
+    private String callee;
+    private String agentId;
+    /** attrs.queueName 第一次出现的值 */
+    private String queueName;
+    /** attrs.agentId 第一次出现的值（诊断用，不做空白过滤） */
+    private String detectedAgent;
+    /** 有 queueName 属性或 callcenterBridge=true */
+    private boolean queueAttrSeen;
+    private boolean callcenterBridge;
+
+    /** 暂存的 DTMF 按键：digit / legId / tsMicros，按事件顺序 */
+    private final List<String> dtmfDigits = new ArrayList<>();
+    private final List<String> dtmfLegs = new ArrayList<>();
+    private long[] dtmfTs = new long[8];
+
+    /**
+     * 累加一个事件，调用方保证按时间排好序。
+     */
+    public void add(UnifiedEvent e) {
+        long tsMillis = 0L;
+        if (e.getTsMicros() != UnifiedEvent.NO_TS) {
+            tsMillis = Math.floorDiv(e.getTsMicros(), 1000L);
+
+            if (firstTs == null || tsMillis < firstTs) firstTs = tsMillis;
+            if (lastTs == null || tsMillis > lastTs) lastTs = tsMillis;
+        }
+
+        String legId = e.getLegId();
+        if (legId != null) {
+            String s = legId.trim();
+            if (!s.isEmpty() && !"unknown".equals(s)) {
+                fsIds.add(s);
+            }
+        }
+
+        collectAttrs(e.getAttrs());
+
+        FsEventType type = e.getType();
+        if (type == FsEventType.INVITE_INBOUND) {
+            inbound = true;
+        }
+
+        // OTHER / RTP_EVENT 之类已经在外面过滤过，如果还有，这里也继续跳过
+        if (type == FsEventType.OTHER || type == FsEventType.RTP_EVENT) {
+            return;
+        }
+
+        switch (type) {
+            case INVITE_INBOUND -> {
+                if (inviteInAdded) break;   // 只保留第一条
+                inviteInAdded = true;
+                edges.add(edge("node-pstn", "node-fs", type, tsMillis, e.getAttrs()));
+            }
+
+            case INVITE_OUTBOUND -> {
+                if (inviteOutAdded) break;  // 只保留第一条
+                inviteOutAdded = true;
+                // 如果以后要画到 Agent，也可以改成 node-agent
+                edges.add(edge("node-fs", "node-pstn", type, tsMillis, e.getAttrs()));
+            }
+
+            case ANSWER -> {
+                if (answerAdded) break;     // 先简化为只保留第一条 ANSWER
+                answerAdded = true;
+                answered = true;
+                edges.add(edge("node-fs", "node-agent", type, tsMillis, e.getAttrs()));
+            }
+
+            case DTMF -> {
+                String digit = e.getAttrs() != null ? e.getAttrs().get("digit") : null;
+                if (digit != null) {
+                    // 主通道要等全组扫完才能确定，先按顺序暂存
+                    if (dtmfDigits.size() == dtmfTs.length) {
+                        dtmfTs = Arrays.copyOf(dtmfTs, dtmfTs.length * 2);
+                    }
+                    dtmfTs[dtmfDigits.size()] = e.getTsMicros();
+                    dtmfDigits.add(digit);
+                    dtmfLegs.add(legId);
+                }
+            }
+
+            case CALLCENTER_EVENT -> {
+                if (!anyQueueEvent) {
+                    // 只保留第一条队列事件；也可以改成 node-queue
+                    edges.add(edge("node-fs", "node-agent", type, tsMillis, e.getAttrs()));
+                }
+                anyQueueEvent = true;
+            }
+
+            case BRIDGE -> {
+                if (bridgeAdded) break;
+                bridgeAdded = true;
+                anyBridge = true;
+                edges.add(edge("node-fs", "node-agent", type, tsMillis, e.getAttrs()));
+            }
+
+            case HANGUP -> {
+                // HANGUP 我们只保留最后一条：先记时间，最后统一加边
+                if (lastHangupTs == null || tsMillis > lastHangupTs) {
+                    lastHangupTs = tsMillis;
+                }
+            }
+
+            default -> {
+                // 其他暂时不画
+            }
+        }
+    }
+
+    /**
+     * 收尾：补 DTMF / HANGUP 边，生成 summary 和诊断。
+     */
+    public CallGraph toGraph(String callId) {
+        CallGraph g = new CallGraph();
+        g.setGlobalId(callId);
+
+        // 固定三类节点：PSTN / FS / Agent
+        g.setNodes(List.of(
+                node("node-pstn", "PSTN", "PSTN"),
+                node("node-fs", "FS", "FS"),
+                node("node-agent", "Agent", "Agent")
+        ));
+
+        // 主通道（primaryFsId）：组内第一个 FS legId，用于 DTMF 过滤
+        String primaryFsId = fsIds.isEmpty() ? callId : fsIds.iterator().next();
+        String dtmfSeq = dtmfSequence(primaryFsId);
+
+        // 把 DTMF 序列合并成一条边
+        if (!dtmfSeq.isEmpty()) {
+            CallEdge edge = new CallEdge();
+            edge.setFromId("node-agent");
+            edge.setToId("node-fs");
+            edge.setType("DTMF");
+            edge.setStartTs(firstTs != null ? firstTs : 0L);
+            edge.setAttrs(Map.of("digit", dtmfSeq));
+            edges.add(edge);
+        }
+
+        // 最后一条 HANGUP，补上一条 FS -> PSTN
+        if (lastHangupTs != null) {
+            CallEdge edge = new CallEdge();
+            edge.setFromId("node-fs");
+            edge.setToId("node-pstn");
+            edge.setType("HANGUP");
+            edge.setStartTs(lastHangupTs);
+            edge.setAttrs(Map.of());
+            edges.add(edge);
+        }
+
+        g.setEdges(edges);
+
+        // ========= Summary =========
+        CallSummary summary = new CallSummary();
+
+        // 只统计本组内出现的 FS legId（真实 UUID），不再混入业务 callId
+        summary.setPrimaryFsCallId(primaryFsId);
+        summary.setFsCallIds(new ArrayList<>(fsIds));
+
+        summary.setCaller(caller);
+        summary.setCallee(callee);
+        summary.setAgentId(agentId);
+        summary.setDirection(inbound ? "inbound" : "outbound");
+        summary.setAnswered(answered);
+
+        // 是否已经进入队列
+        boolean queueDetected = anyQueueEvent || queueAttrSeen;
+        boolean queued = queueName != null || queueDetected; // queueDetected 是诊断里那套
+
+        summary.setQueued(queued);
+        summary.setQueueName(queueName);
+
+        summary.setDtmfSequence(!dtmfSeq.isEmpty() ? dtmfSeq.toUpperCase() : null);
+
+        if (firstTs != null) {
+            summary.setStartTime(String.valueOf(firstTs));
+        }
+        if (lastTs != null) {
+            summary.setEndTime(String.valueOf(lastTs));
+            summary.setDurationMs(lastTs - firstTs);
+        }
+
+        g.setSummary(summary);
+
+        // ========= Diagnosis =========
+
+        // 增加兜底：有 ANSWER 且有 agentId 也视为桥接成功
+        boolean bridgeDetected = anyBridge || callcenterBridge || (answered && detectedAgent != null);
+
+        List<Diagnosis> diagnoses = new ArrayList<>();
+
+        // ================= 队列诊断 =================
+        if (!queueDetected) {
+            Diagnosis d = new Diagnosis();
+            d.setType("QUEUE");
+            d.setSeverity("WARNING");
+            d.setTitle("呼叫未进入队列");
+            d.setDetail("未检测到 callcenter 队列事件或排队痕迹。");
+            d.setHints(List.of(
+                    "检查 Dialplan 是否正确进入队列流程 (mod_callcenter)",
+                    "确认 DID / 分机 呼叫路由是否匹配队列规则"
+            ));
+            diagnoses.add(d);
+        }
+
+        // ================= 坐席桥接诊断 =================
+        if (!bridgeDetected) {
+            Diagnosis d = new Diagnosis();
+            d.setType("BRIDGE");
+            d.setSeverity("WARNING");
+            d.setTitle("呼叫未桥接坐席");
+            d.setDetail("未检测到 BRIDGE 或坐席桥接事件。可能坐席不可用或路由错误。");
+            d.setHints(List.of(
+                    "检查队列是否有人处于 Ready 状态",
+                    "查看 mod_callcenter 日志确认是否尝试拨打坐席"
+            ));
+            diagnoses.add(d);
+        }
+
+        // ================= DTMF =================
+        if (!dtmfSeq.isEmpty()) {
+            Diagnosis d = new Diagnosis();
+            d.setType("DTMF");
+            d.setSeverity("INFO");
+            d.setTitle("用户按键序列：" + dtmfSeq);
+            d.setDetail("根据日志检测到的按键记录，仅供参考。");
+            diagnoses.add(d);
+        }
+
+        g.setDiagnoses(diagnoses);
+
+        return g;
+    }
+
+    /** 属性类特征：各取事件顺序上第一次出现的值 */
+    private void collectAttrs(Map<String, String> attrs) {
+        if (attrs == null || attrs.isEmpty()) {
+            return;
+        }
+        if (caller == null) caller = firstAttr(attrs, CALLER_KEYS);
+        if (callee == null) callee = firstAttr(attrs, CALLEE_KEYS);
+        if (agentId == null) agentId = firstAttr(attrs, AGENT_KEYS);
+
+        String q = attrs.get("queueName");
+        if (queueName == null) queueName = q;
+        if (detectedAgent == null) detectedAgent = attrs.get("agentId");
+
+        boolean ccBridge = "true".equals(attrs.get("callcenterBridge"));
+        callcenterBridge |= ccBridge;
+        queueAttrSeen |= ccBridge || q != null || attrs.containsKey("queueName");
+    }
+
+    /**
+     * DTMF 去重合并：只看主通道上的按键；同一腿 + 相同 digit + 时间差 <= 2 秒，
+     * 视为同一次按键（RTP/CHANNEL 重复日志）。
+     */
+    private String dtmfSequence(String primaryFsId) {
+        if (dtmfDigits.isEmpty() || primaryFsId == null) {
+            return "";
+        }
+        StringBuilder seq = new StringBuilder();
+        String lastDigit = null;
+        long lastTsMicros = UnifiedEvent.NO_TS;
+        for (int i = 0; i < dtmfDigits.size(); i++) {
+            if (!primaryFsId.equals(dtmfLegs.get(i))) {
+                continue;
+            }
+            String digit = dtmfDigits.get(i);
+            long ts = dtmfTs[i];
+            // 与原来一样按毫秒比较：微秒级的差在毫秒截断后可能正好落在 2 秒以内
+            if (digit.equals(lastDigit)
+                    && ts != UnifiedEvent.NO_TS
+                    && lastTsMicros != UnifiedEvent.NO_TS
+                    && Math.abs(Math.floorDiv(ts, 1000L) - Math.floorDiv(lastTsMicros, 1000L)) <= 2000L) {
+                // 忽略这条重复 DTMF
+                continue;
+            }
+            seq.append(digit);
+            lastDigit = digit;
+            lastTsMicros = ts;
+        }
+        return seq.toString();
+    }
+
+    private static String firstAttr(Map<String, String> attrs, String[] keys) {
+        for (String k : keys) {
+            String v = attrs.get(k);
+            if (v != null && !v.isBlank()) {
+                return v;
+            }
+        }
+        return null;
+    }
+
+    private static CallEdge edge(String from, String to, FsEventType type, long tsMillis, Map<String, String> attrs) {
+        CallEdge edge = new CallEdge();
+        edge.setFromId(from);
+        edge.setToId(to);
+        edge.setType(type.name());
+        edge.setStartTs(tsMillis);
+        edge.setAttrs(attrs == null ? Map.of() : attrs);
+        return edge;
+    }
+
+    private static CallNode node(String id, String type, String label) {
+        CallNode n = new CallNode();
+        n.setId(id);
+        n.setType(type);
+        n.setLabel(label);
+        return n;
+    }
+}
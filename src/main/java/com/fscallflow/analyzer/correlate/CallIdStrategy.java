@@ -2,6 +2,10 @@ package com.fscallflow.analyzer.correlate;
 
 import com.fscallflow.analyzer.model.UnifiedEvent;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 /**
  * 决定“这个 UnifiedEvent 属于哪个 callId”的策略。
  * 可以按不同来源（FS / PBX / HTTP）提供不同实现。
@@ -13,4 +17,23 @@ public interface CallIdStrategy {
      * 返回 null 或空串时，调用方应兜底成 "unknown"。
      */
     String resolve(UnifiedEvent event);
+
+    /**
+     * 多来源关联时和其他来源对上号用的共享 key，按优先级排列，没有时返回空列表。
+     * 默认取 attrs 里的 globalCallId / traceId / sipCallId / callId。
+     */
+    default List<String> joinKeys(UnifiedEvent event) {
+        Map<String, String> attrs = event == null ? null : event.getAttrs();
+        if (attrs == null) {
+            return List.of();
+        }
+        List<String> keys = new ArrayList<>(2);
+        for (String name : new String[]{"globalCallId", "traceId", "sipCallId", "callId"}) {
+            String v = attrs.get(name);
+            if (v != null && !v.isBlank() && !keys.contains(v.trim())) {
+                keys.add(v.trim());
+            }
+        }
+        return keys;
+    }
 }
@@ -1,136 +1,533 @@
 package com.fscallflow.analyzer.correlate;
 
+import com.fscallflow.analyzer.model.HubUuid;
 import com.fscallflow.analyzer.model.UnifiedEvent;
+import com.fscallflow.analyzer.store.RawLineStore;
 
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * 负责“全局呼叫 ID 合并”的组件：
  * - 把同一个 SIP Call-ID / globalCallId 下的所有 FS UUID 归为同一个呼叫
- * - 把日志文本中互相引用的 UUID 归为同一个呼叫（典型：lua(recording X-LEG-UUID)）
+ * - 把日志文本中互相引用的 UUID 归为同一个呼叫（典型：lua(recording X-LEG-UUID)），
+ *   引用关系取自解析阶段提取好的 {@link UnifiedEvent#getRefUuids()}
  *
  * ⚠ 注意：
  *  - 这里只做“技术层”的合并（FS UUID / SIP Call-ID），不再使用业务 callId 做 union
  *  - 也暂时关闭基于 callerNumber 的“弱合并”，避免把同一主叫的多通呼叫错误黏在一起
  *
- * 最终输出：callGroupId -> List<UnifiedEvent>
+ * 支持增量使用：解析器每产出一个事件就 {@link #accept(UnifiedEvent)}，
+ * 合并操作随事件到达记录下来，全部喂完后再调 {@link #groups()} 建桶。
+ *
+ * 所有 key（legId / SIP Call-ID / 引用到的 UUID）先经 {@link SymbolTable} 换成连续 int id，
+ * 并查集和建桶都在 int 上做。事件本身进 {@link EventStore} 按列保存，不再逐个保留对象。
+ * 一个 CallJoiner 实例只对应一次分析，不是线程安全的。
+ *
+ * Hub UUID：会议、录音守护进程、lua 脚本之类的日志一行里会带上很多通电话的 UUID，
+ * 据它合并会把成百上千通电话黏成一个大组。所以合并操作按到达顺序先记下来，
+ * 建桶时对行内引用两端的每个 UUID 统计它连着多少通“独立通话”（只按 legId / SIP Call-ID 合并后的分组）：
+ * 被很多通电话引用的（会议、录音），和自己作为 leg 引用了很多通电话的（lua 脚本、录音会话一行带上各通话的 UUID）
+ * 都算；被引用的一端还看据它合并后组有多大。超过阈值的视为 hub，重放合并时跳过两端任一是 hub 的引用合并，
+ * 并在结果里报告。
+ *
+ * 重放顺序与一次性分组时一样：先做全部 SIP Call-ID / globalCallId 合并，再做全部行内引用合并，
+ * 每一类内部按到达顺序。分组 ID 取决于合并顺序，这样增量喂入和一次性分组得到的分组 ID 相同。
+ *
+ * 最终输出：callGroupId -> 行号列表（{@link #groupRows()}），或物化后的 List<UnifiedEvent>
  */
-public class CallJoiner {
+public class CallJoiner implements Consumer<UnifiedEvent> {
 
     /** 严格匹配 FreeSWITCH UUID：8-4-4-4-12 十六进制 */
     private static final Pattern UUID_PATTERN = Pattern.compile(
             "(?i)\\b[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}\\b"
     );
 
+    /** 本次分析的符号表 */
+    private final SymbolTable symbols = new SymbolTable();
+
+    /** 按到达顺序保存的事件，行号即到达序号 */
+    private final EventStore store;
+
+    /** 引用同一个 UUID 的独立通话数超过该值即视为 hub；<= 0 不按扇出判断 */
+    private final int hubFanout;
+    /** 据同一个 UUID 合并后组内事件数超过该值即视为 hub；<= 0 不按大小判断 */
+    private final long hubMaxEvents;
+
     /**
-     * 主入口：根据 FS UUID / SIP Call-ID / 日志中的引用关系，把事件按“通话”分组。
+     * 即时并查集，只做 legId 与 SIP Call-ID / globalCallId 的合并，下标为符号 id，
+     * 用来判断一个引用 UUID 连着多少通独立通话。
+     */
+    private final Dsu direct = new Dsu();
+    /** 建桶用的并查集：先 SIP 合并、后引用合并地重放全部操作（跳过 hub），groupRows 时才生成 */
+    private Dsu resolved;
+    private int resolvedOps = -1;
+    private int resolvedSymbols = -1;
+    private int resolvedRows = -1;
+
+    /** 按到达顺序记录的合并操作；行内引用的合并在 opB 里存 ~ref，重放时排在 SIP 合并之后 */
+    private int[] opA = new int[1024];
+    private int[] opB = new int[1024];
+    private int opCount;
+
+    /** 每个事件建桶用的“技术 key”的符号 id，下标为行号 */
+    private int[] eventKeys = new int[1024];
+
+    /** 外部指定的 hub（跨分片累计出来的），出现在引用任一端即按 hub 处理，见 {@link #assumeHubs} */
+    private Set<String> assumed = Set.of();
+
+    /** 上次建桶时识别出的 hub：符号 id -> 信息 */
+    private Map<Integer, HubUuid> hubs = Map.of();
+    /** 分组 ID -> 该组引用到的 hub */
+    private Map<String, List<HubUuid>> hubsByGroup = Map.of();
+
+    public CallJoiner() {
+        this(null);
+    }
+
+    /**
+     * @param rawStore 原始行存储；为 null 时原始行留在堆上
+     */
+    public CallJoiner(RawLineStore rawStore) {
+        this(rawStore, 0, 0);
+    }
+
+    /**
+     * @param rawStore     原始行存储；为 null 时原始行留在堆上
+     * @param hubFanout    引用同一个 UUID 的独立通话数阈值，<= 0 关闭
+     * @param hubMaxEvents 据同一个 UUID 合并后的组大小阈值（事件数），<= 0 关闭
+     */
+    public CallJoiner(RawLineStore rawStore, int hubFanout, long hubMaxEvents) {
+        this.store = new EventStore(symbols, rawStore);
+        this.hubFanout = hubFanout;
+        this.hubMaxEvents = hubMaxEvents;
+    }
+
+    /**
+     * 一次性入口：根据 FS UUID / SIP Call-ID / 日志中的引用关系，把事件按“通话”分组。
      */
     public Map<String, List<UnifiedEvent>> groupCalls(List<UnifiedEvent> events) {
-        Map<String, List<UnifiedEvent>> buckets = new LinkedHashMap<>();
-        if (events == null || events.isEmpty()) {
-            return buckets;
+        if (events != null) {
+            events.forEach(this);
+        }
+        return groups();
+    }
+
+    /**
+     * 增量入口：登记一个事件，并立即做两类合并：
+     * 1) SIP Call-ID / globalCallId 与 FS UUID 合并
+     * 2) raw 文本中互相引用的 UUID（录音、提醒、桥接等）
+     */
+    @Override
+    public void accept(UnifiedEvent e) {
+        if (e == null) {
+            return;
         }
 
-        // 并查集 parent
-        Map<String, String> parent = new HashMap<>();
+        // ===== SIP Call-ID / globalCallId 与 FS UUID 合并 =====
+        String legId = safeTrim(e.getLegId());
+        Map<String, String> attrs = e.getAttrs();
 
-        // 简单 DSU 实现
-        class DSU {
-            String find(String x) {
-                if (x == null || x.isBlank()) {
-                    return "unknown";
-                }
-                String p = parent.get(x);
-                if (p == null) {
-                    parent.put(x, x);
-                    return x;
-                }
-                if (p.equals(x)) {
-                    return x;
-                }
-                String r = find(p);
-                parent.put(x, r);
-                return r;
-            }
-
-            void union(String a, String b) {
-                if (a == null || b == null) return;
-                if (a.isBlank() || b.isBlank()) return;
-                String ra = find(a);
-                String rb = find(b);
-                if (!ra.equals(rb)) {
-                    parent.put(rb, ra);
+        int row = store.append(e);
+        int leg = store.legSymbol(row);
+        direct.ensure(leg);
+
+        String sipOrGlobal = null;
+        if (attrs != null) {
+            sipOrGlobal = firstNonBlank(
+                    safeTrim(attrs.get("globalCallId")),
+                    safeTrim(attrs.get("sipCallId")),
+                    safeTrim(attrs.get("callId"))
+            );
+        }
+        int sip = register(sipOrGlobal);
+        if (leg != SymbolTable.NONE && sip != SymbolTable.NONE) {
+            direct.union(leg, sip);
+            record(leg, sip);
+        }
+
+        // ===== 建桶用的技术 key =====
+        String technicalKey = firstNonBlank(
+                legId,
+                attrs != null ? safeTrim(attrs.get("sipCallId")) : null,
+                attrs != null ? safeTrim(attrs.get("callId")) : null,
+                "unknown"
+        );
+        if (row == eventKeys.length) {
+            eventKeys = Arrays.copyOf(eventKeys, eventKeys.length * 2);
+        }
+        eventKeys[row] = register(technicalKey);
+
+        // ===== 行内互相引用的 UUID =====
+        if (leg == SymbolTable.NONE) {
+            return;
+        }
+        List<String> refs = e.getRefUuids();
+        if (refs != null) {
+            // 解析阶段已经提取好，直接用
+            for (String ref : refs) {
+                int other = register(ref);
+                if (other != leg && other != SymbolTable.NONE) {
+                    record(leg, ~other);
                 }
             }
+        } else {
+            // 没有预先提取的事件（非 FS 解析器产出），退回到扫原始行
+            unionRawRefs(leg, e.getRaw());
         }
-        DSU dsu = new DSU();
 
-        // ===== 第 1 轮：SIP Call-ID / globalCallId 与 FS UUID 合并 =====
-        for (UnifiedEvent e : events) {
-            String legId = safeTrim(e.getLegId());
-            Map<String, String> attrs = e.getAttrs();
+        // ❌ 暂时关闭：基于 callerNumber 的弱合并，防止把同一主叫的多通话黏成一个
+        // 如果后续确实有“必须靠主叫才能挂上”的场景，再按具体模式单独加规则。
+    }
+
+    /**
+     * 建桶：每个事件根据“技术 key”归属到一个 root 下，桶内是按到达顺序排列的行号。
+     */
+    public Map<String, int[]> groupRows() {
+        Dsu dsu = resolve();
+        int n = store.size();
+        int[] rootOf = new int[n];
+        int[] count = new int[symbols.size()];
+        for (int row = 0; row < n; row++) {
+            rootOf[row] = dsu.find(eventKeys[row]);
+            count[rootOf[row]]++;
+        }
 
-            String sipOrGlobal = null;
-            if (attrs != null) {
-                sipOrGlobal = firstNonBlank(
-                        safeTrim(attrs.get("globalCallId")),
-                        safeTrim(attrs.get("sipCallId")),
-                        safeTrim(attrs.get("callId"))
-                );
+        Map<String, int[]> buckets = new LinkedHashMap<>();
+        int[][] byRoot = new int[symbols.size()][];
+        int[] fill = new int[symbols.size()];
+        for (int row = 0; row < n; row++) {
+            int root = rootOf[row];
+            if (byRoot[root] == null) {
+                byRoot[root] = new int[count[root]];
+                buckets.put(symbols.name(dsu.label[root]), byRoot[root]);
             }
+            byRoot[root][fill[root]++] = row;
+        }
+
+        return buckets;
+    }
+
+    /**
+     * 兼容入口：同 {@link #groupRows()}，但把每一行物化成 UnifiedEvent。
+     */
+    public Map<String, List<UnifiedEvent>> groups() {
+        Map<String, List<UnifiedEvent>> buckets = new LinkedHashMap<>();
+        groupRows().forEach((root, rows) -> buckets.put(root, views(rows)));
+        return buckets;
+    }
+
+    /** 按行号物化事件 */
+    public List<UnifiedEvent> views(int[] rows) {
+        List<UnifiedEvent> list = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            list.add(store.view(row));
+        }
+        return list;
+    }
+
+    /**
+     * 某个符号所在集合的分组 ID，与 {@link #groupRows()} 的 key 一致。
+     * 多个 CallJoiner 之间按 key 拼接分组时用（见 {@link ShardedCorrelator}）。
+     */
+    public String groupOf(int symbol) {
+        Dsu dsu = resolve();
+        return symbols.name(dsu.label[dsu.find(symbol)]);
+    }
+
+    /** 建桶时识别出的全部 hub UUID */
+    public Collection<HubUuid> hubs() {
+        resolve();
+        return hubs.values();
+    }
+
+    /** 某个分组引用到的 hub UUID，没有时为空列表 */
+    public List<HubUuid> hubsOf(String groupId) {
+        resolve();
+        return hubsByGroup.getOrDefault(groupId, List.of());
+    }
+
+    /**
+     * 额外指定一批 hub UUID：只要出现在行内引用的任一端就不据它合并，不看本实例里的扇出和组大小。
+     * 一个分片只看得到 hub 的一部分引用，要用跨分片累计出来的结果（见 {@link ShardedCorrelator}）。
+     */
+    public void assumeHubs(Collection<String> uuids) {
+        assumed = Set.copyOf(uuids);
+        resolved = null;
+    }
 
-            if (legId != null) {
-                dsu.find(legId); // 注册
+    /**
+     * 只作为行内引用出现、自己没有事件也没有参与 SIP 合并的符号（引用到的会议 / 录音 / 脚本 UUID，
+     * 或者事件落在别的分片里的 leg），下标为符号 id。
+     */
+    boolean[] referenceOnly() {
+        boolean[] only = new boolean[symbols.size()];
+        for (int i = 0; i < opCount; i++) {
+            if (opB[i] < 0) {
+                only[~opB[i]] = true;
             }
-            if (sipOrGlobal != null) {
-                dsu.find(sipOrGlobal); // 注册
+        }
+        for (int i = 0; i < opCount; i++) {
+            if (opB[i] >= 0) {
+                only[opA[i]] = false;
+                only[opB[i]] = false;
             }
-            if (legId != null && sipOrGlobal != null) {
-                dsu.union(legId, sipOrGlobal);
+        }
+        for (int row = 0; row < store.size(); row++) {
+            int leg = store.legSymbol(row);
+            if (leg != SymbolTable.NONE) {
+                only[leg] = false;
             }
+            only[eventKeys[row]] = false;
         }
+        return only;
+    }
 
-        // ===== 第 2 轮：raw 文本中互相引用的 UUID（录音、提醒、桥接等） =====
-        for (UnifiedEvent e : events) {
-            String selfLeg = safeTrim(e.getLegId());
-            if (selfLeg == null) {
-                continue;
+    /** 已登记的事件数 */
+    public int size() {
+        return store.size();
+    }
+
+    /** 列式事件存储 */
+    public EventStore store() {
+        return store;
+    }
+
+    /** 本次分析的符号表 */
+    public SymbolTable symbols() {
+        return symbols;
+    }
+
+    private void unionRawRefs(int leg, String raw) {
+        if (raw == null || raw.isEmpty()) {
+            return;
+        }
+        Matcher m = UUID_PATTERN.matcher(raw);
+        while (m.find()) {
+            int other = symbols.internUuid(raw, m.start());
+            direct.ensure(other);
+            if (other != leg) {
+                record(leg, ~other);
             }
-            String raw = e.getRaw();
-            if (raw == null || raw.isEmpty()) {
-                continue;
+        }
+    }
+
+    /** 把 key 登记进符号表和并查集，返回符号 id；空 key 返回 NONE */
+    private int register(String key) {
+        int id = symbols.intern(key);
+        direct.ensure(id);
+        return id;
+    }
+
+    private void record(int a, int b) {
+        if (opCount == opA.length) {
+            opA = Arrays.copyOf(opA, opCount * 2);
+            opB = Arrays.copyOf(opB, opCount * 2);
+        }
+        opA[opCount] = a;
+        opB[opCount] = b;
+        opCount++;
+    }
+
+    // ===== 建桶前：识别 hub，重放合并 =====
+
+    /**
+     * 有新事件时重新识别 hub、重放合并，否则复用上次的结果。
+     * 事件数也要比较：没有新合并操作的事件同样会改变组大小，影响 hub-max-events 的判断。
+     */
+    private Dsu resolve() {
+        if (resolved != null && resolvedOps == opCount && resolvedSymbols == symbols.size()
+                && resolvedRows == store.size()) {
+            return resolved;
+        }
+        boolean[] hub = detectHubs();
+
+        Dsu dsu = new Dsu();
+        dsu.ensure(symbols.size() - 1);
+        // 第 1 轮：SIP Call-ID / globalCallId 与 FS UUID
+        for (int i = 0; i < opCount; i++) {
+            if (opB[i] >= 0) {
+                dsu.union(opA[i], opB[i]);
+            }
+        }
+        // 第 2 轮：行内引用的 UUID，两端任一是 hub 的跳过
+        for (int i = 0; i < opCount; i++) {
+            int b = opB[i];
+            if (b < 0 && (hub == null || (!hub[~b] && !hub[opA[i]]))) {
+                dsu.union(opA[i], ~b);
+            }
+        }
+
+        hubsByGroup = hub == null ? Map.of() : groupHubs(dsu);
+        resolved = dsu;
+        resolvedOps = opCount;
+        resolvedSymbols = symbols.size();
+        resolvedRows = store.size();
+        return dsu;
+    }
+
+    /**
+     * 对行内引用两端的每个 UUID，统计另一端分属多少个独立通话（即时并查集里的不同集合，
+     * 不算它自己所在的集合）；被引用的 UUID 还统计据它合并后的事件数。没有 hub 时返回 null。
+     *
+     * 只在被引用的一端看事件数：作为 leg 引用别人的一方本来就是一通电话，它自己事件多不说明什么。
+     */
+    private boolean[] detectHubs() {
+        hubs = Map.of();
+        if (hubFanout <= 0 && hubMaxEvents <= 0 && assumed.isEmpty()) {
+            return null;
+        }
+
+        int n = store.size();
+        long[] eventsOf = new long[symbols.size()];
+        for (int row = 0; row < n; row++) {
+            eventsOf[direct.find(eventKeys[row])]++;
+        }
+
+        // (UUID, 另一端所在集合, 这一端是否被引用) 排序后按 UUID 分段、按集合去重
+        int refOps = 0;
+        for (int i = 0; i < opCount; i++) {
+            if (opB[i] < 0) refOps++;
+        }
+        long[] pairs = new long[refOps * 2];
+        int k = 0;
+        for (int i = 0; i < opCount; i++) {
+            if (opB[i] < 0) {
+                pairs[k++] = pair(~opB[i], direct.find(opA[i]), true);
+                pairs[k++] = pair(opA[i], direct.find(~opB[i]), false);
             }
+        }
+        Arrays.sort(pairs);
 
-            Matcher m = UUID_PATTERN.matcher(raw);
-            while (m.find()) {
-                String otherUuid = safeTrim(m.group());
-                if (otherUuid != null && !otherUuid.equals(selfLeg)) {
-                    dsu.union(selfLeg, otherUuid);
+        boolean[] hub = null;
+        Map<Integer, HubUuid> found = new LinkedHashMap<>();
+        int i = 0;
+        while (i < pairs.length) {
+            int sym = (int) (pairs[i] >>> 32);
+            int own = direct.find(sym);
+            int fanOut = 0;
+            long events = eventsOf[own];
+            boolean anyReferenced = false;
+            while (i < pairs.length && (int) (pairs[i] >>> 32) == sym) {
+                // 同一个 (UUID, 集合) 的若干条相邻，两端的记录只差最低位
+                long symRoot = pairs[i] >>> 1;
+                int root = (int) (symRoot & 0x7FFFFFFFL);
+                boolean referenced = false;
+                for (; i < pairs.length && pairs[i] >>> 1 == symRoot; i++) {
+                    referenced |= (pairs[i] & 1) != 0;
+                }
+                anyReferenced |= referenced;
+                if (root == own) {
+                    continue;
+                }
+                fanOut++;
+                if (referenced) {
+                    events += eventsOf[root];
+                }
+            }
+            if ((hubFanout > 0 && fanOut > hubFanout) || (anyReferenced && hubMaxEvents > 0 && events > hubMaxEvents)
+                    || assumed.contains(symbols.name(sym))) {
+                if (hub == null) {
+                    hub = new boolean[symbols.size()];
                 }
+                hub[sym] = true;
+                HubUuid h = new HubUuid();
+                h.setUuid(symbols.name(sym));
+                h.setFanOut(fanOut);
+                h.setEvents(events);
+                found.put(sym, h);
             }
         }
+        hubs = found;
+        return hub;
+    }
 
-        // ❌ 暂时关闭：基于 callerNumber 的弱合并，防止把同一主叫的多通话黏成一个
-        // 如果后续确实有“必须靠主叫才能挂上”的场景，再按具体模式单独加规则。
+    /** 排序键：高 32 位 UUID，低 32 位为 (另一端集合 << 1 | 是否被引用) */
+    private static long pair(int sym, int otherRoot, boolean referenced) {
+        return ((long) sym << 32) | ((long) otherRoot << 1) | (referenced ? 1 : 0);
+    }
+
+    /** 每个 hub 挂到与它有引用关系的分组上：引用了 hub 的，以及被作为 leg 的 hub 引用的 */
+    private Map<String, List<HubUuid>> groupHubs(Dsu dsu) {
+        Map<Integer, Set<Integer>> rootsByHub = new HashMap<>();
+        for (int i = 0; i < opCount; i++) {
+            int b = opB[i];
+            if (b >= 0) {
+                continue;
+            }
+            if (hubs.containsKey(~b)) {
+                rootsByHub.computeIfAbsent(~b, x -> new LinkedHashSet<>()).add(dsu.find(opA[i]));
+            }
+            if (hubs.containsKey(opA[i])) {
+                rootsByHub.computeIfAbsent(opA[i], x -> new LinkedHashSet<>()).add(dsu.find(~b));
+            }
+        }
+        Map<String, List<HubUuid>> byGroup = new HashMap<>();
+        rootsByHub.forEach((ref, roots) -> {
+            for (int root : roots) {
+                byGroup.computeIfAbsent(symbols.name(dsu.label[root]), x -> new ArrayList<>()).add(hubs.get(ref));
+            }
+        });
+        return byGroup;
+    }
 
-        // ===== 建桶：每个事件根据“技术 key”归属到一个 root 下 =====
-        for (UnifiedEvent e : events) {
-            Map<String, String> attrs = e.getAttrs();
+    // ===== 简单 DSU 实现（下标为符号 id） =====
 
-            String technicalKey = firstNonBlank(
-                    safeTrim(e.getLegId()),
-                    attrs != null ? safeTrim(attrs.get("sipCallId")) : null,
-                    attrs != null ? safeTrim(attrs.get("callId")) : null,
-                    "unknown"
-            );
+    /**
+     * parent / rank 按秩合并，find 迭代做路径减半，不会因为长引用链爆栈。
+     * label 是每个集合对外的代表 key：按秩合并后真正的根可能换成另一边，
+     * 但分组 ID 仍然取 union(a, b) 中 a 这一侧原来的代表，和按参数顺序挂根时的结果一致。
+     */
+    static final class Dsu {
+        int[] parent = new int[1024];
+        byte[] rank = new byte[1024];
+        int[] label = new int[1024];
+        int size;
+
+        void ensure(int id) {
+            if (id < size) {
+                return;
+            }
+            if (id >= parent.length) {
+                int cap = Math.max(parent.length * 2, id + 1);
+                parent = Arrays.copyOf(parent, cap);
+                rank = Arrays.copyOf(rank, cap);
+                label = Arrays.copyOf(label, cap);
+            }
+            while (size <= id) {
+                parent[size] = size;
+                label[size] = size;
+                size++;
+            }
+        }
 
-            String root = dsu.find(technicalKey);
-            buckets.computeIfAbsent(root, k -> new ArrayList<>()).add(e);
+        int find(int x) {
+            while (parent[x] != x) {
+                parent[x] = parent[parent[x]];
+                x = parent[x];
+            }
+            return x;
         }
 
-        return buckets;
+        void union(int a, int b) {
+            int ra = find(a);
+            int rb = find(b);
+            if (ra == rb) {
+                return;
+            }
+            int keep = label[ra];
+            if (rank[ra] < rank[rb]) {
+                parent[ra] = rb;
+                label[rb] = keep;
+            } else {
+                parent[rb] = ra;
+                if (rank[ra] == rank[rb]) {
+                    rank[ra]++;
+                }
+            }
+        }
     }
 
     private static String safeTrim(String v) {
@@ -1,11 +1,16 @@
 package com.fscallflow.analyzer.correlate;
 
 import com.fscallflow.analyzer.model.*;
+import com.fscallflow.analyzer.store.RawLineStore;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -24,380 +29,291 @@ public class EventCorrelator {
             FsEventType.BRIDGE
     );
 
+    /** 组数少于这个值时直接串行构图，省掉调度开销 */
+    private static final int PARALLEL_MIN_GROUPS = 64;
+
+    /** forEachGroup 每次物化的最大事件数，大分组分片给出 */
+    private static final int GROUP_SLICE_EVENTS = 65536;
+
+    private final int parallelism;
+    private final ForkJoinPool pool;
+
+    /** 增量关联：所有腿挂机后再安静多久（日志时间）才收尾 */
+    @Value("${analyzer.stream.quiet-period-ms:5000}")
+    private long quietPeriodMs;
+
+    /** 增量关联：一直等不到挂机时，空闲多久（日志时间）强制收尾 */
+    @Value("${analyzer.stream.idle-timeout-ms:7200000}")
+    private long idleTimeoutMs;
+
+    /** 增量关联：未结束通话缓存事件的内存预算，0 表示不限制 */
+    @Value("${analyzer.stream.memory-budget-bytes:268435456}")
+    private long streamMemoryBudget;
+
+    /** 分片关联：每个时间分片的长度 */
+    @Value("${analyzer.shard.window-ms:900000}")
+    private long shardWindowMs;
+
+    /** 分片关联：分片边界两侧多宽以内的分组参与跨分片拼接 */
+    @Value("${analyzer.shard.margin-ms:600000}")
+    private long shardMarginMs;
+
+    /** 多来源关联：一通电话结束后再等多久（日志时间）其他来源的同 key 事件 */
+    @Value("${analyzer.join.window-ms:30000}")
+    private long joinWindowMs;
+
+    /** 引用同一个 UUID 的独立通话数超过该值即视为 hub，不据它合并；0 表示关闭 */
+    @Value("${analyzer.correlate.hub-fanout:32}")
+    private int hubFanout;
+
+    /** 据同一个 UUID 合并后组内事件数超过该值也视为 hub；0 表示关闭 */
+    @Value("${analyzer.correlate.hub-max-events:20000}")
+    private long hubMaxEvents;
+
+    public EventCorrelator(@Value("${analyzer.correlate.parallelism:0}") int parallelism) {
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(this.parallelism);
+    }
+
     public List<AnalyzeResult> buildCallResults(List<UnifiedEvent> events) {
         if (events == null || events.isEmpty()) {
             return List.of();
         }
 
         // 使用全局呼叫合并器，把同一通话的多个 UUID / SIP 会话合并成一个分组
-        CallJoiner joiner = new CallJoiner();
-        Map<String, List<UnifiedEvent>> groups = joiner.groupCalls(events);
-
-        List<AnalyzeResult> results = new ArrayList<>();
+        CallJoiner joiner = joiner(null);
+        events.forEach(joiner);
+        return buildCallResults(joiner);
+    }
 
-        for (Map.Entry<String, List<UnifiedEvent>> entry : groups.entrySet()) {
-            String groupId = entry.getKey();
-            List<UnifiedEvent> evts = entry.getValue();
-            if (evts == null || evts.isEmpty()) {
-                continue;
-            }
+    /**
+     * 按配置的 hub 阈值新建一个 CallJoiner，一次分析一个。
+     *
+     * @param rawStore 原始行存储；为 null 时原始行留在堆上
+     */
+    public CallJoiner joiner(RawLineStore rawStore) {
+        return new CallJoiner(rawStore, hubFanout, hubMaxEvents);
+    }
 
-            // ===== 噪声组过滤：callId=unknown 且 不包含任何核心信令事件（INVITE/ANSWER/HANGUP/BRIDGE）的，直接视为噪声丢掉 =====
-            boolean hasCoreSignal = evts.stream()
-                    .map(UnifiedEvent::getType)
-                    .filter(Objects::nonNull)
-                    .anyMatch(CORE_SIGNAL_TYPES::contains);
+    /**
+     * 流式入口：事件已经在解析时边读边喂给 joiner，这里只负责建桶和构图。
+     * 噪声判断直接读列，只有保留下来的组才物化成 UnifiedEvent。
+     *
+     * 各组之间没有共享状态，组数较多时在专用 ForkJoinPool 上并行构图；
+     * 结果顺序仍与分组顺序一致，和串行构图完全相同。
+     */
+    public List<AnalyzeResult> buildCallResults(CallJoiner joiner) {
+        return buildCallResults(joiner, () -> { });
+    }
 
-            boolean noiseGroup = "unknown".equals(groupId) && !hasCoreSignal;
-            if (noiseGroup) {
-                continue;
+    /**
+     * 同上，每构好一个分组调用一次 onGroupBuilt（报告进度用）；并行构图时会在多个线程上调用。
+     */
+    public List<AnalyzeResult> buildCallResults(CallJoiner joiner, Runnable onGroupBuilt) {
+        List<Map.Entry<String, int[]>> kept = keptGroups(joiner);
+
+        if (parallelism <= 1 || kept.size() < PARALLEL_MIN_GROUPS) {
+            List<AnalyzeResult> results = new ArrayList<>(kept.size());
+            for (Map.Entry<String, int[]> g : kept) {
+                results.add(toResult(g.getKey(), joiner, g.getValue()));
+                onGroupBuilt.run();
             }
-            // ===================================================================================================
-
-            // 按时间排序（允许 ts 为空，排在最后）
-            List<UnifiedEvent> sorted = evts.stream()
-                    .sorted(Comparator.comparing(
-                            UnifiedEvent::getTs,
-                            Comparator.nullsLast(Comparator.naturalOrder())))
-                    .toList();
-
-            // 用分组 ID 作为 CallGraph 的 globalId（真正的 FS UUID / SIP Call-ID 会在 summary.fsCallIds 里体现）
-            CallGraph graph = buildGraph(groupId, sorted);
-            String mermaid = buildMermaid(graph);
-
-            AnalyzeResult ar = new AnalyzeResult();
-            ar.setGraph(graph);
-            ar.setMermaid(mermaid);
-            results.add(ar);
+            return results;
         }
 
-        return results;
+        // 构图阶段只读 EventStore，可以多线程共享；parallelStream + toList 保持原顺序
+        return pool.submit(() -> kept.parallelStream()
+                        .map(g -> {
+                            AnalyzeResult ar = toResult(g.getKey(), joiner, g.getValue());
+                            onGroupBuilt.run();
+                            return ar;
+                        })
+                        .toList())
+                .join();
     }
 
+    /**
+     * 同 {@link #buildCallResults(CallJoiner)}，但在调用线程上按分组顺序逐个构图，构好一通就交给 sink，
+     * 不攒整份结果（NDJSON 输出用）。
+     */
+    public void forEachResult(CallJoiner joiner, Consumer<AnalyzeResult> sink) {
+        for (Map.Entry<String, int[]> g : keptGroups(joiner)) {
+            sink.accept(toResult(g.getKey(), joiner, g.getValue()));
+        }
+    }
 
+    /** 建桶、报告 hub，去掉噪声组，按分组顺序返回要构图的分组 */
+    private List<Map.Entry<String, int[]>> keptGroups(CallJoiner joiner) {
+        Map<String, int[]> groups = joiner.groupRows();
+        EventStore store = joiner.store();
+        for (HubUuid hub : joiner.hubs()) {
+            log.warn("hub UUID 不参与合并: uuid={}, 引用它的通话数={}, 合并后事件数={}",
+                    hub.getUuid(), hub.getFanOut(), hub.getEvents());
+        }
 
-    private CallGraph buildGraph(String callId, List<UnifiedEvent> events) {
-        CallGraph g = new CallGraph();
-        g.setGlobalId(callId);
-
-
-        // 固定三类节点：PSTN / FS / Agent
-        CallNode pstn = new CallNode();
-        pstn.setId("node-pstn");
-        pstn.setType("PSTN");
-        pstn.setLabel("PSTN");
-
-        CallNode fs = new CallNode();
-        fs.setId("node-fs");
-        fs.setType("FS");
-        fs.setLabel("FS");
-
-        CallNode agent = new CallNode();
-        agent.setId("node-agent");
-        agent.setType("Agent");
-        agent.setLabel("Agent");
-
-        g.setNodes(List.of(pstn, fs, agent));
-
-        List<CallEdge> edges = new ArrayList<>();
-        List<Diagnosis> diagnoses = new ArrayList<>();
-
-        StringBuilder dtmfSeq = new StringBuilder();
-        boolean anyQueueEvent = false;
-        boolean anyBridge = false;
-        boolean answered = false;
-
-        Long firstTs = null;
-        Long lastTs = null;
-
-        // 下面这些 flag 用来“只保留第一条 / 最后一条”
-        boolean inviteInAdded = false;
-        boolean inviteOutAdded = false;
-        boolean answerAdded = false;
-        boolean bridgeAdded = false;
-        Long lastHangupTs = null;   // 先记录时间，最后再补 HANGUP 边
-        // 构建 summary 前，先算主通道（primaryFsId）以用于 DTMF 过滤
-        LinkedHashSet<String> fsIdsPre = events.stream()
-                .map(UnifiedEvent::getLegId)
-                .filter(Objects::nonNull)
-                .map(String::trim)
-                .filter(s -> !s.isEmpty() && !"unknown".equals(s))
-                .collect(Collectors.toCollection(LinkedHashSet::new));
-
-        String primaryFsId = fsIdsPre.stream().findFirst().orElse(callId);
-        // 用于 DTMF 去重：同一腿、同一 digit、时间很近，则视为一次按键
-        String lastDtmfDigit = null;
-        Long lastDtmfTs = null;
+        List<Map.Entry<String, int[]>> kept = new ArrayList<>(groups.size());
 
-        for (UnifiedEvent e : events) {
-            Long tsMillis = 0l;
-            if (e.getTs() != null) {
-                tsMillis = e.getTs()
-                        .atZone(ZoneId.systemDefault())
-                        .toInstant()
-                        .toEpochMilli();
-
-                if (firstTs == null || tsMillis < firstTs) firstTs = tsMillis;
-                if (lastTs  == null || tsMillis > lastTs)  lastTs  = tsMillis;
+        for (Map.Entry<String, int[]> entry : groups.entrySet()) {
+            String groupId = entry.getKey();
+            int[] rows = entry.getValue();
+            if (rows == null || rows.length == 0) {
+                continue;
             }
 
-            FsEventType type = e.getType();
-
-            // OTHER / RTP_EVENT 之类已经在外面过滤过，如果还有，这里也继续跳过
-            if (type == FsEventType.OTHER || type == FsEventType.RTP_EVENT) {
+            // ===== 噪声组过滤：callId=unknown 且 不包含任何核心信令事件（INVITE/ANSWER/HANGUP/BRIDGE）的，直接视为噪声丢掉 =====
+            boolean noiseGroup = "unknown".equals(groupId) && !hasCoreSignal(store, rows);
+            if (noiseGroup) {
                 continue;
             }
+            // ===================================================================================================
 
-            switch (type) {
-                case INVITE_INBOUND -> {
-                    if (inviteInAdded) break;   // 只保留第一条
-                    inviteInAdded = true;
-
-                    CallEdge edge = new CallEdge();
-                    edge.setFromId("node-pstn");
-                    edge.setToId("node-fs");
-                    edge.setType(type.name());
-                    edge.setStartTs(tsMillis == null ? 0L : tsMillis);
-                    edge.setAttrs(e.getAttrs() == null ? Map.of() : e.getAttrs());
-                    edges.add(edge);
-                }
+            kept.add(entry);
+        }
+        return kept;
+    }
 
-                case INVITE_OUTBOUND -> {
-                    if (inviteOutAdded) break;  // 只保留第一条
-                    inviteOutAdded = true;
-
-                    CallEdge edge = new CallEdge();
-                    edge.setFromId("node-fs");
-                    edge.setToId("node-pstn");  // 如果以后要画到 Agent，也可以改成 node-agent
-                    edge.setType(type.name());
-                    edge.setStartTs(tsMillis == null ? 0L : tsMillis);
-                    edge.setAttrs(e.getAttrs() == null ? Map.of() : e.getAttrs());
-                    edges.add(edge);
-                }
+    /**
+     * 在线增量入口：按配置的安静期 / 空闲超时创建一个 IncrementalCorrelator，
+     * 每结束一通电话就把结果推给 sink，适合很长的日志或实时跟读。
+     * 缓存的事件超出内存预算时提前收尾最久没有活动的通话；hub 阈值与批量的 CallJoiner 相同。
+     */
+    public IncrementalCorrelator incremental(Consumer<AnalyzeResult> sink) {
+        return new IncrementalCorrelator(this, quietPeriodMs, idleTimeoutMs, streamMemoryBudget,
+                hubFanout, hubMaxEvents, sink);
+    }
 
-                case ANSWER -> {
-                    if (answerAdded) break;     // 先简化为只保留第一条 ANSWER
-                    answerAdded = true;
-                    answered = true;
-
-                    CallEdge edge = new CallEdge();
-                    edge.setFromId("node-fs");
-                    edge.setToId("node-agent");
-                    edge.setType(type.name());
-                    edge.setStartTs(tsMillis == null ? 0L : tsMillis);
-                    edge.setAttrs(e.getAttrs() == null ? Map.of() : e.getAttrs());
-                    edges.add(edge);
-                }
-                case DTMF -> {
-                    String digit = e.getAttrs() != null ? e.getAttrs().get("digit") : null;
-                    if (digit != null && primaryFsId != null && primaryFsId.equals(e.getLegId())) {
-                        Long ts = e.getTs() == null ? null :
-                                e.getTs().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-
-                        // 同一腿 + 相同 digit + 时间差 <= 2 秒，视为同一次按键（RTP/CHANNEL 重复日志）
-                        if (digit.equals(lastDtmfDigit)
-                                && ts != null
-                                && lastDtmfTs != null
-                                && Math.abs(ts - lastDtmfTs) <= 2000L) {
-                            // 忽略这条重复 DTMF
-                        } else {
-                            dtmfSeq.append(digit);
-                            lastDtmfDigit = digit;
-                            lastDtmfTs = ts;
-                        }
-                    }
-                }
-                case CALLCENTER_EVENT -> {
-                    if (!anyQueueEvent) {
-                        // 只保留第一条队列事件
-                        CallEdge edge = new CallEdge();
-                        edge.setFromId("node-fs");
-                        edge.setToId("node-agent"); // 也可以改成 node-queue
-                        edge.setType(type.name());
-                        edge.setStartTs(tsMillis);
-                        edge.setAttrs(e.getAttrs() == null ? Map.of() : e.getAttrs());
-                        edges.add(edge);
-                    }
-                    anyQueueEvent = true;
-                }
+    /**
+     * 多来源入口：FS 日志和 SBC / HTTP 网关等日志按时间归并，在配置的窗口内按共享 key 连接，
+     * 每结束一通电话就把结果推给 sink。
+     */
+    public MergeJoinCorrelator mergeJoin(Consumer<AnalyzeResult> sink) {
+        return new MergeJoinCorrelator(new IncrementalCorrelator(this, joinWindowMs, idleTimeoutMs, 0,
+                hubFanout, hubMaxEvents, sink));
+    }
 
-                case BRIDGE -> {
-                    if (bridgeAdded) break;
-                    bridgeAdded = true;
-                    anyBridge = true;
-
-                    CallEdge edge = new CallEdge();
-                    edge.setFromId("node-fs");
-                    edge.setToId("node-agent");
-                    edge.setType(type.name());
-                    edge.setStartTs(tsMillis);
-                    edge.setAttrs(e.getAttrs() == null ? Map.of() : e.getAttrs());
-                    edges.add(edge);
-                }
+    /**
+     * 分片入口：按配置的时间窗口把事件切成分片，各分片在构图线程池上并行关联，
+     * 跨分片的通话按共享的 UUID / SIP Call-ID 拼接，适合跨天的大日志；hub 阈值与批量的 CallJoiner 相同，
+     * 扇出跨分片累计。
+     *
+     * @param rawStore 原始行存储，各分片共用；可以为 null
+     */
+    public ShardedCorrelator sharded(RawLineStore rawStore) {
+        return new ShardedCorrelator(this, pool, parallelism, rawStore, shardWindowMs, shardMarginMs,
+                hubFanout, hubMaxEvents);
+    }
 
-                case HANGUP -> {
-                    // HANGUP 我们只保留最后一条：先记时间，最后统一加边
-                    if (lastHangupTs == null || tsMillis > lastHangupTs) {
-                        lastHangupTs = tsMillis;
+    /**
+     * 按分组顺序把每组事件（按时间排好、原始行已取回）交给 sink，持久化事件段用。
+     *
+     * - 噪声组（unknown 且没有核心信令）读回来也不会构图，不给出，避免把整组无 key 的日志物化一遍
+     * - 大分组按 {@value #GROUP_SLICE_EVENTS} 个事件一片依次给出，同一个 groupId 连续调用多次，
+     *   一次只物化一片
+     */
+    public void forEachGroup(CallJoiner joiner, BiConsumer<String, List<UnifiedEvent>> sink) {
+        EventStore store = joiner.store();
+        for (Map.Entry<String, int[]> g : joiner.groupRows().entrySet()) {
+            if ("unknown".equals(g.getKey()) && !hasCoreSignal(store, g.getValue())) {
+                continue;
+            }
+            int[] rows = EventOrder.sortRows(store, g.getValue());
+            for (int from = 0; from < rows.length; from += GROUP_SLICE_EVENTS) {
+                int[] slice = Arrays.copyOfRange(rows, from, Math.min(rows.length, from + GROUP_SLICE_EVENTS));
+                List<UnifiedEvent> events = joiner.views(slice);
+                for (int i = 0; i < slice.length; i++) {
+                    UnifiedEvent e = events.get(i);
+                    if (e.getRaw() == null) {
+                        e.setRaw(store.raw(slice[i]));
                     }
                 }
-
-                default -> {
-                    // 其他暂时不画
-                }
+                sink.accept(g.getKey(), events);
             }
         }
+    }
 
-        // 把 DTMF 序列合并成一条边
-        if (dtmfSeq.length() > 0) {
-            CallEdge edge = new CallEdge();
-            edge.setFromId("node-agent");
-            edge.setToId("node-fs");
-            edge.setType("DTMF");
-            edge.setStartTs(firstTs != null ? firstTs : 0L);
-            edge.setAttrs(Map.of("digit", dtmfSeq.toString()));
-            edges.add(edge);
-        }
-
-        // 最后一条 HANGUP，补上一条 FS -> PSTN
-        if (lastHangupTs != null) {
-            CallEdge edge = new CallEdge();
-            edge.setFromId("node-fs");
-            edge.setToId("node-pstn");
-            edge.setType("HANGUP");
-            edge.setStartTs(lastHangupTs);
-            edge.setAttrs(Map.of());
-            edges.add(edge);
-        }
-
-        g.setEdges(edges);
-
-        String caller = findFirstAttr(events,
-                "callerNumber", "ani", "caller_id_number");
-
-        String callee = findFirstAttr(events,
-                "calleeNumber", "did", "destination_number");
-
-        String agentId = findFirstAttr(events,
-                "agentId", "agent_id", "extension");
-
-        // ========= Summary =========
-        CallSummary summary = new CallSummary();
-
-        // 只统计本组内出现的 FS legId（真实 UUID），不再混入业务 callId
-        LinkedHashSet<String> fsIds = events.stream()
-                .map(UnifiedEvent::getLegId)
-                .filter(Objects::nonNull)
-                .map(String::trim)
-                .filter(s -> !s.isEmpty() && !"unknown".equals(s))
-                .collect(Collectors.toCollection(LinkedHashSet::new));
-
-        summary.setPrimaryFsCallId(primaryFsId);
-        summary.setFsCallIds(new ArrayList<>(fsIds));
-
-        summary.setCaller(caller);
-        summary.setCallee(callee);
-        summary.setAgentId(agentId);
-        String direction = events.stream().anyMatch(e -> e.getType() == FsEventType.INVITE_INBOUND)
-                ? "inbound" : "outbound";
-        summary.setDirection(direction);
-        summary.setAnswered(answered);
-        String queueNameFromEvents = events.stream()
-                .map(ev -> ev.getAttrs() == null ? null : ev.getAttrs().get("queueName"))
-                .filter(Objects::nonNull)
-                .findFirst()
-                .orElse(null);
-
-        // 是否已经进入队列
-        boolean queueDetected =
-                anyQueueEvent ||
-                        events.stream().anyMatch(ev ->
-                                ev.getAttrs() != null &&
-                                        (ev.getAttrs().containsKey("queueName")
-                                                || "true".equals(ev.getAttrs().get("callcenterBridge")))
-                        );
-        boolean queued = queueNameFromEvents != null || queueDetected; // queueDetected 是诊断里那套
-
-        summary.setQueued(queued);
-        summary.setQueueName(queueNameFromEvents);
-
-        summary.setDtmfSequence(dtmfSeq.length() > 0 ? dtmfSeq.toString().toUpperCase() : null);
-
-        if (firstTs != null) {
-            summary.setStartTime(String.valueOf(firstTs));
-        }
-        if (lastTs != null) {
-            summary.setEndTime(String.valueOf(lastTs));
-            summary.setDurationMs(lastTs - firstTs);
+    /**
+     * 事件段读回来的一个分组（已按时间排好）-> AnalyzeResult；与批量路径一样过滤噪声组，噪声组返回 null。
+     */
+    public AnalyzeResult resultOf(String groupId, List<UnifiedEvent> sorted) {
+        if (sorted.isEmpty() || ("unknown".equals(groupId) && sorted.stream().noneMatch(e -> isCoreSignal(e.getType())))) {
+            return null;
         }
+        return buildResult(groupId, sorted);
+    }
 
-        g.setSummary(summary);
-
-        // ========= Diagnosis 逻辑重写 =========
-
+    /**
+     * 单个分组 -> AnalyzeResult（增量路径，{@link IncrementalCorrelator} 用）：
+     * evts 为到达顺序，按 (时间戳, 到达序号) 排序后构图。
+     */
+    AnalyzeResult toResult(String groupId, List<UnifiedEvent> evts) {
+        return buildResult(groupId, EventOrder.sort(evts));
+    }
 
+    /** 批量路径：直接在 EventStore 的时间戳列上排行号，排好再物化 */
+    AnalyzeResult toResult(String groupId, CallJoiner joiner, int[] rows) {
+        return toResult(groupId, joiner, rows, joiner.hubsOf(groupId));
+    }
 
-        // 坐席 ID（如果存在）
-        String detectedAgent =
-                events.stream()
-                        .map(ev -> ev.getAttrs() == null ? null : ev.getAttrs().get("agentId"))
-                        .filter(Objects::nonNull)
-                        .findFirst()
-                        .orElse(null);
-        // 增加兜底：有 ANSWER 且有 agentId 也视为桥接成功
-        boolean bridgeDetected =
-                anyBridge ||
-                        events.stream().anyMatch(ev ->
-                                ev.getAttrs() != null &&
-                                        "true".equals(ev.getAttrs().get("callcenterBridge"))
-                        ) ||
-                        (answered && detectedAgent != null);
+    /** 同上，挂上调用方给出的 hub（分片路径只挂确认过的 hub） */
+    AnalyzeResult toResult(String groupId, CallJoiner joiner, int[] rows, Collection<HubUuid> hubs) {
+        AnalyzeResult ar = buildResult(groupId, joiner.views(EventOrder.sortRows(joiner.store(), rows)));
+        attachHubs(ar, hubs);
+        return ar;
+    }
 
+    /**
+     * 把本组引用到的 hub UUID 写进 CallGraph，并加一条诊断说明没有据它合并。
+     */
+    static void attachHubs(AnalyzeResult ar, Collection<HubUuid> hubs) {
+        if (hubs == null || hubs.isEmpty()) {
+            return;
+        }
+        CallGraph g = ar.getGraph();
+        g.setHubUuids(new ArrayList<>(hubs));
+
+        Diagnosis d = new Diagnosis();
+        d.setType("HUB");
+        d.setSeverity("INFO");
+        d.setTitle("引用了 hub UUID：" + hubs.stream().map(HubUuid::getUuid).collect(Collectors.joining(", ")));
+        d.setDetail("这些 UUID 同时出现在很多通电话的日志里（会议、录音、脚本等），没有据它们把通话合并到一起。");
+        d.setHints(List.of(
+                "如果确实需要把这些通话看成一通，调大 analyzer.correlate.hub-fanout",
+                "查看对应 UUID 的会议 / 录音 / lua 脚本日志确认它的用途"
+        ));
+        g.getDiagnoses().add(d);
+    }
 
+    /** sorted 已按时间排好：构图，再生成 Mermaid */
+    private AnalyzeResult buildResult(String groupId, List<UnifiedEvent> sorted) {
+        // 用分组 ID 作为 CallGraph 的 globalId（真正的 FS UUID / SIP Call-ID 会在 summary.fsCallIds 里体现）
+        CallGraph graph = buildGraph(groupId, sorted);
+        String mermaid = buildMermaid(graph);
 
+        AnalyzeResult ar = new AnalyzeResult();
+        ar.setGraph(graph);
+        ar.setMermaid(mermaid);
+        return ar;
+    }
 
-        // ================= 队列诊断 =================
-        if (!queueDetected) {
-            Diagnosis d = new Diagnosis();
-            d.setType("QUEUE");
-            d.setSeverity("WARNING");
-            d.setTitle("呼叫未进入队列");
-            d.setDetail("未检测到 callcenter 队列事件或排队痕迹。");
-            d.setHints(List.of(
-                    "检查 Dialplan 是否正确进入队列流程 (mod_callcenter)",
-                    "确认 DID / 分机 呼叫路由是否匹配队列规则"
-            ));
-            diagnoses.add(d);
-        }
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
 
-        // ================= 坐席桥接诊断 =================
-        if (!bridgeDetected) {
-            Diagnosis d = new Diagnosis();
-            d.setType("BRIDGE");
-            d.setSeverity("WARNING");
-            d.setTitle("呼叫未桥接坐席");
-            d.setDetail("未检测到 BRIDGE 或坐席桥接事件。可能坐席不可用或路由错误。");
-            d.setHints(List.of(
-                    "检查队列是否有人处于 Ready 状态",
-                    "查看 mod_callcenter 日志确认是否尝试拨打坐席"
-            ));
-            diagnoses.add(d);
-        }
+    /** 是否为核心信令事件（INVITE/ANSWER/HANGUP/BRIDGE） */
+    static boolean isCoreSignal(FsEventType type) {
+        return type != null && CORE_SIGNAL_TYPES.contains(type);
+    }
 
-        // ================= DTMF =================
-        if (dtmfSeq.length() > 0) {
-            Diagnosis d = new Diagnosis();
-            d.setType("DTMF");
-            d.setSeverity("INFO");
-            d.setTitle("用户按键序列：" + dtmfSeq);
-            d.setDetail("根据日志检测到的按键记录，仅供参考。");
-            diagnoses.add(d);
+    /**
+     * 按时间顺序把事件喂给 {@link CallFeatureAccumulator}，一遍扫完得到边、summary 和诊断。
+     */
+    private CallGraph buildGraph(String callId, List<UnifiedEvent> events) {
+        CallFeatureAccumulator acc = new CallFeatureAccumulator();
+        for (UnifiedEvent e : events) {
+            acc.add(e);
         }
-
-        // 保存诊断结果
-        g.setDiagnoses(diagnoses);
-
-        return g;
+        return acc.toGraph(callId);
     }
 
 
@@ -437,6 +353,20 @@ public class EventCorrelator {
         return sb.toString();
     }
 
+    /** 构图时会被跳过的类型（OTHER / RTP_EVENT / 没有类型） */
+    static boolean isNoiseType(FsEventType type) {
+        return type == null || type == FsEventType.OTHER || type == FsEventType.RTP_EVENT;
+    }
+
+    static boolean hasCoreSignal(EventStore store, int[] rows) {
+        for (int row : rows) {
+            if (isCoreSignal(store.type(row))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private String mapNodeIdToName(String nodeId) {
         return switch (nodeId) {
             case "node-pstn" -> "PSTN";
@@ -445,18 +375,4 @@ public class EventCorrelator {
         };
     }
 
-    private String findFirstAttr(List<UnifiedEvent> events, String... keys) {
-        for (UnifiedEvent e : events) {
-            Map<String, String> attrs = e.getAttrs();
-            if (attrs == null) continue;
-            for (String k : keys) {
-                String v = attrs.get(k);
-                if (v != null && !v.isBlank()) {
-                    return v;
-                }
-            }
-        }
-        return null;
-    }
-
 }
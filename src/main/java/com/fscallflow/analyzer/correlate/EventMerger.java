@@ -0,0 +1,73 @@
+package com.fscallflow.analyzer.correlate;
+
+import com.fscallflow.analyzer.model.UnifiedEvent;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * 多条事件流按日志时间做 k 路归并：每条流只看队头一个事件，按 (时间戳, 来源序号) 出队。
+ * 没有时间戳的事件沿用该流上一个事件的时间，所以同一条流内部的顺序不变。
+ *
+ * 要求每条流自身大致按时间排好（FS 日志、轮转出来的各个文件都满足），内存只和流的条数有关。
+ */
+public final class EventMerger {
+
+    private EventMerger() {
+    }
+
+    /**
+     * 把 sources 归并完，事件按时间顺序连同它所在的流推给 sink。不负责关闭 sources。
+     * 某条流读取失败（迭代器抛出异常）时立即原样抛出，不把它当成流结束继续归并其余的流。
+     *
+     * @return 推给 sink 的事件数
+     */
+    public static long merge(List<EventSource> sources, BiConsumer<EventSource, UnifiedEvent> sink) {
+        PriorityQueue<Head> heads = new PriorityQueue<>(
+                Comparator.comparingLong((Head h) -> h.key).thenComparingInt(h -> h.index));
+        for (int i = 0; i < sources.size(); i++) {
+            Head h = new Head(sources.get(i), i);
+            if (h.advance()) {
+                heads.add(h);
+            }
+        }
+
+        long total = 0;
+        while (!heads.isEmpty()) {
+            Head h = heads.poll();
+            sink.accept(h.source, h.event);
+            total++;
+            if (h.advance()) {
+                heads.add(h);
+            }
+        }
+        return total;
+    }
+
+    /** 一条流的队头 */
+    private static final class Head {
+        final EventSource source;
+        final int index;
+        UnifiedEvent event;
+        /** 归并用的时间：事件自己的时间戳，没有时沿用上一个 */
+        long key = UnifiedEvent.NO_TS;
+
+        Head(EventSource source, int index) {
+            this.source = source;
+            this.index = index;
+        }
+
+        boolean advance() {
+            event = source.next();
+            if (event == null) {
+                return false;
+            }
+            if (event.getTsMicros() != UnifiedEvent.NO_TS) {
+                key = event.getTsMicros();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.fscallflow.analyzer.correlate;
+
+import com.fscallflow.analyzer.model.UnifiedEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 组内事件排序：按 (时间戳, 到达序号) 两个基本类型 key 排，时间戳相同的保持日志顺序。
+ *
+ * 事件基本按日志顺序到达，大多数组本来就是有序的：先线性检查一遍，有序就直接返回；
+ * 否则做稳定的归并排序，相邻两段已经有序时跳过合并，近乎有序的组也只多花一两遍线性扫描。
+ * 没有时间戳的事件排在最后。
+ */
+final class EventOrder {
+
+    /** 小于这个长度的段直接插入排序 */
+    private static final int INSERTION_THRESHOLD = 32;
+
+    private EventOrder() {
+    }
+
+    /** 排序用的时间键：没有时间戳的排在最后 */
+    static long sortKey(long tsMicros) {
+        return tsMicros == UnifiedEvent.NO_TS ? Long.MAX_VALUE : tsMicros;
+    }
+
+    /**
+     * 按 EventStore 里的时间戳排行号。rows 本身是到达顺序，所以位置即到达序号；
+     * 已经有序时原样返回，不复制。
+     */
+    static int[] sortRows(EventStore store, int[] rows) {
+        int n = rows.length;
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = sortKey(store.tsMicros(rows[i]));
+        }
+        int[] perm = order(keys);
+        if (perm == null) {
+            return rows;
+        }
+        int[] sorted = new int[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = rows[perm[i]];
+        }
+        return sorted;
+    }
+
+    /**
+     * 按时间戳排事件列表，列表下标即到达序号；已经有序时原样返回。
+     */
+    static List<UnifiedEvent> sort(List<UnifiedEvent> events) {
+        int n = events.size();
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = sortKey(events.get(i).getTsMicros());
+        }
+        int[] perm = order(keys);
+        if (perm == null) {
+            return events;
+        }
+        List<UnifiedEvent> sorted = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            sorted.add(events.get(perm[i]));
+        }
+        return sorted;
+    }
+
+    /**
+     * 稳定排序的下标排列：perm[i] 是排在第 i 位的原下标。keys 已经非降序时返回 null。
+     */
+    static int[] order(long[] keys) {
+        int n = keys.length;
+        int i = 1;
+        while (i < n && keys[i - 1] <= keys[i]) {
+            i++;
+        }
+        if (i >= n) {
+            return null;
+        }
+
+        int[] perm = new int[n];
+        for (int k = 0; k < n; k++) {
+            perm[k] = k;
+        }
+        mergeSort(keys, perm, new int[n], 0, n);
+        return perm;
+    }
+
+    /** 对 perm[from, to) 按 keys 稳定排序；相同 key 按原下标，也就是到达顺序 */
+    private static void mergeSort(long[] keys, int[] perm, int[] tmp, int from, int to) {
+        if (to - from <= INSERTION_THRESHOLD) {
+            insertionSort(keys, perm, from, to);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(keys, perm, tmp, from, mid);
+        mergeSort(keys, perm, tmp, mid, to);
+
+        // 两段首尾已经有序，不用合并
+        if (keys[perm[mid - 1]] <= keys[perm[mid]]) {
+            return;
+        }
+
+        System.arraycopy(perm, from, tmp, from, to - from);
+        int a = from, b = mid, k = from;
+        while (a < mid && b < to) {
+            perm[k++] = keys[tmp[b]] < keys[tmp[a]] ? tmp[b++] : tmp[a++];
+        }
+        while (a < mid) {
+            perm[k++] = tmp[a++];
+        }
+        while (b < to) {
+            perm[k++] = tmp[b++];
+        }
+    }
+
+    private static void insertionSort(long[] keys, int[] perm, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int p = perm[i];
+            long key = keys[p];
+            int j = i - 1;
+            while (j >= from && keys[perm[j]] > key) {
+                perm[j + 1] = perm[j];
+                j--;
+            }
+            perm[j + 1] = p;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.fscallflow.analyzer.correlate;
+
+import com.fscallflow.analyzer.model.UnifiedEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * 一条按日志时间排好序的事件流（FS 日志、SBC 日志、HTTP 网关日志……），
+ * 带上这个来源自己的 {@link CallIdStrategy}，供 {@link MergeJoinCorrelator} 归并。
+ *
+ * 事件按需拉取，不在内存里攒整份文件；用完要 close 释放底层的输入流。
+ */
+public final class EventSource implements Closeable {
+
+    private final String name;
+    private final CallIdStrategy strategy;
+    private final Iterator<UnifiedEvent> events;
+    private final Closeable resource;
+
+    /**
+     * @param name     来源名称（与 UnifiedEvent.sourceSystem 一致）
+     * @param strategy 该来源的 callId / 共享 key 策略
+     * @param events   按时间排序的事件
+     * @param resource 关闭时一并关闭的资源，可以为 null
+     */
+    public EventSource(String name, CallIdStrategy strategy, Iterator<UnifiedEvent> events, Closeable resource) {
+        this.name = name;
+        this.strategy = strategy;
+        this.events = events;
+        this.resource = resource;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public CallIdStrategy strategy() {
+        return strategy;
+    }
+
+    /** 下一个事件，流结束时返回 null */
+    UnifiedEvent next() {
+        return events.hasNext() ? events.next() : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (resource != null) {
+            resource.close();
+        }
+    }
+}
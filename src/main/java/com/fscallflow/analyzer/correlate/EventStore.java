@@ -0,0 +1,304 @@
+package com.fscallflow.analyzer.correlate;
+
+import com.fscallflow.analyzer.model.FsEventType;
+import com.fscallflow.analyzer.model.UnifiedEvent;
+import com.fscallflow.analyzer.store.RawLineStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * 一次分析内的列式事件存储：每个事件是一个行号（row），字段拆成平行的基本类型数组。
+ *
+ * - tsMicros / 事件类型 / legId / callId / rawRef 各占一列
+ * - legId 存 {@link SymbolTable} 的 id，和 CallJoiner 的并查集共用同一套编号
+ * - 字符串字段（callId、sourceSystem、category、verb、attrs 的 key 和 value）都做字典编码
+ * - attrs 按原来的插入顺序存成 (keyId, valueId) 对，放在一个共享的 int 池里；
+ *   常用 key（sipCallId、agentId、queueName、digit ...）另有按行的列，直接按行取值不用扫属性对
+ * - 原始行交给 {@link RawLineStore} 时只存引用；没有 RawLineStore 时才把 raw 字符串留在堆上
+ *
+ * {@link #view(int)} 按行物化出一个 UnifiedEvent，给还按对象处理的逻辑用，用完即丢。
+ * 不是线程安全的，和 CallJoiner 一样只服务于一次分析。
+ */
+public final class EventStore {
+
+    /** 列里“没有值”的取值 */
+    public static final int NONE = -1;
+
+    /** 单独成列的常用属性 key */
+    public static final String[] INDEXED_KEYS = {
+            "sipCallId", "globalCallId", "callId",
+            "callerNumber", "calleeNumber", "agentId", "queueName", "digit", "callcenterBridge"
+    };
+
+    private static final FsEventType[] TYPES = FsEventType.values();
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final SymbolTable symbols;
+    private final RawLineStore rawStore;
+
+    /** 字符串字段的值字典，所有列共用 */
+    private final Dict values = new Dict();
+    /** attrs 的 key 字典；INDEXED_KEYS 预先登记，所以它们的 key id 就是列下标 */
+    private final Dict keys = new Dict();
+
+    private int size;
+    private long[] ts = new long[INITIAL_CAPACITY];
+    private byte[] type = new byte[INITIAL_CAPACITY];
+    private int[] leg = new int[INITIAL_CAPACITY];
+    private int[] callId = new int[INITIAL_CAPACITY];
+    private int[] sourceSystem = new int[INITIAL_CAPACITY];
+    private int[] category = new int[INITIAL_CAPACITY];
+    private int[] verb = new int[INITIAL_CAPACITY];
+    private long[] rawRef = new long[INITIAL_CAPACITY];
+    /** 只在没有 RawLineStore 时使用 */
+    private String[] raw;
+
+    /** 每行属性对在 attrPool 里的起点和个数，个数为 -1 表示 attrs 为 null */
+    private int[] attrOffset = new int[INITIAL_CAPACITY];
+    private int[] attrCount = new int[INITIAL_CAPACITY];
+    private int[] attrPool = new int[INITIAL_CAPACITY * 8];
+    private int attrPoolSize;
+
+    /** 常用属性列，第一次出现该 key 时才分配 */
+    private final int[][] indexed = new int[INDEXED_KEYS.length][];
+
+    /**
+     * @param symbols  legId 用的符号表
+     * @param rawStore 原始行存储；为 null 时 raw 字符串留在堆上
+     */
+    public EventStore(SymbolTable symbols, RawLineStore rawStore) {
+        this.symbols = symbols;
+        this.rawStore = rawStore;
+        if (rawStore == null) {
+            raw = new String[INITIAL_CAPACITY];
+        }
+        for (String key : INDEXED_KEYS) {
+            keys.id(key);
+        }
+    }
+
+    /**
+     * 追加一个事件，返回行号。事件对象本身不会被保留。
+     */
+    public int append(UnifiedEvent e) {
+        int row = size;
+        ensureCapacity(row + 1);
+
+        ts[row] = e.getTsMicros();
+        type[row] = e.getType() == null ? -1 : (byte) e.getType().ordinal();
+        leg[row] = symbols.intern(trimToNull(e.getLegId()));
+        callId[row] = values.id(e.getCallId());
+        sourceSystem[row] = values.id(e.getSourceSystem());
+        category[row] = values.id(e.getCategory());
+        verb[row] = values.id(e.getVerb());
+        rawRef[row] = e.getRawRef();
+        if (e.getRaw() != null) {
+            if (rawStore != null) {
+                rawRef[row] = appendRaw(e.getRaw());
+            } else {
+                raw[row] = e.getRaw();
+            }
+        }
+
+        Map<String, String> attrs = e.getAttrs();
+        attrOffset[row] = attrPoolSize;
+        attrCount[row] = attrs == null ? -1 : attrs.size();
+        if (attrs != null) {
+            if (attrPoolSize + attrs.size() * 2 > attrPool.length) {
+                attrPool = Arrays.copyOf(attrPool, Math.max(attrPool.length * 2, attrPoolSize + attrs.size() * 2));
+            }
+            for (Map.Entry<String, String> kv : attrs.entrySet()) {
+                int k = keys.id(kv.getKey());
+                int v = values.id(kv.getValue());
+                attrPool[attrPoolSize++] = k;
+                attrPool[attrPoolSize++] = v;
+                int col = indexOfKey(k);
+                if (col >= 0) {
+                    indexedColumnFor(col)[row] = v;
+                }
+            }
+        }
+
+        size++;
+        return row;
+    }
+
+    /** 行数 */
+    public int size() {
+        return size;
+    }
+
+    public long tsMicros(int row) {
+        return ts[row];
+    }
+
+    /** 事件类型，没有类型时为 null */
+    public FsEventType type(int row) {
+        byte t = type[row];
+        return t < 0 ? null : TYPES[t];
+    }
+
+    /** legId 的符号 id，没有时为 {@link SymbolTable#NONE} */
+    public int legSymbol(int row) {
+        return leg[row];
+    }
+
+    public String legId(int row) {
+        return symbols.name(leg[row]);
+    }
+
+    public long rawRef(int row) {
+        return rawRef[row];
+    }
+
+    /** 原始行，需要时才从 RawLineStore 物化 */
+    public String raw(int row) {
+        if (raw != null && raw[row] != null) {
+            return raw[row];
+        }
+        return rawStore == null ? null : rawStore.line(rawRef[row]);
+    }
+
+    /**
+     * 按 key 取属性值：常用 key 走列，其他 key 扫本行的属性对。
+     */
+    public String attr(int row, String key) {
+        int k = keys.lookup(key);
+        if (k == NONE) {
+            return null;
+        }
+        int col = indexOfKey(k);
+        if (col >= 0) {
+            int[] c = indexed[col];
+            return c == null ? null : values.name(c[row]);
+        }
+        int from = attrOffset[row];
+        for (int i = 0; i < attrCount[row]; i++) {
+            if (attrPool[from + i * 2] == k) {
+                return values.name(attrPool[from + i * 2 + 1]);
+            }
+        }
+        return null;
+    }
+
+    /** 本行 attrs 是否为 null（与空 Map 区分） */
+    public boolean hasAttrs(int row) {
+        return attrCount[row] >= 0;
+    }
+
+    /**
+     * 按行物化成 UnifiedEvent，字段与 append 时一致；attrs 保持原来的 key 顺序。
+     */
+    public UnifiedEvent view(int row) {
+        UnifiedEvent e = new UnifiedEvent();
+        e.setSourceSystem(values.name(sourceSystem[row]));
+        e.setTsMicros(ts[row]);
+        e.setCallId(values.name(callId[row]));
+        e.setLegId(symbols.name(leg[row]));
+        e.setCategory(values.name(category[row]));
+        e.setVerb(values.name(verb[row]));
+        e.setType(type(row));
+        e.setRawRef(rawRef[row]);
+        if (raw != null) {
+            e.setRaw(raw[row]);
+        }
+
+        int n = attrCount[row];
+        if (n >= 0) {
+            Map<String, String> attrs = new LinkedHashMap<>(Math.max(4, n * 2));
+            int from = attrOffset[row];
+            for (int i = 0; i < n; i++) {
+                attrs.put(keys.name(attrPool[from + i * 2]), values.name(attrPool[from + i * 2 + 1]));
+            }
+            e.setAttrs(attrs);
+        }
+        return e;
+    }
+
+    private long appendRaw(String line) {
+        try {
+            return rawStore.append(line);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("写入原始行失败", ex);
+        }
+    }
+
+    private static int indexOfKey(int keyId) {
+        return keyId >= 0 && keyId < INDEXED_KEYS.length ? keyId : NONE;
+    }
+
+    private int[] indexedColumnFor(int col) {
+        if (indexed[col] == null) {
+            indexed[col] = new int[ts.length];
+            Arrays.fill(indexed[col], NONE);
+        }
+        return indexed[col];
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= ts.length) {
+            return;
+        }
+        int cap = Math.max(n, ts.length + (ts.length >> 1));
+        ts = Arrays.copyOf(ts, cap);
+        type = Arrays.copyOf(type, cap);
+        leg = Arrays.copyOf(leg, cap);
+        callId = Arrays.copyOf(callId, cap);
+        sourceSystem = Arrays.copyOf(sourceSystem, cap);
+        category = Arrays.copyOf(category, cap);
+        verb = Arrays.copyOf(verb, cap);
+        rawRef = Arrays.copyOf(rawRef, cap);
+        if (raw != null) {
+            raw = Arrays.copyOf(raw, cap);
+        }
+        attrOffset = Arrays.copyOf(attrOffset, cap);
+        attrCount = Arrays.copyOf(attrCount, cap);
+        for (int i = 0; i < indexed.length; i++) {
+            if (indexed[i] != null) {
+                int old = indexed[i].length;
+                indexed[i] = Arrays.copyOf(indexed[i], cap);
+                Arrays.fill(indexed[i], old, cap, NONE);
+            }
+        }
+    }
+
+    private static String trimToNull(String v) {
+        if (v == null) return null;
+        String t = v.trim();
+        return t.isEmpty() ? null : t;
+    }
+
+    /** 字符串字典：null 编码为 NONE，其余（包括空串）都有自己的 id */
+    private static final class Dict {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private String[] names = new String[256];
+        private int size;
+
+        int id(String s) {
+            if (s == null) {
+                return NONE;
+            }
+            Integer id = ids.get(s);
+            if (id == null) {
+                if (size == names.length) {
+                    names = Arrays.copyOf(names, size * 2);
+                }
+                names[size] = s;
+                id = size++;
+                ids.put(s, id);
+            }
+            return id;
+        }
+
+        int lookup(String s) {
+            Integer id = s == null ? null : ids.get(s);
+            return id == null ? NONE : id;
+        }
+
+        String name(int id) {
+            return id < 0 ? null : names[id];
+        }
+    }
+}
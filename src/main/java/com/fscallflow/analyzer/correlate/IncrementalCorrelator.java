@@ -0,0 +1,743 @@
+package com.fscallflow.analyzer.correlate;
+
+import com.fscallflow.analyzer.model.AnalyzeResult;
+import com.fscallflow.analyzer.model.FsEventType;
+import com.fscallflow.analyzer.model.HubUuid;
+import com.fscallflow.analyzer.model.UnifiedEvent;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 在线增量关联：事件按日志顺序流进来，只为“还没结束的通话”保留状态，
+ * 一通电话结束后立刻产出 AnalyzeResult 并释放它占用的内存。
+ *
+ * 合并规则与 {@link CallJoiner} 一致（legId、SIP Call-ID / globalCallId、行内引用的 UUID，跳过 hub），
+ * 分组 ID 取 union(a, b) 中 a 这一侧的代表 key。区别在于组件可以被“收尾”：
+ * - 组内出现过的腿都已 HANGUP，且日志时间上已安静 quietPeriod，视为结束
+ * - 迟迟等不到 HANGUP（日志截断、漏打印）的，日志时间上空闲超过 idleTimeout 也强制结束
+ * - {@link #finish()} 时把剩下的全部收尾
+ *
+ * 多来源关联（{@link MergeJoinCorrelator}）时，事件还会带上来源给出的共享 key
+ * （SIP Call-ID / globalCallId / traceId 等），有共享 key 的组件互相合并；
+ * 没有任何 FS 腿的组件（只有其他来源的事件）不等挂机，安静 quietPeriod 后即收尾。
+ *
+ * 内存预算：缓存事件的估算字节数超过 maxBufferedBytes 时，按最后活动时间从旧到新提前收尾，
+ * 降到预算的 3/4 为止。被提前收尾的通话之后再来的事件会另起一组（见 {@link #evicted()}）。
+ *
+ * Hub UUID：据同一个引用 UUID 合并进来的独立组件数超过 hubFanout，或者合并后组内事件数超过 hubMaxEvents，
+ * 就视为 hub。识别出来时把它所在的组件按记下的合并操作重放一遍、去掉经由 hub 的合并，拆回各自的通话；
+ * 之后再引用它的事件不再据它合并，只在结果的 hubUuids 和诊断里报告，和批量结果一样。
+ *
+ * 时间一律用日志里的 tsMicros，不看墙上时间，所以回放历史日志和实时跟读行为一致。
+ *
+ * 与批量结果的差异（内存有界的代价）：
+ * - 收尾之后才出现的同一 UUID 的日志会另起一组
+ * - 合并按到达顺序即时进行，批量是先做全部 SIP 合并再做引用合并，两者的分组 ID 偶尔会取到同组的不同 key
+ * - hub 按到目前为止的扇出判断：识别出来之前已经收尾的通话不会再拆开
+ * - 没有任何 key 的事件（分组 ID 为 "unknown"）只缓存会参与构图的类型，OTHER / RTP_EVENT 只计数，
+ *   也不算活动；unknown 组安静 quietPeriod 后收尾，最长不超过 idleTimeout，所以会分成多段输出
+ *
+ * 不是线程安全的，一个实例对应一条事件流。
+ */
+public class IncrementalCorrelator implements Consumer<UnifiedEvent> {
+
+    /** 单个缓存事件除原始行以外的估算开销（对象头、attrs、引用数组等） */
+    private static final long EVENT_OVERHEAD_BYTES = 256;
+
+    /** 扫描待收尾组件的日志时间间隔：1 秒 */
+    private static final long SWEEP_INTERVAL_MICROS = 1_000_000L;
+
+    private static final String UNKNOWN = "unknown";
+
+    /** 进行中构图的限流步长：通话每多这么多事件，两次构图的最小间隔再加一个基础间隔 */
+    private static final int PROGRESS_STEP_EVENTS = 1000;
+
+    private final EventCorrelator correlator;
+    private final long quietPeriodMicros;
+    private final long idleTimeoutMicros;
+    private final Consumer<AnalyzeResult> sink;
+    private final long maxBufferedBytes;
+    /** 据同一个 UUID 合并进来的独立组件数超过该值即视为 hub；<= 0 不按扇出判断 */
+    private final int hubFanout;
+    /** 据同一个 UUID 合并后组内事件数超过该值即视为 hub；<= 0 不按大小判断 */
+    private final long hubMaxEvents;
+
+    /** key（legId / SIP Call-ID / 引用 UUID / 技术 key）-> 所在组件 */
+    private final Map<String, OpenCall> byKey = new HashMap<>();
+    /** 未结束组件里的引用 UUID -> 据它合并进来的独立组件数，组件收尾时随 key 一起清掉 */
+    private final Map<String, Integer> refFanOut = new HashMap<>();
+    /** 已识别的 hub UUID */
+    private final Map<String, HubUuid> hubs = new LinkedHashMap<>();
+    /** 按创建顺序排列的未结束组件 */
+    private final Set<OpenCall> open = new LinkedHashSet<>();
+
+    /** 到目前为止见过的最大日志时间 */
+    private long now = UnifiedEvent.NO_TS;
+    private long nextSweep = UnifiedEvent.NO_TS;
+    private long seq;
+
+    private long emitted;
+    private long droppedNoise;
+    private long evicted;
+    /** 未结束通话缓存的事件估算字节数 */
+    private long bufferedBytes;
+    /** 推出去过的分组 ID 失效时的回调，见 {@link #onRetired} */
+    private Consumer<String> retiredListener = label -> { };
+
+    /**
+     * @param quietPeriodMs 所有腿挂机后还要等待的日志时间
+     * @param idleTimeoutMs 没有挂机时的最长空闲日志时间
+     * @param sink          每结束一通电话调用一次
+     */
+    public IncrementalCorrelator(EventCorrelator correlator,
+                                 long quietPeriodMs,
+                                 long idleTimeoutMs,
+                                 Consumer<AnalyzeResult> sink) {
+        this(correlator, quietPeriodMs, idleTimeoutMs, 0, sink);
+    }
+
+    /**
+     * @param maxBufferedBytes 未结束通话缓存事件的内存预算（估算字节数），<= 0 不限制
+     */
+    public IncrementalCorrelator(EventCorrelator correlator,
+                                 long quietPeriodMs,
+                                 long idleTimeoutMs,
+                                 long maxBufferedBytes,
+                                 Consumer<AnalyzeResult> sink) {
+        this(correlator, quietPeriodMs, idleTimeoutMs, maxBufferedBytes, 0, 0, sink);
+    }
+
+    /**
+     * @param hubFanout    据同一个 UUID 合并进来的独立组件数阈值，<= 0 关闭
+     * @param hubMaxEvents 据同一个 UUID 合并后的组大小阈值（事件数），<= 0 关闭
+     */
+    public IncrementalCorrelator(EventCorrelator correlator,
+                                 long quietPeriodMs,
+                                 long idleTimeoutMs,
+                                 long maxBufferedBytes,
+                                 int hubFanout,
+                                 long hubMaxEvents,
+                                 Consumer<AnalyzeResult> sink) {
+        this.correlator = correlator;
+        this.quietPeriodMicros = quietPeriodMs * 1000L;
+        this.idleTimeoutMicros = idleTimeoutMs * 1000L;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.hubFanout = hubFanout;
+        this.hubMaxEvents = hubMaxEvents;
+        this.sink = sink;
+    }
+
+    @Override
+    public void accept(UnifiedEvent e) {
+        accept(e, List.of());
+    }
+
+    /**
+     * 多来源入口：先按 FS 规则合并，再把 sharedKeys 合并进事件所在的组件。
+     * 事件没有 legId / SIP Call-ID 时，以第一个共享 key 作为它的技术 key。
+     *
+     * @param sharedKeys 来源的 {@link CallIdStrategy#joinKeys(UnifiedEvent)}，可以为空
+     */
+    public void accept(UnifiedEvent e, List<String> sharedKeys) {
+        if (e == null) {
+            return;
+        }
+        String shared = sharedKeys.isEmpty() ? null : safeTrim(sharedKeys.get(0));
+
+        String legId = safeTrim(e.getLegId());
+        Map<String, String> attrs = e.getAttrs();
+
+        // ===== SIP Call-ID / globalCallId 与 FS UUID 合并 =====
+        String sipOrGlobal = null;
+        if (attrs != null) {
+            sipOrGlobal = firstNonBlank(
+                    safeTrim(attrs.get("globalCallId")),
+                    safeTrim(attrs.get("sipCallId")),
+                    safeTrim(attrs.get("callId"))
+            );
+        }
+        if (legId != null && sipOrGlobal != null) {
+            merge(legId, sipOrGlobal, null);
+        } else if (legId != null) {
+            register(legId);
+        } else if (sipOrGlobal != null) {
+            register(sipOrGlobal);
+        }
+
+        // ===== 事件归入技术 key 所在的组件 =====
+        String technicalKey = firstNonBlank(
+                legId,
+                attrs != null ? safeTrim(attrs.get("sipCallId")) : null,
+                attrs != null ? safeTrim(attrs.get("callId")) : null,
+                shared,
+                UNKNOWN
+        );
+        register(technicalKey).add(e, technicalKey, seq++);
+
+        // ===== 其他来源的共享 key =====
+        for (String key : sharedKeys) {
+            String k = safeTrim(key);
+            if (k != null) {
+                OpenCall call = merge(technicalKey, k, null);
+                call.shared = true;
+            }
+        }
+
+        // ===== 行内互相引用的 UUID =====
+        if (legId != null && e.getRefUuids() != null) {
+            for (String ref : e.getRefUuids()) {
+                String other = safeTrim(ref);
+                if (other != null && !other.equals(legId)) {
+                    mergeRef(legId, other);
+                }
+            }
+        }
+
+        OpenCall call = byKey.get(technicalKey);
+        if (legId != null) {
+            call.legs.add(legId);
+            if (e.getType() == FsEventType.HANGUP) {
+                call.hungUp.add(legId);
+            }
+        }
+
+        advance(e.getTsMicros());
+        if (maxBufferedBytes > 0 && bufferedBytes > maxBufferedBytes) {
+            evictOldest();
+        }
+    }
+
+    /**
+     * 流结束：剩下的组件全部收尾。
+     */
+    public void finish() {
+        for (OpenCall call : new ArrayList<>(open)) {
+            close(call);
+        }
+    }
+
+    /** 还没结束的通话数 */
+    public int openCalls() {
+        return open.size();
+    }
+
+    /** 已产出的结果数 */
+    public long emitted() {
+        return emitted;
+    }
+
+    /** 因为是噪声（无 key 且不参与构图）而没有缓存的事件数 */
+    public long droppedNoise() {
+        return droppedNoise;
+    }
+
+    /** 因为超出内存预算而被提前收尾的通话数 */
+    public long evicted() {
+        return evicted;
+    }
+
+    /**
+     * 外部推进日志时间：实时跟读时日志安静下来，由调用方按墙上时间推进，让已结束的通话照常收尾。
+     */
+    public void advanceTo(long tsMicros) {
+        advance(tsMicros);
+    }
+
+    /**
+     * 自上次调用以来有新事件的未结束通话，按当前已有的事件构图（不收尾），用于展示进行中的通话。
+     * 噪声组（unknown 且没有核心信令）不输出。
+     *
+     * 每次构图都要把整组事件重新排序、重走一遍，开销与事件数成正比，所以按通话限流：
+     * 同一通话两次构图至少间隔 minIntervalMs × (1 + 事件数 / 1000)，没到间隔的保留“有更新”标记下次再构，
+     * 大通话（会议、很长的通话）的刷新频率随之降低，单个通话占用的构图时间与它的大小无关。
+     *
+     * @param nowMs         调用方的当前时间（毫秒），只用来算间隔
+     * @param minIntervalMs 同一通话两次构图的基础间隔
+     */
+    public List<AnalyzeResult> drainUpdated(long nowMs, long minIntervalMs) {
+        List<AnalyzeResult> updated = new ArrayList<>();
+        for (OpenCall call : open) {
+            if (!call.dirty) {
+                continue;
+            }
+            if (call.size == 0 || (UNKNOWN.equals(call.label) && !call.hasCoreSignal)) {
+                call.dirty = false;
+                continue;
+            }
+            long interval = minIntervalMs * (1 + call.size / PROGRESS_STEP_EVENTS);
+            if (call.progressAt != Long.MIN_VALUE && nowMs - call.progressAt < interval) {
+                continue;
+            }
+            call.dirty = false;
+            call.progressAt = nowMs;
+            updated.add(result(call));
+            retire(call, call.label);
+            call.shown.add(call.label);
+        }
+        return updated;
+    }
+
+    /**
+     * 分组 ID 失效时的回调：该 ID 曾经由 {@link #drainUpdated} 推出去过，之后被并进别的通话、
+     * 拆分后不再存在，或者收尾时作为噪声丢掉，展示方应当删掉它。
+     * 回调与 sink 在同一线程上按发生顺序调用，先失效的 ID 不会盖掉之后同名的结果。
+     */
+    public void onRetired(Consumer<String> listener) {
+        this.retiredListener = listener;
+    }
+
+    /** 当前缓存事件的估算字节数 */
+    public long bufferedBytes() {
+        return bufferedBytes;
+    }
+
+    /** 到目前为止识别出的 hub UUID */
+    public Collection<HubUuid> hubs() {
+        return hubs.values();
+    }
+
+    // ===== 时间推进与收尾 =====
+
+    private void advance(long ts) {
+        if (ts == UnifiedEvent.NO_TS || (now != UnifiedEvent.NO_TS && ts <= now)) {
+            return;
+        }
+        now = ts;
+        if (nextSweep == UnifiedEvent.NO_TS) {
+            nextSweep = now + SWEEP_INTERVAL_MICROS;
+        } else if (now >= nextSweep) {
+            nextSweep = now + SWEEP_INTERVAL_MICROS;
+            sweep();
+        }
+    }
+
+    private void sweep() {
+        List<OpenCall> done = new ArrayList<>();
+        for (OpenCall call : open) {
+            if (call.lastTs == UnifiedEvent.NO_TS) {
+                continue;
+            }
+            long idle = now - call.lastTs;
+            boolean finished = call.legs.isEmpty() ? call.shared : call.hungUp.size() >= call.legs.size();
+            // unknown 组没有腿可等，安静 quietPeriod 即收尾；一直有零星无 key 的信令时，按 idleTimeout 的固定周期收尾
+            if (UNKNOWN.equals(call.label)) {
+                finished = true;
+                if (call.openedAt != UnifiedEvent.NO_TS && now - call.openedAt >= idleTimeoutMicros) {
+                    idle = idleTimeoutMicros;
+                }
+            }
+            if ((finished && idle >= quietPeriodMicros) || idle >= idleTimeoutMicros) {
+                done.add(call);
+            }
+        }
+        for (OpenCall call : done) {
+            close(call);
+        }
+    }
+
+    /** 超出内存预算：按最后活动时间从旧到新收尾，降到预算的 3/4 */
+    private void evictOldest() {
+        List<OpenCall> byAge = new ArrayList<>(open);
+        byAge.sort(Comparator.comparingLong(c -> c.lastTs));
+        long target = maxBufferedBytes / 4 * 3;
+        for (OpenCall call : byAge) {
+            if (bufferedBytes <= target) {
+                break;
+            }
+            if (call.size > 0) {
+                close(call);
+                evicted++;
+            }
+        }
+    }
+
+    private void close(OpenCall call) {
+        open.remove(call);
+        bufferedBytes -= call.bytes;
+        for (String key : call.keys) {
+            byKey.remove(key);
+            refFanOut.remove(key);
+        }
+
+        // 噪声组过滤：与批量一致，unknown 且不含核心信令的直接丢掉
+        if (call.size == 0 || (UNKNOWN.equals(call.label) && !call.hasCoreSignal)) {
+            retire(call, null);
+            return;
+        }
+        retire(call, call.label);
+        sink.accept(result(call));
+        emitted++;
+    }
+
+    /** 通知组件推出去过的分组 ID 里除 keep 以外的都已失效 */
+    private void retire(OpenCall call, String keep) {
+        if (call.shown.isEmpty()) {
+            return;
+        }
+        for (String label : call.shown) {
+            if (!label.equals(keep)) {
+                retiredListener.accept(label);
+            }
+        }
+        call.shown.removeIf(label -> !label.equals(keep));
+    }
+
+    private AnalyzeResult result(OpenCall call) {
+        AnalyzeResult ar = correlator.toResult(call.label, call.events());
+        EventCorrelator.attachHubs(ar, call.hubs());
+        return ar;
+    }
+
+    // ===== 组件维护：按大小合并，小的并进大的 =====
+
+    private OpenCall register(String key) {
+        OpenCall call = byKey.get(key);
+        if (call == null) {
+            call = new OpenCall(key);
+            call.keys.add(key);
+            byKey.put(key, call);
+            open.add(call);
+        }
+        return call;
+    }
+
+    /**
+     * 合并 keyA、keyB 所在的组件，返回合并后的组件；分组 ID 保留 a 这一侧的代表 key，与 CallJoiner 的 union(a, b) 一致。
+     * 真正发生的合并记进组件的 edges，拆 hub 时按它重放。
+     *
+     * @param via 经由哪个引用 UUID 合并；SIP / 共享 key 合并为 null
+     */
+    private OpenCall merge(String keyA, String keyB, String via) {
+        OpenCall a = register(keyA);
+        OpenCall b = register(keyB);
+        if (a == b) {
+            return a;
+        }
+        String label = a.label;
+        OpenCall big = a.keys.size() + a.size >= b.keys.size() + b.size ? a : b;
+        OpenCall small = big == a ? b : a;
+
+        for (String key : small.keys) {
+            byKey.put(key, big);
+        }
+        big.absorb(small);
+        big.label = label;
+        big.edges.add(new Edge(keyA, keyB, via));
+        open.remove(small);
+        retire(big, label);
+        return big;
+    }
+
+    /**
+     * 行内引用：两端任一已经是 hub 时只记下引用关系；否则合并，并判断两端是不是 hub：
+     * 被引用的 ref 按扇出 / 合并后大小判断，作为 leg 的一端按扇出判断（lua 脚本、录音会话的 UUID
+     * 一行带上各通话的 UUID）。扇出是该 key 在引用两端连到的独立组件数，与 CallJoiner 的统计一致。
+     */
+    private void mergeRef(String legId, String ref) {
+        OpenCall call = byKey.get(legId);
+        HubUuid hub = hubs.get(ref);
+        if (hub != null) {
+            if (call.referHub(legId, ref)) {
+                hub.setFanOut(hub.getFanOut() + 1);
+            }
+            return;
+        }
+        HubUuid legHub = hubs.get(legId);
+        if (legHub != null) {
+            if (register(ref).referHub(ref, legId)) {
+                legHub.setFanOut(legHub.getFanOut() + 1);
+            }
+            return;
+        }
+
+        OpenCall target = byKey.get(ref);
+        if (target == call) {
+            return;
+        }
+        int fanOut = refFanOut.merge(ref, 1, Integer::sum);
+        int legFanOut = refFanOut.merge(legId, 1, Integer::sum);
+        long events = (long) call.size + (target == null ? 0 : target.size);
+        if ((hubFanout > 0 && fanOut > hubFanout) || (hubMaxEvents > 0 && events > hubMaxEvents)) {
+            hubs.put(ref, hub(ref, fanOut, events));
+            refFanOut.remove(ref);
+            call.referHub(legId, ref);
+            if (target != null) {
+                split(target);
+            }
+            return;
+        }
+        if (hubFanout > 0 && legFanOut > hubFanout) {
+            hubs.put(legId, hub(legId, legFanOut, events));
+            refFanOut.remove(legId);
+            register(ref).referHub(ref, legId);
+            split(call);
+            return;
+        }
+        merge(legId, ref, ref);
+    }
+
+    private static HubUuid hub(String uuid, int fanOut, long events) {
+        HubUuid hub = new HubUuid();
+        hub.setUuid(uuid);
+        hub.setFanOut(fanOut);
+        hub.setEvents(events);
+        return hub;
+    }
+
+    /**
+     * 新识别出 hub 后拆组件：按记下的合并操作重放（跳过两端涉及 hub 的引用合并），
+     * 每个连通部分成为一个新组件，事件、腿、挂机状态都按部分重新归属。
+     */
+    private void split(OpenCall call) {
+        boolean viaHub = false;
+        for (Edge edge : call.edges) {
+            if (viaHub(edge)) {
+                viaHub = true;
+                break;
+            }
+        }
+        if (!viaHub) {
+            return;
+        }
+
+        // 组件内的小并查集：下标为 call.keys 的位置，union(a, b) 时 b 挂到 a 下，根即分组 ID
+        Map<String, Integer> index = new HashMap<>();
+        for (String key : call.keys) {
+            index.put(key, index.size());
+        }
+        int[] parent = new int[index.size()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        List<Edge> kept = new ArrayList<>(call.edges.size());
+        for (Edge edge : call.edges) {
+            if (viaHub(edge)) {
+                continue;
+            }
+            kept.add(edge);
+            int ra = root(parent, index.get(edge.a()));
+            int rb = root(parent, index.get(edge.b()));
+            if (ra != rb) {
+                parent[rb] = ra;
+            }
+        }
+
+        Map<Integer, OpenCall> parts = new LinkedHashMap<>();
+        for (String key : call.keys) {
+            int r = root(parent, index.get(key));
+            OpenCall part = parts.computeIfAbsent(r, x -> new OpenCall(call.keys.get(x)));
+            part.keys.add(key);
+            part.shared = call.shared;
+            part.lastTs = UnifiedEvent.NO_TS;
+            byKey.put(key, part);
+        }
+        for (Edge edge : kept) {
+            byKey.get(edge.a()).edges.add(edge);
+        }
+        for (Edge edge : call.edges) {
+            if (edge.via() != null && hubs.containsKey(edge.via())) {
+                byKey.get(edge.a()).referHub(edge.a(), edge.via());
+            } else if (viaHub(edge)) {
+                byKey.get(edge.b()).referHub(edge.b(), edge.a());
+            }
+        }
+        call.hubRefs.forEach((hub, keys) -> keys.forEach(key -> byKey.get(key).referHub(key, hub)));
+        for (String leg : call.legs) {
+            byKey.get(leg).legs.add(leg);
+        }
+        for (String leg : call.hungUp) {
+            byKey.get(leg).hungUp.add(leg);
+        }
+
+        open.remove(call);
+        bufferedBytes -= call.bytes;
+        for (int i = 0; i < call.size; i++) {
+            byKey.get(call.evKeys[i]).add(call.buf[i], call.evKeys[i], call.seqs[i]);
+        }
+        for (OpenCall part : parts.values()) {
+            if (part.lastTs == UnifiedEvent.NO_TS) {
+                part.lastTs = call.lastTs;
+            }
+            // 原来推出去过的 ID 留在沿用它的部分上，其余的失效
+            if (call.shown.remove(part.label)) {
+                part.shown.add(part.label);
+            }
+            open.add(part);
+        }
+        retire(call, null);
+    }
+
+    /** 引用合并的两端（leg 一端 a、被引用的 via）任一是 hub */
+    private boolean viaHub(Edge edge) {
+        return edge.via() != null && (hubs.containsKey(edge.via()) || hubs.containsKey(edge.a()));
+    }
+
+    private static int root(int[] parent, int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    private static String safeTrim(String v) {
+        if (v == null) return null;
+        String t = v.trim();
+        return t.isEmpty() ? null : t;
+    }
+
+    private static String firstNonBlank(String... vals) {
+        if (vals == null) return null;
+        for (String v : vals) {
+            if (v != null && !v.isBlank()) {
+                return v;
+            }
+        }
+        return null;
+    }
+
+    /** 一个未结束的通话（并查集里的一个组件） */
+    private final class OpenCall {
+        /** 分组 ID */
+        String label;
+        final List<String> keys = new ArrayList<>(4);
+        final Set<String> legs = new HashSet<>(4);
+        final Set<String> hungUp = new HashSet<>(4);
+
+        /** 组件内真正发生过的合并，按发生顺序；拆 hub 时重放 */
+        final List<Edge> edges = new ArrayList<>(2);
+        /** 引用到的 hub -> 本组件里引用它的 key */
+        final Map<String, Set<String>> hubRefs = new HashMap<>(2);
+
+        /** 事件按到达顺序保存，seq 用于合并时恢复顺序，evKeys 是事件的技术 key，拆组件时按它重新归属 */
+        UnifiedEvent[] buf = new UnifiedEvent[8];
+        long[] seqs = new long[8];
+        String[] evKeys = new String[8];
+        int size;
+        /** 缓存事件的估算字节数 */
+        long bytes;
+
+        /** 最后活动（缓存事件）的日志时间；新建时取当前时间，没有事件的组件也能按空闲超时收掉 */
+        long lastTs = now;
+        /** 组件新建时的日志时间 */
+        final long openedAt = now;
+        boolean hasCoreSignal;
+        /** 是否按其他来源的共享 key 合并过 */
+        boolean shared;
+        /** 上次 drainUpdated 之后是否来过新事件 */
+        boolean dirty;
+        /** 上次进行中构图的时间（drainUpdated 调用方的毫秒），没构过为 Long.MIN_VALUE */
+        long progressAt = Long.MIN_VALUE;
+        /** 以进行中推出去过、还没失效的分组 ID（合并进来的组件带着自己的） */
+        final Set<String> shown = new HashSet<>(2);
+
+        OpenCall(String label) {
+            this.label = label;
+        }
+
+        void add(UnifiedEvent e, String key, long s) {
+            // 丢掉的噪声不算活动：否则日志一直有无 key 的行时，unknown 组永远等不到空闲超时
+            if (UNKNOWN.equals(label) && EventCorrelator.isNoiseType(e.getType())) {
+                droppedNoise++;
+                return;
+            }
+            hasCoreSignal |= EventCorrelator.isCoreSignal(e.getType());
+            if (e.getTsMicros() != UnifiedEvent.NO_TS) {
+                lastTs = lastTs == UnifiedEvent.NO_TS ? e.getTsMicros() : Math.max(lastTs, e.getTsMicros());
+            }
+            if (size == buf.length) {
+                buf = Arrays.copyOf(buf, size * 2);
+                seqs = Arrays.copyOf(seqs, size * 2);
+                evKeys = Arrays.copyOf(evKeys, size * 2);
+            }
+            buf[size] = e;
+            seqs[size] = s;
+            evKeys[size] = key;
+            size++;
+            dirty = true;
+            long b = EVENT_OVERHEAD_BYTES + (e.getRaw() != null ? 2L * e.getRaw().length() : 0);
+            bytes += b;
+            bufferedBytes += b;
+        }
+
+        /** 把另一个组件并进来，事件按 seq 归并，保持到达顺序 */
+        void absorb(OpenCall other) {
+            keys.addAll(other.keys);
+            edges.addAll(other.edges);
+            other.hubRefs.forEach((hub, refs) -> hubRefs.computeIfAbsent(hub, x -> new HashSet<>()).addAll(refs));
+            legs.addAll(other.legs);
+            hungUp.addAll(other.hungUp);
+            hasCoreSignal |= other.hasCoreSignal;
+            shared |= other.shared;
+            bytes += other.bytes;
+            dirty |= other.dirty || other.size > 0;
+            shown.addAll(other.shown);
+            progressAt = Math.min(progressAt, other.progressAt);
+            if (other.lastTs != UnifiedEvent.NO_TS) {
+                lastTs = lastTs == UnifiedEvent.NO_TS ? other.lastTs : Math.max(lastTs, other.lastTs);
+            }
+            if (other.size == 0) {
+                return;
+            }
+
+            int n = size + other.size;
+            UnifiedEvent[] mb = new UnifiedEvent[Math.max(8, n)];
+            long[] ms = new long[mb.length];
+            String[] mk = new String[mb.length];
+            int i = 0, j = 0, k = 0;
+            while (i < size && j < other.size) {
+                if (seqs[i] <= other.seqs[j]) {
+                    mb[k] = buf[i];
+                    mk[k] = evKeys[i];
+                    ms[k++] = seqs[i++];
+                } else {
+                    mb[k] = other.buf[j];
+                    mk[k] = other.evKeys[j];
+                    ms[k++] = other.seqs[j++];
+                }
+            }
+            while (i < size) {
+                mb[k] = buf[i];
+                mk[k] = evKeys[i];
+                ms[k++] = seqs[i++];
+            }
+            while (j < other.size) {
+                mb[k] = other.buf[j];
+                mk[k] = other.evKeys[j];
+                ms[k++] = other.seqs[j++];
+            }
+            buf = mb;
+            seqs = ms;
+            evKeys = mk;
+            size = n;
+        }
+
+        List<UnifiedEvent> events() {
+            return Arrays.asList(buf).subList(0, size);
+        }
+
+        /** 记下 key 引用了 hub；本组件第一次引用它时返回 true */
+        boolean referHub(String key, String hub) {
+            Set<String> refs = hubRefs.get(hub);
+            if (refs == null) {
+                hubRefs.put(hub, new HashSet<>(Set.of(key)));
+                return true;
+            }
+            refs.add(key);
+            return false;
+        }
+
+        List<HubUuid> hubs() {
+            List<HubUuid> list = new ArrayList<>(hubRefs.size());
+            for (String hub : hubRefs.keySet()) {
+                list.add(IncrementalCorrelator.this.hubs.get(hub));
+            }
+            return list;
+        }
+    }
+
+    /** 组件内的一次合并：union(a, b)，via 为经由的引用 UUID，SIP / 共享 key 合并为 null */
+    private record Edge(String a, String b, String via) {
+    }
+}
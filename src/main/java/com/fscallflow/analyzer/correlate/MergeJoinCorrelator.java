@@ -0,0 +1,55 @@
+package com.fscallflow.analyzer.correlate;
+
+import com.fscallflow.analyzer.model.UnifiedEvent;
+
+import java.util.*;
+
+/**
+ * 多来源关联：几条各自按时间排好序的事件流（FS 日志 + SBC / HTTP 网关等），
+ * 先按日志时间做 k 路归并，再在有界的时间窗口内按共享 key 做连接。
+ *
+ * - 归并：{@link EventMerger} 按 (时间戳, 来源序号) 出队
+ * - 连接：出队的事件连同来源策略给出的共享 key（{@link CallIdStrategy#joinKeys(UnifiedEvent)}）
+ *   交给 {@link IncrementalCorrelator}，共享 key 相同的事件合并成一通电话
+ * - 窗口：一通电话结束（FS 腿全部挂机，或者只有其他来源的事件）后再安静一个窗口就输出并释放，
+ *   之后才到的同 key 事件另起一组；内存只和窗口内活跃的通话有关，和输入大小无关
+ *
+ * 各来源之间的时钟偏差要小于窗口。不是线程安全的。
+ */
+public class MergeJoinCorrelator {
+
+    private final IncrementalCorrelator joined;
+
+    /** 每个来源出队的事件数，按来源名称 */
+    private final Map<String, Long> counts = new LinkedHashMap<>();
+
+    /**
+     * @param joined 连接用的增量关联器，安静期即连接窗口
+     */
+    public MergeJoinCorrelator(IncrementalCorrelator joined) {
+        this.joined = joined;
+    }
+
+    /**
+     * 把所有来源归并完、全部收尾，结果在此期间推给 IncrementalCorrelator 的 sink。
+     * 不负责关闭 sources。
+     *
+     * @return 处理的事件总数
+     */
+    public long run(List<EventSource> sources) {
+        for (EventSource source : sources) {
+            counts.putIfAbsent(source.name(), 0L);
+        }
+        long total = EventMerger.merge(sources, (source, e) -> {
+            joined.accept(e, source.strategy().joinKeys(e));
+            counts.merge(source.name(), 1L, Long::sum);
+        });
+        joined.finish();
+        return total;
+    }
+
+    /** 每个来源处理的事件数 */
+    public Map<String, Long> counts() {
+        return counts;
+    }
+}
@@ -0,0 +1,687 @@
+package com.fscallflow.analyzer.correlate;
+
+import com.fscallflow.analyzer.model.AnalyzeResult;
+import com.fscallflow.analyzer.model.HubUuid;
+import com.fscallflow.analyzer.model.UnifiedEvent;
+import com.fscallflow.analyzer.store.RawLineStore;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * 按时间分片的关联：跨天的大日志不再建一个全局并查集，而是按日志时间切成固定窗口，
+ * 每个窗口一个 {@link CallJoiner}，窗口封口后交给线程池并行建桶、构图。
+ *
+ * 分片之间的拼接：
+ * - 组内时间全部落在窗口内部（离两侧边界都超过 margin）的分组，在分片里直接构图输出
+ * - 靠近边界的分组（边缘分组）物化出事件和它的全部 key（legId、SIP Call-ID、引用 UUID、技术 key），
+ *   按分片顺序和前面还开着的通话做 key 匹配，有共享 key 的拼成一通
+ * - 通话在最新一个分片里没有靠近右边界的部分时收尾输出，占用的分片随之释放
+ *
+ * 更长的通话如果在某个边界附近 margin 内没有任何事件，会被拆成两组。
+ * 拼接出来的通话按到达顺序在一个临时 CallJoiner 里重放一遍合并（带上全局 hub），分组 ID 与不分片时取到的一致。
+ *
+ * Hub UUID：一个分片只看得到 hub 的一部分引用（60 通电话分散在 3 个小时里，每个分片只有几通），
+ * 按分片各自的扇出判断会漏掉，所以分片里只按 {@link CallJoiner} 的阈值判断“确定的” hub，
+ * 其余的引用不在分片里定：
+ * - 本分片里扇出 > 1 的 UUID 先不据它合并，引用它的各个分组带着它作为“引用 key”出来
+ * - 本分片里没有自己事件、只被引用的 UUID 即使合并了，也作为引用 key 带出来，不参与普通的 key 匹配
+ * - 拼接阶段按引用 key 累计每个 UUID 连着的不同通话数，超过 hubFanout 即为全局 hub，之后的分片直接跳过它；
+ *   没超过的，等相关通话都收尾、且它最近一次被引用也已经在 margin 之外，再把这些通话合成一组输出
+ * 因此只有在 margin 内接连被引用的 hub 才能准确识别；引用间隔都超过 margin 的，和长通话一样按间隔拆开。
+ * 组大小阈值（hubMaxEvents）仍按分片各自判断。
+ *
+ * 没有任何 key 的事件（unknown 组）不参与拼接：每个分片只物化其中会参与构图的类型，
+ * OTHER / RTP_EVENT 直接丢掉，跨分片累积后在 finish 时输出，和 {@link IncrementalCorrelator} 一样；
+ * 所以 unknown 组的首末时间只按保留下来的事件算。
+ *
+ * 输出顺序与 {@link EventCorrelator#buildCallResults(CallJoiner)} 相同（按分组第一条事件的到达顺序）。
+ * accept / finish 要在同一个线程上调用。
+ */
+public class ShardedCorrelator implements Consumer<UnifiedEvent> {
+
+    private static final String UNKNOWN = "unknown";
+
+    private final EventCorrelator correlator;
+    private final Executor pool;
+    private final int maxInFlight;
+    private final RawLineStore rawStore;
+    private final long windowMicros;
+    private final long marginMicros;
+    private final int hubFanout;
+    private final long hubMaxEvents;
+
+    /** 还在接收事件的分片，按分片序号排列 */
+    private final TreeMap<Long, Shard> open = new TreeMap<>();
+    /** 已封口、在线程池上关联的分片，按分片序号排队等待拼接 */
+    private final ArrayDeque<CompletableFuture<ShardResult>> sealed = new ArrayDeque<>();
+
+    /** 第一个带时间戳的事件之前的事件，先暂存，归入第一个分片 */
+    private List<UnifiedEvent> leading = new ArrayList<>();
+    private long maxTs = UnifiedEvent.NO_TS;
+    private long currentShard;
+    /** 全局到达序号 */
+    private long seq;
+
+    /** key -> 还开着的拼接通话 */
+    private final Map<String, Stitched> openKeys = new HashMap<>();
+    private final Set<Stitched> openCalls = new LinkedHashSet<>();
+
+    /** 已确认的全局 hub：拼接线程写，分片关联前读一份快照 */
+    private final Map<String, HubUuid> hubs = new ConcurrentHashMap<>();
+    /** 还没定下来的引用 key -> 引用它的通话 */
+    private final Map<String, Link> links = new HashMap<>();
+    /** 已经收尾、但还挂在没定下来的引用 key 上的通话 */
+    private final Set<Stitched> pending = new LinkedHashSet<>();
+    /** pending 通话自己的 key，后到的引用要找到它 */
+    private final Map<String, Stitched> parked = new HashMap<>();
+
+    /** 各分片 unknown 组里保留下来的事件，不进 openKeys / openCalls，finish 时一起输出 */
+    private final Stitched unknown = new Stitched();
+
+    /** 已完成的结果，带分组第一条事件的到达序号，finish 时按它排序 */
+    private final List<Ordered> results = new ArrayList<>();
+
+    /**
+     * @param pool         分片关联用的线程池
+     * @param parallelism  同时在线程池上关联的分片数上限（再加一个）
+     * @param rawStore     原始行存储，各分片共用；可以为 null
+     * @param windowMs     分片窗口
+     * @param marginMs     边界两侧参与拼接的范围
+     * @param hubFanout    引用同一个 UUID 的独立通话数阈值（跨分片累计），<= 0 关闭
+     * @param hubMaxEvents 据同一个 UUID 合并后的组大小阈值（事件数，分片内判断），<= 0 关闭
+     */
+    public ShardedCorrelator(EventCorrelator correlator,
+                             Executor pool,
+                             int parallelism,
+                             RawLineStore rawStore,
+                             long windowMs,
+                             long marginMs,
+                             int hubFanout,
+                             long hubMaxEvents) {
+        if (windowMs <= 0 || marginMs < 0) {
+            throw new IllegalArgumentException("分片窗口必须大于 0，margin 不能为负: window=" + windowMs + ", margin=" + marginMs);
+        }
+        this.correlator = correlator;
+        this.pool = pool;
+        this.maxInFlight = Math.max(1, parallelism) + 1;
+        this.rawStore = rawStore;
+        this.windowMicros = windowMs * 1000L;
+        this.marginMicros = marginMs * 1000L;
+        this.hubFanout = hubFanout;
+        this.hubMaxEvents = hubMaxEvents;
+    }
+
+    @Override
+    public void accept(UnifiedEvent e) {
+        if (e == null) {
+            return;
+        }
+        long ts = e.getTsMicros();
+        if (ts == UnifiedEvent.NO_TS && maxTs == UnifiedEvent.NO_TS) {
+            leading.add(e);
+            return;
+        }
+
+        long index = currentShard;
+        if (ts != UnifiedEvent.NO_TS) {
+            index = Math.floorDiv(ts, windowMicros);
+            // 迟到的事件（所在窗口已封口）归入最早一个还开着的分片
+            if (!open.isEmpty() && index < open.firstKey() && !open.containsKey(index)) {
+                index = open.firstKey();
+            }
+        }
+        Shard shard = open.computeIfAbsent(index, Shard::new);
+
+        if (leading != null) {
+            for (UnifiedEvent pending : leading) {
+                shard.add(pending);
+            }
+            leading = null;
+        }
+        shard.add(e);
+
+        if (ts != UnifiedEvent.NO_TS && (maxTs == UnifiedEvent.NO_TS || ts > maxTs)) {
+            maxTs = ts;
+            currentShard = index;
+            sealCompleted();
+        }
+        drainDone();
+    }
+
+    /**
+     * 流结束：封口剩下的分片，等全部拼接完，按到达顺序返回结果。
+     */
+    public List<AnalyzeResult> finish() {
+        if (leading != null && !leading.isEmpty()) {
+            Shard shard = open.computeIfAbsent(0L, Shard::new);
+            leading.forEach(shard::add);
+        }
+        leading = null;
+
+        while (!open.isEmpty()) {
+            seal(open.pollFirstEntry().getValue());
+        }
+        while (!sealed.isEmpty()) {
+            stitch(sealed.poll().join());
+        }
+        for (Stitched call : new ArrayList<>(openCalls)) {
+            close(call);
+        }
+        flush(Long.MAX_VALUE, true);
+        if (!unknown.parts.isEmpty()) {
+            emit(List.of(unknown));
+        }
+
+        results.sort(Comparator.comparingLong(o -> o.firstSeq));
+        List<AnalyzeResult> out = new ArrayList<>(results.size());
+        for (Ordered o : results) {
+            out.add(o.result);
+        }
+        return out;
+    }
+
+    /** 日志时间已经越过 “窗口结束 + margin” 的分片封口 */
+    private void sealCompleted() {
+        while (!open.isEmpty() && open.firstKey() != currentShard) {
+            Shard first = open.firstEntry().getValue();
+            if (maxTs < first.end + marginMicros) {
+                break;
+            }
+            open.pollFirstEntry();
+            seal(first);
+        }
+    }
+
+    private void seal(Shard shard) {
+        // 在途分片太多时先等最早的一个，限制同时驻留的分片数
+        while (sealed.size() >= maxInFlight) {
+            stitch(sealed.poll().join());
+        }
+        sealed.add(CompletableFuture.supplyAsync(shard::correlate, pool));
+    }
+
+    /** 按顺序拼接已经关联完的分片 */
+    private void drainDone() {
+        while (!sealed.isEmpty() && sealed.peek().isDone()) {
+            stitch(sealed.poll().join());
+        }
+    }
+
+    // ===== 跨分片拼接 =====
+
+    private void stitch(ShardResult shard) {
+        results.addAll(shard.done);
+        if (shard.unknown != null) {
+            unknown.parts.add(shard.unknown);
+        }
+        for (HubUuid h : shard.hubs) {
+            markHub(h.getUuid(), h.getFanOut(), h.getEvents());
+        }
+
+        for (Part part : shard.edges) {
+            Stitched call = null;
+            for (String key : part.keys) {
+                Stitched other = openKeys.get(key);
+                if (other != null && other != call) {
+                    call = call == null ? other : merge(call, other);
+                }
+            }
+            if (call == null) {
+                call = new Stitched();
+                openCalls.add(call);
+            }
+            call.parts.add(part);
+            for (String key : part.keys) {
+                if (openKeys.putIfAbsent(key, call) == null) {
+                    call.keys.add(key);
+                }
+                Link link = links.get(key);
+                if (link != null) {
+                    link.owners.add(call);
+                }
+            }
+            if (part.tail) {
+                call.lastTailShard = shard.index;
+            }
+            for (String ref : part.refKeys) {
+                link(call, ref, part.hi);
+            }
+        }
+
+        // 在这个分片里没有靠近右边界的部分：不会再被后面的分片拼上，收尾
+        List<Stitched> done = new ArrayList<>();
+        for (Stitched call : openCalls) {
+            if (call.lastTailShard != shard.index) {
+                done.add(call);
+            }
+        }
+        for (Stitched call : done) {
+            close(call);
+        }
+        flush(shard.index * windowMicros + windowMicros - marginMicros, false);
+    }
+
+    /** 通话引用了一个还没定下来的 UUID：累计它连着的通话数，超过阈值即为全局 hub */
+    private void link(Stitched call, String ref, long ts) {
+        if (hubs.containsKey(ref)) {
+            call.refKeys.add(ref);
+            return;
+        }
+        Link link = links.get(ref);
+        if (link == null) {
+            link = new Link();
+            links.put(ref, link);
+            Stitched owner = openKeys.getOrDefault(ref, parked.get(ref));
+            if (owner != null) {
+                link.owners.add(owner);
+            }
+        }
+        call.refKeys.add(ref);
+        link.referrers.add(call);
+        link.lastTs = Math.max(link.lastTs, ts);
+        int fanOut = link.fanOut();
+        if (hubFanout > 0 && fanOut > hubFanout) {
+            markHub(ref, fanOut, 0);
+        }
+    }
+
+    /** 确认一个全局 hub：之后的分片不据它合并，已经挂在它上面的通话不再因它合成一组 */
+    private void markHub(String uuid, int fanOut, long events) {
+        HubUuid hub = hubs.computeIfAbsent(uuid, k -> {
+            HubUuid h = new HubUuid();
+            h.setUuid(k);
+            return h;
+        });
+        Link link = links.remove(uuid);
+        if (link != null) {
+            fanOut = Math.max(fanOut, link.fanOut());
+        }
+        hub.setFanOut(Math.max(hub.getFanOut(), fanOut));
+        hub.setEvents(Math.max(hub.getEvents(), events));
+    }
+
+    /**
+     * 输出已经定下来的 pending 通话：沿还没定下来的引用 key 找出连在一起的全部通话，
+     * 都已收尾、且这些 key 最近一次被引用都早于 activeFrom 时合成一组输出；force 时不再等。
+     */
+    private void flush(long activeFrom, boolean force) {
+        Set<Stitched> seen = new HashSet<>();
+        for (Stitched start : new ArrayList<>(pending)) {
+            if (!seen.add(start)) {
+                continue;
+            }
+            List<Stitched> members = new ArrayList<>();
+            Set<String> keys = new LinkedHashSet<>();
+            ArrayDeque<Stitched> queue = new ArrayDeque<>(List.of(start));
+            boolean ready = true;
+            while (!queue.isEmpty()) {
+                Stitched call = queue.poll();
+                members.add(call);
+                ready &= !openCalls.contains(call);
+                for (String key : call.linkKeys()) {
+                    Link link = links.get(key);
+                    if (link == null || !keys.add(key)) {
+                        continue;
+                    }
+                    ready &= force || link.lastTs < activeFrom;
+                    for (Stitched next : link.members()) {
+                        if (seen.add(next)) {
+                            queue.add(next);
+                        }
+                    }
+                }
+            }
+            if (!ready) {
+                continue;
+            }
+            keys.forEach(links::remove);
+            for (Stitched call : members) {
+                pending.remove(call);
+                call.keys.forEach(key -> parked.remove(key, call));
+            }
+            emit(members);
+        }
+    }
+
+    /** 小的并进大的 */
+    private Stitched merge(Stitched a, Stitched b) {
+        Stitched big = a.keys.size() >= b.keys.size() ? a : b;
+        Stitched small = big == a ? b : a;
+        for (String key : small.keys) {
+            openKeys.put(key, big);
+        }
+        big.keys.addAll(small.keys);
+        big.parts.addAll(small.parts);
+        big.lastTailShard = Math.max(big.lastTailShard, small.lastTailShard);
+        big.refKeys.addAll(small.refKeys);
+        for (String key : small.linkKeys()) {
+            Link link = links.get(key);
+            if (link != null) {
+                link.replace(small, big);
+            }
+        }
+        openCalls.remove(small);
+        return big;
+    }
+
+    /** 收尾：还挂在没定下来的引用 key 上的先放进 pending，其余直接输出 */
+    private void close(Stitched call) {
+        openCalls.remove(call);
+        for (String key : call.keys) {
+            openKeys.remove(key);
+        }
+        for (String key : call.linkKeys()) {
+            if (links.containsKey(key)) {
+                pending.add(call);
+                call.keys.forEach(k -> parked.put(k, call));
+                return;
+            }
+        }
+        emit(List.of(call));
+    }
+
+    /** 一组拼接好的通话合成一个结果 */
+    private void emit(List<Stitched> members) {
+        Stitched call = members.get(0);
+        if (members.size() > 1) {
+            call = new Stitched();
+            for (Stitched m : members) {
+                call.parts.addAll(m.parts);
+                call.refKeys.addAll(m.refKeys);
+            }
+        }
+
+        long firstSeq = Long.MAX_VALUE;
+        boolean core = false;
+        Map<String, HubUuid> groupHubs = new LinkedHashMap<>();
+        for (Part p : call.parts) {
+            firstSeq = Math.min(firstSeq, p.firstSeq);
+            core |= p.hasCoreSignal;
+            p.hubs.forEach(h -> groupHubs.putIfAbsent(h.getUuid(), h));
+        }
+        for (String ref : call.refKeys) {
+            HubUuid hub = hubs.get(ref);
+            if (hub != null) {
+                groupHubs.putIfAbsent(ref, hub);
+            }
+        }
+        List<UnifiedEvent> events = call.events();
+        String groupId = call.parts.size() == 1 ? call.parts.get(0).groupId : replayGroupId(events);
+
+        // 噪声组过滤：与批量一致
+        if (UNKNOWN.equals(groupId) && !core) {
+            return;
+        }
+        AnalyzeResult result = correlator.toResult(groupId, events);
+        EventCorrelator.attachHubs(result, groupHubs.values());
+        results.add(new Ordered(firstSeq, result));
+    }
+
+    /**
+     * 拼接出来的通话：分组 ID 取决于全局的合并顺序，各分片自己的分组 ID 不一定对。
+     * 这通电话的合并只由它自己的事件决定，带上全局 hub 按到达顺序重放一遍就能得到不分片时的分组 ID。
+     */
+    private String replayGroupId(List<UnifiedEvent> events) {
+        CallJoiner replay = new CallJoiner(null, hubFanout, hubMaxEvents);
+        replay.assumeHubs(hubs.keySet());
+        events.forEach(replay);
+        return replay.groupRows().keySet().iterator().next();
+    }
+
+    // ===== 分片 =====
+
+    /** 一个时间窗口内的事件，接收阶段只在调用线程上写 */
+    private final class Shard {
+        final long index;
+        final long start;
+        final long end;
+        /** 扇出 > 1 就先记为 hub，是不是真的 hub 在拼接阶段按全局扇出决定 */
+        final CallJoiner joiner = new CallJoiner(rawStore, hubFanout > 0 ? 1 : 0, hubMaxEvents);
+        /** 行号 -> 全局到达序号 */
+        long[] seqs = new long[1024];
+        /** 行号 -> 行内引用的 UUID（EventStore 不保存，拼接重放时要用） */
+        final List<List<String>> refs = new ArrayList<>();
+
+        Shard(long index) {
+            this.index = index;
+            this.start = index * windowMicros;
+            this.end = start + windowMicros;
+        }
+
+        void add(UnifiedEvent e) {
+            int row = joiner.size();
+            joiner.accept(e);
+            if (row == seqs.length) {
+                seqs = Arrays.copyOf(seqs, row * 2);
+            }
+            seqs[row] = seq++;
+            refs.add(e.getRefUuids());
+        }
+
+        /** 在线程池上执行：建桶，内部分组直接构图，边缘分组物化出来等待拼接 */
+        ShardResult correlate() {
+            joiner.assumeHubs(hubs.keySet());
+            EventStore store = joiner.store();
+            SymbolTable symbols = joiner.symbols();
+            List<Ordered> done = new ArrayList<>();
+            Map<String, Part> edges = new LinkedHashMap<>();
+            Part unknownPart = null;
+
+            // 够得上全局阈值（或者已经是全局 hub）的照常按 hub 处理，其余的留给拼接阶段
+            List<HubUuid> confirmed = new ArrayList<>();
+            Set<String> local = new HashSet<>();
+            Set<String> undecided = new HashSet<>();
+            for (HubUuid h : joiner.hubs()) {
+                local.add(h.getUuid());
+                if (hubs.containsKey(h.getUuid()) || (hubFanout > 0 && h.getFanOut() > hubFanout)
+                        || (hubMaxEvents > 0 && h.getEvents() > hubMaxEvents)) {
+                    confirmed.add(h);
+                } else {
+                    undecided.add(h.getUuid());
+                }
+            }
+            // 各分组里只被引用的 UUID（引用 key），以及自己的事件挂着待定 UUID 的分组
+            boolean[] refOnly = joiner.referenceOnly();
+            Map<String, List<String>> refKeys = new HashMap<>();
+            Set<String> owners = new HashSet<>();
+            for (int id = 0; id < symbols.size(); id++) {
+                String name = symbols.name(id);
+                if (refOnly[id]) {
+                    if (!local.contains(name)) {
+                        refKeys.computeIfAbsent(joiner.groupOf(id), k -> new ArrayList<>()).add(name);
+                    }
+                } else if (undecided.contains(name)) {
+                    owners.add(joiner.groupOf(id));
+                }
+            }
+
+            for (Map.Entry<String, int[]> g : joiner.groupRows().entrySet()) {
+                String groupId = g.getKey();
+                int[] rows = g.getValue();
+                long firstSeq = seqs[rows[0]];
+                boolean core = EventCorrelator.hasCoreSignal(store, rows);
+
+                if (UNKNOWN.equals(groupId)) {
+                    int[] kept = Arrays.stream(rows).filter(row -> !EventCorrelator.isNoiseType(store.type(row))).toArray();
+                    if (kept.length > 0) {
+                        unknownPart = part(groupId, firstSeq, kept, false, core, List.of());
+                    }
+                    continue;
+                }
+
+                long lo = Long.MAX_VALUE;
+                long hi = Long.MIN_VALUE;
+                for (int row : rows) {
+                    long ts = store.tsMicros(row);
+                    if (ts != UnifiedEvent.NO_TS) {
+                        lo = Math.min(lo, ts);
+                        hi = Math.max(hi, ts);
+                    }
+                }
+                // 没有任何时间戳的分组无法判断位置，两侧都参与拼接
+                boolean untimed = lo == Long.MAX_VALUE;
+                boolean head = untimed || lo < start + marginMicros;
+                boolean tail = untimed || hi >= end - marginMicros;
+
+                List<String> groupRefs = new ArrayList<>(refKeys.getOrDefault(groupId, List.of()));
+                List<HubUuid> groupHubs = new ArrayList<>();
+                for (HubUuid h : joiner.hubsOf(groupId)) {
+                    if (undecided.contains(h.getUuid())) {
+                        groupRefs.add(h.getUuid());
+                    } else {
+                        groupHubs.add(h);
+                    }
+                }
+
+                if (!head && !tail && groupRefs.isEmpty() && !owners.contains(groupId)) {
+                    done.add(new Ordered(firstSeq, correlator.toResult(groupId, joiner, rows, groupHubs)));
+                    continue;
+                }
+                Part part = part(groupId, firstSeq, rows, tail, core, groupHubs);
+                part.refKeys.addAll(groupRefs);
+                part.hi = untimed ? Long.MAX_VALUE : hi;
+                edges.put(groupId, part);
+            }
+
+            // 边缘分组自己的 key：符号表里每个 key 按所在集合归到对应分组，只被引用的 UUID 已经在 refKeys 里
+            if (!edges.isEmpty()) {
+                for (int id = 0; id < symbols.size(); id++) {
+                    Part part = refOnly[id] ? null : edges.get(joiner.groupOf(id));
+                    if (part != null) {
+                        part.keys.add(symbols.name(id));
+                    }
+                }
+            }
+            return new ShardResult(index, done, new ArrayList<>(edges.values()), unknownPart, confirmed);
+        }
+
+        /** 物化一个分组的事件，补上 EventStore 不保存的行内引用 */
+        private Part part(String groupId, long firstSeq, int[] rows, boolean tail, boolean core, List<HubUuid> hubs) {
+            long[] partSeqs = new long[rows.length];
+            List<UnifiedEvent> events = joiner.views(rows);
+            for (int i = 0; i < rows.length; i++) {
+                partSeqs[i] = seqs[rows[i]];
+                events.get(i).setRefUuids(refs.get(rows[i]));
+            }
+            return new Part(groupId, firstSeq, events, partSeqs, tail, core, hubs);
+        }
+    }
+
+    /**
+     * @param unknown 本分片 unknown 组保留下来的事件，没有时为 null
+     * @param hubs    本分片确认的 hub
+     */
+    private record ShardResult(long index, List<Ordered> done, List<Part> edges, Part unknown, List<HubUuid> hubs) {
+    }
+
+    private record Ordered(long firstSeq, AnalyzeResult result) {
+    }
+
+    /** 一个分片里的边缘分组，事件已物化，不再引用分片的 CallJoiner */
+    private static final class Part {
+        final String groupId;
+        final long firstSeq;
+        final List<UnifiedEvent> events;
+        final long[] seqs;
+        final boolean tail;
+        final boolean hasCoreSignal;
+        final List<HubUuid> hubs;
+        /** 自己的 key：legId、SIP Call-ID、技术 key */
+        final List<String> keys = new ArrayList<>();
+        /** 只被引用、或者本分片里还没定是不是 hub 的 UUID */
+        final List<String> refKeys = new ArrayList<>();
+        /** 组内最晚的时间戳，没有时间戳时为 Long.MAX_VALUE */
+        long hi = Long.MIN_VALUE;
+
+        Part(String groupId, long firstSeq, List<UnifiedEvent> events, long[] seqs, boolean tail,
+             boolean hasCoreSignal, List<HubUuid> hubs) {
+            this.groupId = groupId;
+            this.firstSeq = firstSeq;
+            this.events = events;
+            this.seqs = seqs;
+            this.tail = tail;
+            this.hasCoreSignal = hasCoreSignal;
+            this.hubs = hubs;
+        }
+    }
+
+    /** 跨分片拼接中的一通电话 */
+    private static final class Stitched {
+        final List<Part> parts = new ArrayList<>(2);
+        final List<String> keys = new ArrayList<>();
+        final Set<String> refKeys = new LinkedHashSet<>();
+        long lastTailShard = Long.MIN_VALUE;
+
+        /** 可能挂着引用关系的 key：引用到的，和自己的（被别人引用） */
+        List<String> linkKeys() {
+            List<String> all = new ArrayList<>(refKeys.size() + keys.size());
+            all.addAll(refKeys);
+            all.addAll(keys);
+            return all;
+        }
+
+        /** 各部分的事件按全局到达顺序合并 */
+        List<UnifiedEvent> events() {
+            if (parts.size() == 1) {
+                return parts.get(0).events;
+            }
+            int n = 0;
+            for (Part p : parts) {
+                n += p.events.size();
+            }
+            long[] order = new long[n];
+            List<UnifiedEvent> all = new ArrayList<>(n);
+            for (Part p : parts) {
+                System.arraycopy(p.seqs, 0, order, all.size(), p.seqs.length);
+                all.addAll(p.events);
+            }
+            int[] perm = EventOrder.order(order);
+            if (perm == null) {
+                return all;
+            }
+            List<UnifiedEvent> merged = new ArrayList<>(n);
+            for (int i : perm) {
+                merged.add(all.get(i));
+            }
+            return merged;
+        }
+    }
+
+    /** 一个还没定是不是 hub 的引用 UUID */
+    private static final class Link {
+        final Set<Stitched> referrers = new LinkedHashSet<>();
+        /** 自己的事件里带着这个 UUID 的通话 */
+        final Set<Stitched> owners = new LinkedHashSet<>(2);
+        long lastTs = Long.MIN_VALUE;
+
+        /** 连着的不同通话数，不算它自己所在的 */
+        int fanOut() {
+            int n = referrers.size();
+            for (Stitched owner : owners) {
+                if (referrers.contains(owner)) {
+                    n--;
+                }
+            }
+            return n;
+        }
+
+        Set<Stitched> members() {
+            Set<Stitched> all = new LinkedHashSet<>(referrers);
+            all.addAll(owners);
+            return all;
+        }
+
+        void replace(Stitched from, Stitched to) {
+            if (referrers.remove(from)) {
+                referrers.add(to);
+            }
+            if (owners.remove(from)) {
+                owners.add(to);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.fscallflow.analyzer.correlate;
+
+import com.fscallflow.analyzer.model.UnifiedEvent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * FS 以外来源（SBC、HTTP 网关等）的 callId 策略：这些日志里没有 FS UUID，
+ * 只能靠上游传下来的共享 key 和 FS 的通话对上。
+ *
+ * 优先级：globalCallId / bizId / traceId -> SIP Call-ID -> "unknown"，
+ * 同样在 attrs 中写入 callIdSource（global / sip / unknown）。
+ *
+ * 不是 Spring Bean：按来源在请求里构造，避免和 {@link DefaultFsCallIdStrategy} 抢注入。
+ */
+public class SharedKeyCallIdStrategy implements CallIdStrategy {
+
+    @Override
+    public String resolve(UnifiedEvent event) {
+        if (event == null) {
+            return "unknown";
+        }
+
+        Map<String, String> attrs = event.getAttrs();
+        if (attrs == null) {
+            attrs = new LinkedHashMap<>();
+            event.setAttrs(attrs);
+        }
+
+        String globalId = firstNonEmpty(
+                attrs.get("globalCallId"),
+                attrs.get("bizId"),
+                attrs.get("traceId")
+        );
+        if (globalId != null) {
+            attrs.put("callIdSource", "global");
+            return globalId;
+        }
+
+        String sipCallId = firstNonEmpty(
+                attrs.get("sipCallId"),
+                attrs.get("callId")
+        );
+        if (sipCallId != null) {
+            attrs.put("callIdSource", "sip");
+            return sipCallId;
+        }
+
+        attrs.put("callIdSource", "unknown");
+        return "unknown";
+    }
+
+    private static String firstNonEmpty(String... values) {
+        for (String v : values) {
+            if (v != null && !v.isBlank()) {
+                return v;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,198 @@
+package com.fscallflow.analyzer.correlate;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 一次分析内的符号表：把 FS UUID / SIP Call-ID 等关联 key 映射成从 0 开始的连续 int id。
+ *
+ * - 小写 UUID（FS 的默认格式）打包成两个 long 做哈希 key，直接从行文本的偏移解码，不需要 substring
+ * - 其他 key（SIP Call-ID、带大写字母的 UUID 等）走普通 HashMap，区分大小写，与原来按 String 比较一致
+ * - id -> String 只保留一份规范实例，同一个 UUID 在所有事件里共用它
+ *
+ * 不是线程安全的，和 CallJoiner 一样只服务于一次分析。
+ */
+public final class SymbolTable {
+
+    /** 没有对应符号 */
+    public static final int NONE = -1;
+
+    private static final int UUID_LENGTH = 36;
+
+    // ---- UUID：开放寻址表，每个槽连续存 [hi, lo, id + 1]，id 位为 0 表示空槽；一次探测基本只碰一条缓存行 ----
+    private static final int STRIDE = 3;
+    private long[] slots = new long[1024 * STRIDE];
+    private int slotMask = 1023;
+    private int uuidCount;
+
+    /** parseLowerUuid 的输出，避免每次解析都分配 */
+    private long parsedHi;
+    private long parsedLo;
+
+    // ---- 其他 key ----
+    private final Map<String, Integer> others = new HashMap<>();
+
+    /** id -> 规范化的 key 文本 */
+    private String[] names = new String[1024];
+    private int size;
+
+    /**
+     * 登记一个 key，返回其 id；null / 空白返回 {@link #NONE}。
+     */
+    public int intern(String key) {
+        if (key == null) {
+            return NONE;
+        }
+        if (key.length() == UUID_LENGTH && parseLowerUuid(key, 0)) {
+            return internParsed(key, 0, key);
+        }
+        if (key.isBlank()) {
+            return NONE;
+        }
+        Integer id = others.get(key);
+        if (id == null) {
+            id = add(key);
+            others.put(key, id);
+        }
+        return id;
+    }
+
+    /**
+     * 登记文本中 [start, start + 36) 处的 UUID，典型用法是正则在整行里找到 UUID 之后直接传偏移。
+     * 只有真正新出现的 UUID 才会 substring。
+     */
+    public int internUuid(CharSequence text, int start) {
+        if (parseLowerUuid(text, start)) {
+            return internParsed(text, start, null);
+        }
+        return intern(text.subSequence(start, start + UUID_LENGTH).toString());
+    }
+
+    /** 只查不登记 */
+    public int lookup(String key) {
+        if (key == null || key.isBlank()) {
+            return NONE;
+        }
+        if (key.length() == UUID_LENGTH && parseLowerUuid(key, 0)) {
+            int at = findSlot(parsedHi, parsedLo);
+            return (int) slots[at + 2] - 1;
+        }
+        Integer id = others.get(key);
+        return id == null ? NONE : id;
+    }
+
+    /** id 对应的规范化文本 */
+    public String name(int id) {
+        return id < 0 || id >= size ? null : names[id];
+    }
+
+    /** 已登记的符号数，id 的取值范围是 [0, size) */
+    public int size() {
+        return size;
+    }
+
+    /** 登记刚被 parseLowerUuid 解析过的 UUID */
+    private int internParsed(CharSequence text, int start, String asString) {
+        long hi = parsedHi;
+        long lo = parsedLo;
+        int at = findSlot(hi, lo);
+        if (slots[at + 2] != 0) {
+            return (int) slots[at + 2] - 1;
+        }
+
+        String name = asString != null ? asString
+                : text.subSequence(start, start + UUID_LENGTH).toString();
+        int id = add(name);
+        slots[at] = hi;
+        slots[at + 1] = lo;
+        slots[at + 2] = id + 1;
+        if (++uuidCount * 2 > slotMask + 1) {
+            rehash();
+        }
+        return id;
+    }
+
+    private int add(String name) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+        }
+        names[size] = name;
+        return size++;
+    }
+
+    /** 返回命中的槽或第一个空槽在 slots 里的下标 */
+    private int findSlot(long hi, long lo) {
+        int slot = mix(hi, lo) & slotMask;
+        while (true) {
+            int at = slot * STRIDE;
+            if (slots[at + 2] == 0 || (slots[at] == hi && slots[at + 1] == lo)) {
+                return at;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    private void rehash() {
+        long[] old = slots;
+        slots = new long[old.length * 2];
+        slotMask = slotMask * 2 + 1;
+        for (int at = 0; at < old.length; at += STRIDE) {
+            if (old[at + 2] != 0) {
+                int to = findSlot(old[at], old[at + 1]);
+                slots[to] = old[at];
+                slots[to + 1] = old[at + 1];
+                slots[to + 2] = old[at + 2];
+            }
+        }
+    }
+
+    private static int mix(long hi, long lo) {
+        long h = hi * 0x9E3779B97F4A7C15L ^ lo;
+        h ^= h >>> 32;
+        h *= 0xC2B2AE3D27D4EB4FL;
+        return (int) (h ^ (h >>> 29));
+    }
+
+    /**
+     * 一遍扫描同时校验和解码：8-4-4-4-12、全部为小写十六进制时返回 true，
+     * 前 16 位 / 后 16 位十六进制数分别写进 parsedHi / parsedLo。
+     */
+    private boolean parseLowerUuid(CharSequence s, int start) {
+        if (start < 0 || start + UUID_LENGTH > s.length()) {
+            return false;
+        }
+        long hi = 0;
+        long lo = 0;
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = s.charAt(start + i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+                continue;
+            }
+            int v = c < 128 ? HEX[c] : -1;
+            if (v < 0) {
+                return false;
+            }
+            if (i < 18) {
+                hi = (hi << 4) | v;
+            } else {
+                lo = (lo << 4) | v;
+            }
+        }
+        parsedHi = hi;
+        parsedLo = lo;
+        return true;
+    }
+
+    /** 小写十六进制字符的值，其余为 -1 */
+    private static final byte[] HEX = new byte[128];
+
+    static {
+        Arrays.fill(HEX, (byte) -1);
+        for (int c = '0'; c <= '9'; c++) HEX[c] = (byte) (c - '0');
+        for (int c = 'a'; c <= 'f'; c++) HEX[c] = (byte) (c - 'a' + 10);
+    }
+}
@@ -0,0 +1,64 @@
+package com.fscallflow.analyzer.job;
+
+import com.fscallflow.analyzer.model.AnalyzeResult;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个异步分析任务的内部状态。
+ * 进度字段由工作线程写、轮询线程读，都用 volatile / Atomic，读到的是某个时刻的近似值。
+ */
+final class AnalyzeJob {
+
+    final String id;
+    final String fileName;
+    final Path spool;
+    final long bytesTotal;
+    final long submittedAt = System.currentTimeMillis();
+
+    volatile JobStatus.State state = JobStatus.State.QUEUED;
+    volatile boolean cancelled;
+    volatile long finishedAt;
+    volatile String error;
+    volatile List<AnalyzeResult> results = List.of();
+    volatile Future<?> future;
+
+    final AtomicLong bytesParsed = new AtomicLong();
+    final AtomicLong events = new AtomicLong();
+    final AtomicLong groupsBuilt = new AtomicLong();
+
+    AnalyzeJob(String id, String fileName, Path spool, long bytesTotal) {
+        this.id = id;
+        this.fileName = fileName;
+        this.spool = spool;
+        this.bytesTotal = bytesTotal;
+    }
+
+    boolean finished() {
+        return finishedAt != 0;
+    }
+
+    void finish(JobStatus.State state) {
+        this.state = state;
+        this.finishedAt = System.currentTimeMillis();
+    }
+
+    JobStatus snapshot() {
+        JobStatus s = new JobStatus();
+        s.setId(id);
+        s.setState(state);
+        s.setFileName(fileName);
+        s.setBytesTotal(bytesTotal);
+        s.setBytesParsed(bytesParsed.get());
+        s.setEvents(events.get());
+        s.setGroupsBuilt(groupsBuilt.get());
+        s.setCalls(results.size());
+        s.setError(error);
+        s.setSubmittedAt(submittedAt);
+        s.setFinishedAt(finishedAt);
+        return s;
+    }
+}
@@ -0,0 +1,251 @@
+package com.fscallflow.analyzer.job;
+
+import com.fscallflow.analyzer.correlate.CallJoiner;
+import com.fscallflow.analyzer.correlate.EventCorrelator;
+import com.fscallflow.analyzer.model.AnalyzeResult;
+import com.fscallflow.analyzer.parser.FreeSwitchLogAdapter;
+import com.fscallflow.analyzer.store.RawLineStore;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步分析任务：上传先落到临时文件，立即返回任务 ID，解析和关联在有界线程池上跑，
+ * 前端轮询进度、分页取结果，也可以取消。
+ *
+ * - 工作线程数和排队深度可配置，队列满时提交直接被拒绝（{@link RejectedExecutionException}）
+ * - 结束（完成 / 失败 / 取消）的任务保留 resultTtl，过期后在下一次访问任务接口时清掉
+ * - 取消：排队中的直接移出队列；解析中的在下一次读输入时按 EOF 结束；构图中的在构完当前分组后中止
+ * - 解析读文件出错、构图出错都记为失败，不把读到一半的结果当成完成
+ */
+@Component
+@Slf4j
+public class AnalyzeJobService {
+
+    private final FreeSwitchLogAdapter logAdapter;
+    private final EventCorrelator correlator;
+    private final ThreadPoolExecutor executor;
+    private final long resultTtlMs;
+
+    /** 原始行 spool 文件目录，留空用系统临时目录 */
+    @Value("${analyzer.raw-store.dir:}")
+    private String rawStoreDir;
+
+    private final Map<String, AnalyzeJob> jobs = new ConcurrentHashMap<>();
+
+    public AnalyzeJobService(FreeSwitchLogAdapter logAdapter,
+                             EventCorrelator correlator,
+                             @Value("${analyzer.jobs.workers:2}") int workers,
+                             @Value("${analyzer.jobs.queue-depth:8}") int queueDepth,
+                             @Value("${analyzer.jobs.result-ttl-ms:1800000}") long resultTtlMs) {
+        this.logAdapter = logAdapter;
+        this.correlator = correlator;
+        this.resultTtlMs = resultTtlMs;
+        AtomicInteger seq = new AtomicInteger();
+        int n = Math.max(1, workers);
+        this.executor = new ThreadPoolExecutor(n, n, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueDepth)),
+                r -> {
+                    Thread t = new Thread(r, "analyze-job-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * 把上传落盘并排队，返回任务初始状态。
+     *
+     * @throws RejectedExecutionException 队列已满
+     */
+    public JobStatus submit(MultipartFile file) throws IOException {
+        purgeExpired();
+        Path spool = Files.createTempFile("fs-job-", ".log");
+        try {
+            file.transferTo(spool);
+            AnalyzeJob job = new AnalyzeJob(UUID.randomUUID().toString(), file.getOriginalFilename(), spool, Files.size(spool));
+            jobs.put(job.id, job);
+            try {
+                job.future = executor.submit(() -> run(job));
+            } catch (RejectedExecutionException e) {
+                jobs.remove(job.id);
+                throw e;
+            }
+            log.info("分析任务已排队: id={}, name={}, size={}", job.id, job.fileName, job.bytesTotal);
+            return job.snapshot();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spool);
+            throw e;
+        }
+    }
+
+    /** 任务状态，不存在（或已过期）时返回 null */
+    public JobStatus status(String id) {
+        purgeExpired();
+        AnalyzeJob job = jobs.get(id);
+        return job == null ? null : job.snapshot();
+    }
+
+    /**
+     * 分页取结果，page 从 0 开始；任务没完成时 items 为空、total 为 0。不存在时返回 null。
+     */
+    public ResultPage results(String id, int page, int size) {
+        purgeExpired();
+        AnalyzeJob job = jobs.get(id);
+        if (job == null) {
+            return null;
+        }
+        List<AnalyzeResult> all = job.results;
+        int p = Math.max(0, page);
+        int s = Math.max(1, size);
+        int from = (int) Math.min((long) p * s, all.size());
+        int to = Math.min(from + s, all.size());
+
+        ResultPage rp = new ResultPage();
+        rp.setJobId(id);
+        rp.setPage(p);
+        rp.setSize(s);
+        rp.setTotal(all.size());
+        rp.setItems(all.subList(from, to));
+        return rp;
+    }
+
+    /** 取消任务，已结束的任务保持原状态。不存在时返回 null */
+    public JobStatus cancel(String id) {
+        purgeExpired();
+        AnalyzeJob job = jobs.get(id);
+        if (job == null) {
+            return null;
+        }
+        if (!job.finished()) {
+            job.cancelled = true;
+            Future<?> f = job.future;
+            // cancel(false) 对已经在跑的任务也返回 true，只有能从队列里移出来才说明还没开始
+            if (f instanceof Runnable r && executor.remove(r)) {
+                // 还在排队：run 不会再执行，这里收尾
+                f.cancel(false);
+                deleteSpool(job);
+                job.finish(JobStatus.State.CANCELLED);
+            }
+        }
+        return job.snapshot();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        jobs.values().forEach(this::deleteSpool);
+    }
+
+    private void run(AnalyzeJob job) {
+        try {
+            if (job.cancelled) {
+                job.finish(JobStatus.State.CANCELLED);
+                return;
+            }
+            job.state = JobStatus.State.PARSING;
+            try (RawLineStore rawStore = RawLineStore.create(rawStoreDir == null || rawStoreDir.isBlank() ? null : Path.of(rawStoreDir.trim()));
+                 InputStream in = new ProgressInputStream(Files.newInputStream(job.spool), job)) {
+                CallJoiner joiner = correlator.joiner(rawStore);
+                logAdapter.parse(in, e -> {
+                    joiner.accept(e);
+                    job.events.incrementAndGet();
+                });
+                if (job.cancelled) {
+                    job.finish(JobStatus.State.CANCELLED);
+                    return;
+                }
+
+                job.state = JobStatus.State.CORRELATING;
+                List<AnalyzeResult> results = correlator.buildCallResults(joiner, () -> {
+                    // 每构好一组检查一次，取消后不再构剩下的分组
+                    if (job.cancelled) {
+                        throw new CancellationException("任务已取消: " + job.id);
+                    }
+                    job.groupsBuilt.incrementAndGet();
+                });
+                if (job.cancelled) {
+                    job.finish(JobStatus.State.CANCELLED);
+                    return;
+                }
+                job.results = results;
+                job.finish(JobStatus.State.DONE);
+                log.info("分析任务完成: id={}, 事件数 {}, 通话数 {}", job.id, job.events.get(), results.size());
+            }
+        } catch (Exception e) {
+            if (job.cancelled) {
+                // 构图被进度回调中止，或取消后的收尾出错，都按取消处理
+                log.info("分析任务已取消: id={}", job.id);
+                job.finish(JobStatus.State.CANCELLED);
+                return;
+            }
+            log.error("分析任务失败: id={}", job.id, e);
+            job.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            job.finish(JobStatus.State.FAILED);
+        } finally {
+            deleteSpool(job);
+        }
+    }
+
+    /** 清掉结束超过 TTL 的任务 */
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        jobs.values().removeIf(job -> job.finished() && now - job.finishedAt > resultTtlMs);
+    }
+
+    private void deleteSpool(AnalyzeJob job) {
+        try {
+            Files.deleteIfExists(job.spool);
+        } catch (IOException e) {
+            log.warn("删除任务临时文件失败: {}", job.spool, e);
+        }
+    }
+
+    /**
+     * 统计已读字节数；任务被取消后按 EOF 处理，让解析正常结束。
+     */
+    private static final class ProgressInputStream extends FilterInputStream {
+        private final AnalyzeJob job;
+
+        ProgressInputStream(InputStream in, AnalyzeJob job) {
+            super(in);
+            this.job = job;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (job.cancelled) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                job.bytesParsed.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (job.cancelled) {
+                return -1;
+            }
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                job.bytesParsed.addAndGet(n);
+            }
+            return n;
+        }
+    }
+}
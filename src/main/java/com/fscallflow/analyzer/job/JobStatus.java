@@ -0,0 +1,26 @@
+package com.fscallflow.analyzer.job;
+
+import lombok.Data;
+
+/**
+ * 异步分析任务的进度快照，轮询接口直接返回它。
+ */
+@Data
+public class JobStatus {
+
+    public enum State {
+        QUEUED, PARSING, CORRELATING, DONE, FAILED, CANCELLED
+    }
+
+    private String id;
+    private State state;
+    private String fileName;
+    private long bytesTotal;
+    private long bytesParsed;
+    private long events;
+    private long groupsBuilt;     // 已构好图的分组数
+    private int calls;            // 完成后的结果条数
+    private String error;         // FAILED 时的原因
+    private long submittedAt;     // epoch 毫秒
+    private long finishedAt;      // epoch 毫秒，未结束时为 0
+}
@@ -0,0 +1,18 @@
+package com.fscallflow.analyzer.job;
+
+import com.fscallflow.analyzer.model.AnalyzeResult;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 任务结果的一页。
+ */
+@Data
+public class ResultPage {
+    private String jobId;
+    private int page;
+    private int size;
+    private int total;
+    private List<AnalyzeResult> items;
+}
@@ -13,4 +13,5 @@ public class CallGraph {
     private boolean logTruncatedTail;
     private CallSummary summary;
     private List<Diagnosis> diagnoses;
+    private List<HubUuid> hubUuids;    // 本组引用到的 hub UUID（没有据它们合并），没有时为 null
 }
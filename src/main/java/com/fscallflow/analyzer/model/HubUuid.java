@@ -0,0 +1,14 @@
+package com.fscallflow.analyzer.model;
+
+import lombok.Data;
+
+/**
+ * 被很多通电话同时引用的 UUID（会议、录音守护进程、lua 脚本等），
+ * CallJoiner 不再据它合并分组，只在结果里报告出来。
+ */
+@Data
+public class HubUuid {
+    private String uuid;
+    private int fanOut;      // 引用它的独立通话数（按 SIP Call-ID / legId 合并后的分组计）
+    private long events;     // 如果据它合并，合并后组内的事件数
+}
@@ -2,8 +2,8 @@ package com.fscallflow.analyzer.model;
 
 import lombok.Data;
 
-import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -15,8 +15,11 @@ public class RawEvent {
     /** 行里解析到的 UUID（A/B腿任意） */
     private String uuid;
 
-    /** 时间 */
-    private LocalDateTime ts;
+    /** 行里出现的全部 UUID，按出现顺序，第一个就是 uuid */
+    private List<String> uuids = List.of();
+
+    /** 时间：epoch 微秒，解析不到时为 UnifiedEvent.NO_TS */
+    private long tsMicros = UnifiedEvent.NO_TS;
 
     /** 日志级别：INFO / DEBUG / NOTICE ... */
     private String level;
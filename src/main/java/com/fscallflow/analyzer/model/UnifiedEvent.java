@@ -2,7 +2,7 @@ package com.fscallflow.analyzer.model;
 
 import lombok.Data;
 
-import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -12,11 +12,14 @@ import java.util.Map;
 @Data
 public class UnifiedEvent {
 
+    /** 没有时间戳时 tsMicros 的取值 */
+    public static final long NO_TS = Long.MIN_VALUE;
+
     /** 来源系统：FS / PBX / SCRIPT / HTTP 等 */
     private String sourceSystem;
 
-    /** 事件时间 */
-    private LocalDateTime ts;
+    /** 事件时间：epoch 微秒，没有时间戳时为 NO_TS */
+    private long tsMicros = NO_TS;
 
     /**
      * 全局呼叫 ID：
@@ -33,6 +36,12 @@ public class UnifiedEvent {
      */
     private String legId;
 
+    /**
+     * 该行引用到的全部 UUID（按出现顺序，通常包含 legId 自身）。
+     * 解析时一次性提取，CallJoiner 用它做跨腿合并；为 null 时 CallJoiner 退回去扫 raw。
+     */
+    private List<String> refUuids;
+
     /**
      * 事件大类：
      * SIGNAL / DIALPLAN / CALLCENTER / MEDIA / SCRIPT / HTTP / OTHER
@@ -51,6 +60,12 @@ public class UnifiedEvent {
      */
     private Map<String, String> attrs;
 
-    /** 原始行文本（方便跳转和排查） */
+    /**
+     * 原始行文本（方便跳转和排查）。
+     * 进入 EventStore 后原始行写到 RawLineStore，之后按 rawRef 取回。
+     */
     private String raw;
+
+    /** 原始行在 RawLineStore 里的引用，没有时为 RawLineStore.NO_REF（-1） */
+    private long rawRef = -1L;
 }
@@ -1,6 +1,7 @@
 package com.fscallflow.analyzer.parser;
 
 import com.fscallflow.analyzer.correlate.CallIdStrategy;
+import com.fscallflow.analyzer.correlate.EventSource;
 import com.fscallflow.analyzer.model.FsEventType;
 import com.fscallflow.analyzer.model.RawEvent;
 import com.fscallflow.analyzer.model.UnifiedEvent;
@@ -9,10 +10,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -83,6 +87,22 @@ public class FreeSwitchLogAdapter {
             "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}"
     );
 
+    /*
+     * 正则前置的字面量过滤：大部分行根本不含这些关键字，先用 indexOf 级别的扫描挡掉，
+     * 只有候选行才跑正则。计数器通过 prefilterStats() 暴露。
+     */
+    private final LiteralGate sipCallIdGate = new LiteralGate("CALL_ID_PATTERN", "call-id");
+    private final LiteralGate inboundNumGate = new LiteralGate("INBOUND_NUM_PATTERN", "sofia/external/");
+    private final LiteralGate internalAgentGate = new LiteralGate("INTERNAL_AGENT_PATTERN", "sofia/internal/");
+    private final LiteralGate digitsGate = new LiteralGate("DIGITS_PATTERN", "digits");
+    private final LiteralGate queueGate = new LiteralGate("QUEUE_PATTERN/QUEUE_JOIN_PATTERN", "queue");
+    private final LiteralGate queueVarGate = new LiteralGate("CALLCENTER_QUEUE_VAR_PATTERN", "callcenter_queue=");
+    private final LiteralGate agentGate = new LiteralGate("AGENT_PATTERN", "agent");
+    private final LiteralGate ccBridgeGate = new LiteralGate("CC_BRIDGE_PATTERN", "bridged");
+
+    /** 事件类型分类规则，见 FsEventClassifier.DEFAULT_RULES */
+    private static final FsEventClassifier CLASSIFIER = FsEventClassifier.defaults();
+
     private static String sanitizeQueueName(String raw) {
         if (raw == null) return null;
         Matcher m = INLINE_UUID_PATTERN.matcher(raw);
@@ -96,33 +116,131 @@ public class FreeSwitchLogAdapter {
 
     public List<UnifiedEvent> parse(InputStream inputStream) {
         List<UnifiedEvent> result = new ArrayList<>();
+        try {
+            parse(inputStream, result::add);
+        } catch (Exception e) {
+            log.error("Error while reading FS log stream", e);
+        }
+        return result;
+    }
+
+    /**
+     * 流式解析：逐行解析，每得到一个 UnifiedEvent 就立即推给 sink，
+     * 不在这里积攒整份事件列表，解析和下游分组可以边读边做。
+     *
+     * 读流出错（客户端断开、gzip 截断等）抛 IOException，sink 抛出的异常原样抛出，
+     * 调用方据此让请求 / 任务失败，而不是把读到一半的结果当成完整结果。
+     *
+     * @return 推给 sink 的事件数
+     */
+    public long parse(InputStream inputStream, Consumer<UnifiedEvent> sink) throws IOException {
+        long count = 0;
 
         try (BufferedReader br = new BufferedReader(
                 new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
 
             String line;
             while ((line = br.readLine()) != null) {
-                RawEvent raw = lineParser.parse(line);
-                if (raw == null) {
-                    continue;
-                }
-                UnifiedEvent evt = mapToUnified(raw);
+                UnifiedEvent evt = parseLine(line);
                 if (evt != null) {
-                    result.add(evt);
+                    sink.accept(evt);
+                    count++;
                 }
             }
-        } catch (Exception e) {
-            log.error("Error while reading FS log stream", e);
         }
 
-        return result;
+        return count;
+    }
+
+    /**
+     * 拉取式解析：把输入流包装成一条 {@link EventSource}，每次只读到下一个事件为止，
+     * 供多来源归并使用。FS 日志用注入的 callId 策略。
+     * 读流出错时 hasNext 抛 UncheckedIOException，不当成流结束。
+     */
+    public EventSource source(InputStream inputStream) {
+        return source("FS", callIdStrategy, inputStream);
+    }
+
+    /**
+     * 同上，用于 FS 以外的来源（SBC、HTTP 网关等）：行格式走同一个宽松的行解析器
+     * （时间戳 + key=value），事件打上 sourceSystem，callId 用该来源自己的策略。
+     */
+    public EventSource source(String sourceSystem, CallIdStrategy strategy, InputStream inputStream) {
+        BufferedReader br = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        Iterator<UnifiedEvent> events = new Iterator<>() {
+            UnifiedEvent next;
+            boolean done;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && !done) {
+                    try {
+                        String line = br.readLine();
+                        if (line == null) {
+                            done = true;
+                        } else {
+                            next = parseLine(line, sourceSystem, strategy);
+                        }
+                    } catch (IOException e) {
+                        done = true;
+                        throw new UncheckedIOException("读取 " + sourceSystem + " 日志流失败: " + e.getMessage(), e);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public UnifiedEvent next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                UnifiedEvent e = next;
+                next = null;
+                return e;
+            }
+        };
+        return new EventSource(sourceSystem, strategy, events, br);
     }
 
-    private UnifiedEvent mapToUnified(RawEvent raw) {
+    /**
+     * 各个正则前置过滤的累计统计（进程启动以来）。
+     */
+    public List<LiteralGate.Stats> prefilterStats() {
+        return List.of(
+                sipCallIdGate.stats(),
+                inboundNumGate.stats(),
+                internalAgentGate.stats(),
+                digitsGate.stats(),
+                queueGate.stats(),
+                queueVarGate.stats(),
+                agentGate.stats(),
+                ccBridgeGate.stats()
+        );
+    }
+
+    /**
+     * 解析单行日志，空行返回 null。
+     * 本身无状态，可以被并行解析器在多个线程上同时调用。
+     */
+    public UnifiedEvent parseLine(String line) {
+        return parseLine(line, "FS", callIdStrategy);
+    }
+
+    private UnifiedEvent parseLine(String line, String sourceSystem, CallIdStrategy strategy) {
+        RawEvent raw = lineParser.parse(line);
+        if (raw == null) {
+            return null;
+        }
+        return mapToUnified(raw, sourceSystem, strategy);
+    }
+
+    private UnifiedEvent mapToUnified(RawEvent raw, String sourceSystem, CallIdStrategy strategy) {
         UnifiedEvent e = new UnifiedEvent();
-        e.setSourceSystem("FS");
-        e.setTs(raw.getTs());
-        e.setLegId(raw.getUuid());
+        e.setSourceSystem(sourceSystem);
+        e.setTsMicros(raw.getTsMicros());
+        // legId 的语义是 FS 通道 UUID，其他来源行里的 UUID 只保留在 refUuids 里
+        e.setLegId("FS".equals(sourceSystem) ? raw.getUuid() : null);
+        e.setRefUuids(raw.getUuids());
         e.setRaw(raw.getRaw());
 
         // 先把 RawEvent.kv 搬过来作为基础 attrs
@@ -134,20 +252,29 @@ public class FreeSwitchLogAdapter {
         String msg = raw.getMsg() != null ? raw.getMsg() : "";
 
         // SIP Call-ID
-        Matcher cid = CALL_ID_PATTERN.matcher(msg);
-        if (cid.find()) {
-            attrs.putIfAbsent("sipCallId", cid.group(1));
+        if (sipCallIdGate.test(msg)) {
+            Matcher cid = CALL_ID_PATTERN.matcher(msg);
+            if (cid.find()) {
+                sipCallIdGate.hit();
+                attrs.putIfAbsent("sipCallId", cid.group(1));
+            }
         }
 
         // 号码解析
-        Matcher inM = INBOUND_NUM_PATTERN.matcher(msg);
-        if (inM.find()) {
-            attrs.putIfAbsent("callerNumber", inM.group(1));  // 呼入主叫
+        if (inboundNumGate.test(msg)) {
+            Matcher inM = INBOUND_NUM_PATTERN.matcher(msg);
+            if (inM.find()) {
+                inboundNumGate.hit();
+                attrs.putIfAbsent("callerNumber", inM.group(1));  // 呼入主叫
+            }
         }
 
-        Matcher agentM = INTERNAL_AGENT_PATTERN.matcher(msg);
-        if (agentM.find()) {
-            attrs.putIfAbsent("agentId", agentM.group(1));     // 内部分机/坐席
+        if (internalAgentGate.test(msg)) {
+            Matcher agentM = INTERNAL_AGENT_PATTERN.matcher(msg);
+            if (agentM.find()) {
+                internalAgentGate.hit();
+                attrs.putIfAbsent("agentId", agentM.group(1));     // 内部分机/坐席
+            }
         }
 
         // DTMF
@@ -161,12 +288,14 @@ public class FreeSwitchLogAdapter {
             case DTMF -> {
                 String digit = null;
 
+                // 走到这里的消息必然含 "dtmf"，DTMF_PATTERN 不需要再过滤
                 Matcher m1 = DTMF_PATTERN.matcher(msg);
                 if (m1.find()) {
                     digit = m1.group(1);
-                } else {
+                } else if (digitsGate.test(msg)) {
                     Matcher m2 = DIGITS_PATTERN.matcher(msg);
                     if (m2.find()) {
+                        digitsGate.hit();
                         digit = m2.group(1);  // 可能是 "3" 或 "33"
                     }
                 }
@@ -179,28 +308,36 @@ public class FreeSwitchLogAdapter {
                 String queueName = null;
                 String rawQueue = null;
 
-                // 1) Queue "office79@default"
-                Matcher qm = QUEUE_PATTERN.matcher(msg);
-                if (qm.find()) {
-                    rawQueue = qm.group(1);
-                }
+                if (queueGate.test(msg)) {
+                    // 1) Queue "office79@default"
+                    Matcher qm = QUEUE_PATTERN.matcher(msg);
+                    if (qm.find()) {
+                        rawQueue = qm.group(1);
+                    }
 
-                // 2) Member ... joining queue office79@default
-                if (rawQueue == null) {
-                    Matcher jm = QUEUE_JOIN_PATTERN.matcher(msg);
-                    if (jm.find()) {
-                        rawQueue = jm.group(1);
+                    // 2) Member ... joining queue office79@default
+                    if (rawQueue == null) {
+                        Matcher jm = QUEUE_JOIN_PATTERN.matcher(msg);
+                        if (jm.find()) {
+                            rawQueue = jm.group(1);
+                        }
+                    }
+                    if (rawQueue != null) {
+                        queueGate.hit();
                     }
                 }
 
                 // 3) set: callcenter_queue=office79@defaultba75b...
-                Matcher vm = CALLCENTER_QUEUE_VAR_PATTERN.matcher(msg);
-                if (vm.find()) {
-                    // 原始值先放进去，方便排查
-                    String v = vm.group(1);
-                    attrs.put("callcenter_queue", v);
-                    if (rawQueue == null) {
-                        rawQueue = v;
+                if (queueVarGate.test(msg)) {
+                    Matcher vm = CALLCENTER_QUEUE_VAR_PATTERN.matcher(msg);
+                    if (vm.find()) {
+                        queueVarGate.hit();
+                        // 原始值先放进去，方便排查
+                        String v = vm.group(1);
+                        attrs.put("callcenter_queue", v);
+                        if (rawQueue == null) {
+                            rawQueue = v;
+                        }
                     }
                 }
 
@@ -210,20 +347,26 @@ public class FreeSwitchLogAdapter {
                 }
 
                 // 通用 agent 提取
-                Matcher am = AGENT_PATTERN.matcher(msg);
-                if (am.find()) {
-                    attrs.put("agentId", am.group(1));
+                if (agentGate.test(msg)) {
+                    Matcher am = AGENT_PATTERN.matcher(msg);
+                    if (am.find()) {
+                        agentGate.hit();
+                        attrs.put("agentId", am.group(1));
+                    }
                 }
 
                 // bridge 行保留你原来的逻辑
-                Matcher cc = CC_BRIDGE_PATTERN.matcher(msg);
-                if (cc.find()) {
-                    String caller = cc.group(1);
-                    String agent  = cc.group(2);
-
-                    attrs.putIfAbsent("callerNumber", caller);
-                    attrs.put("agentId", agent);
-                    attrs.put("callcenterBridge", "true");
+                if (ccBridgeGate.test(msg)) {
+                    Matcher cc = CC_BRIDGE_PATTERN.matcher(msg);
+                    if (cc.find()) {
+                        ccBridgeGate.hit();
+                        String caller = cc.group(1);
+                        String agent  = cc.group(2);
+
+                        attrs.putIfAbsent("callerNumber", caller);
+                        attrs.put("agentId", agent);
+                        attrs.put("callcenterBridge", "true");
+                    }
                 }
             }
 
@@ -235,7 +378,7 @@ public class FreeSwitchLogAdapter {
         e.setAttrs(attrs);
 
         // 使用策略生成 callId
-        String callId = callIdStrategy.resolve(e);
+        String callId = strategy.resolve(e);
         if (callId == null || callId.isBlank()) {
             callId = "unknown";
         }
@@ -245,65 +388,16 @@ public class FreeSwitchLogAdapter {
     }
 
     private FsEventType classifyEventType(RawEvent raw, Map<String, String> attrs) {
-        String module = Optional.ofNullable(raw.getModule()).orElse("");
-        String msg = Optional.ofNullable(raw.getMsg()).orElse("");
-
-        String lowerMsg = msg.toLowerCase(Locale.ROOT);
-
-        // 先按最明显的关键字判断
-        if (lowerMsg.contains(" new channel ") || lowerMsg.contains("receive invite")) {
-            // INBOUND / OUTBOUND 大致用 external / internal 区分
-            if (lowerMsg.contains("sofia/external") || lowerMsg.contains("external/")) {
-                attrs.put("direction", "inbound");
-                return FsEventType.INVITE_INBOUND;
-            } else {
-                attrs.put("direction", "outbound");
-                return FsEventType.INVITE_OUTBOUND;
-            }
-        }
-
-        if (lowerMsg.contains("answer") && !lowerMsg.contains("hangup")) {
-            return FsEventType.ANSWER;
-        }
-
-        if (lowerMsg.contains("hangup") || lowerMsg.contains("channel destroy")) {
-            return FsEventType.HANGUP;
-        }
-
-        if (lowerMsg.contains("execute extension") || lowerMsg.contains("execute app")) {
-            return FsEventType.DIALPLAN_ACTION;
-        }
-
-        if (module.toLowerCase(Locale.ROOT).contains("mod_callcenter")
-                || lowerMsg.contains("callcenter::")
-                || lowerMsg.contains(" joining queue ")
-                || lowerMsg.contains(" leaving queue ")
-                || lowerMsg.contains(" callcenter_queue=")) {
-            return FsEventType.CALLCENTER_EVENT;
-        }
-
-
-        if (lowerMsg.contains("bridge") && lowerMsg.contains("uuid")) {
-            return FsEventType.BRIDGE;
-        }
-
-        if (lowerMsg.contains("dtmf")) {
-            return FsEventType.DTMF;
+        // 关键字规则已编译成自动机，整条消息只扫描一遍
+        FsEventType type = CLASSIFIER.classify(raw.getModule(), raw.getMsg());
+
+        // INBOUND / OUTBOUND 大致用 external / internal 区分
+        if (type == FsEventType.INVITE_INBOUND) {
+            attrs.put("direction", "inbound");
+        } else if (type == FsEventType.INVITE_OUTBOUND) {
+            attrs.put("direction", "outbound");
         }
-
-        if (lowerMsg.contains("http") && lowerMsg.contains("url")) {
-            return FsEventType.HTTP_REQUEST;
-        }
-
-        if (lowerMsg.contains("lua ") || lowerMsg.contains("python ") || lowerMsg.contains("script")) {
-            return FsEventType.SCRIPT_EXEC;
-        }
-
-        if (lowerMsg.contains("rtcp") || lowerMsg.contains("rtp ")) {
-            return FsEventType.RTP_EVENT;
-        }
-
-        return FsEventType.OTHER;
+        return type;
     }
 
     private String classifyCategory(FsEventType type) {
@@ -0,0 +1,279 @@
+package com.fscallflow.analyzer.parser;
+
+import com.fscallflow.analyzer.model.FsEventType;
+
+import java.util.*;
+
+/**
+ * 事件类型分类器。
+ *
+ * 规则表里出现的所有关键字被编译成一个大小写不敏感的 Aho-Corasick 自动机，
+ * 每条消息只扫描一遍，得到“命中了哪些关键字”的位图；
+ * 再按规则表顺序逐条比对位图，第一条满足的规则决定 FsEventType（优先级与规则顺序一致）。
+ *
+ * 新增签名只需要往规则表里加一行，扫描成本与规则条数无关。
+ * 以 "module:" 开头的关键字匹配的是模块名而不是消息文本。
+ *
+ * 构建完成后只读，线程安全。
+ */
+public final class FsEventClassifier {
+
+    /** 匹配模块名的关键字前缀 */
+    public static final String MODULE_PREFIX = "module:";
+
+    /**
+     * 默认规则表，顺序即优先级。
+     * 关键字里的前后空格是有意义的（例如 " new channel " 要求两侧都有空格）。
+     */
+    public static final List<Rule> DEFAULT_RULES = List.of(
+            Rule.of(FsEventType.INVITE_INBOUND)
+                    .anyOf(" new channel ", "receive invite")
+                    .anyOf("sofia/external", "external/"),
+            Rule.of(FsEventType.INVITE_OUTBOUND)
+                    .anyOf(" new channel ", "receive invite"),
+            Rule.of(FsEventType.ANSWER)
+                    .anyOf("answer")
+                    .noneOf("hangup"),
+            Rule.of(FsEventType.HANGUP)
+                    .anyOf("hangup", "channel destroy"),
+            Rule.of(FsEventType.DIALPLAN_ACTION)
+                    .anyOf("execute extension", "execute app"),
+            Rule.of(FsEventType.CALLCENTER_EVENT)
+                    .anyOf(MODULE_PREFIX + "mod_callcenter", "callcenter::",
+                            " joining queue ", " leaving queue ", " callcenter_queue="),
+            Rule.of(FsEventType.BRIDGE)
+                    .allOf("bridge", "uuid"),
+            Rule.of(FsEventType.DTMF)
+                    .anyOf("dtmf"),
+            Rule.of(FsEventType.HTTP_REQUEST)
+                    .allOf("http", "url"),
+            Rule.of(FsEventType.SCRIPT_EXEC)
+                    .anyOf("lua ", "python ", "script"),
+            Rule.of(FsEventType.RTP_EVENT)
+                    .anyOf("rtcp", "rtp ")
+    );
+
+    /** 自动机只处理 ASCII；规则关键字也必须是 ASCII */
+    private static final int ALPHABET = 128;
+
+    private final FsEventType[] ruleTypes;
+    private final long[][] ruleGroups;
+    private final long[] ruleExcludes;
+
+    private final Automaton msgAutomaton;
+    private final Automaton moduleAutomaton;
+
+    public FsEventClassifier(List<Rule> rules) {
+        // 给每个不同的关键字分配一个 bit
+        Map<String, Integer> bits = new LinkedHashMap<>();
+        for (Rule r : rules) {
+            r.groups.forEach(g -> g.forEach(k -> bits.putIfAbsent(normalize(k), bits.size())));
+            r.excluded.forEach(k -> bits.putIfAbsent(normalize(k), bits.size()));
+        }
+        if (bits.size() > Long.SIZE) {
+            throw new IllegalArgumentException("关键字过多（最多 64 个）: " + bits.size());
+        }
+
+        ruleTypes = new FsEventType[rules.size()];
+        ruleGroups = new long[rules.size()][];
+        ruleExcludes = new long[rules.size()];
+        for (int i = 0; i < rules.size(); i++) {
+            Rule r = rules.get(i);
+            ruleTypes[i] = r.type;
+            ruleGroups[i] = new long[r.groups.size()];
+            for (int g = 0; g < r.groups.size(); g++) {
+                ruleGroups[i][g] = mask(r.groups.get(g), bits);
+            }
+            ruleExcludes[i] = mask(r.excluded, bits);
+        }
+
+        Map<String, Integer> msgKeywords = new LinkedHashMap<>();
+        Map<String, Integer> moduleKeywords = new LinkedHashMap<>();
+        bits.forEach((k, bit) -> {
+            if (k.startsWith(MODULE_PREFIX)) {
+                moduleKeywords.put(k.substring(MODULE_PREFIX.length()), bit);
+            } else {
+                msgKeywords.put(k, bit);
+            }
+        });
+        msgAutomaton = new Automaton(msgKeywords);
+        moduleAutomaton = new Automaton(moduleKeywords);
+    }
+
+    public static FsEventClassifier defaults() {
+        return new FsEventClassifier(DEFAULT_RULES);
+    }
+
+    /**
+     * 对一行日志分类：模块名和消息各扫描一遍，按规则顺序返回第一条命中的类型。
+     */
+    public FsEventType classify(String module, String msg) {
+        long hits = msgAutomaton.scan(msg);
+        if (moduleAutomaton.size > 1) {
+            hits |= moduleAutomaton.scan(module);
+        }
+
+        for (int i = 0; i < ruleTypes.length; i++) {
+            if ((hits & ruleExcludes[i]) != 0) {
+                continue;
+            }
+            boolean ok = true;
+            for (long g : ruleGroups[i]) {
+                if ((hits & g) == 0) {
+                    ok = false;
+                    break;
+                }
+            }
+            if (ok) {
+                return ruleTypes[i];
+            }
+        }
+        return FsEventType.OTHER;
+    }
+
+    private static long mask(List<String> keywords, Map<String, Integer> bits) {
+        long m = 0;
+        for (String k : keywords) {
+            m |= 1L << bits.get(normalize(k));
+        }
+        return m;
+    }
+
+    private static String normalize(String keyword) {
+        String k = keyword.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < k.length(); i++) {
+            if (k.charAt(i) >= ALPHABET) {
+                throw new IllegalArgumentException("关键字只支持 ASCII: " + keyword);
+            }
+        }
+        if (k.isEmpty() || k.equals(MODULE_PREFIX)) {
+            throw new IllegalArgumentException("关键字不能为空");
+        }
+        return k;
+    }
+
+    /**
+     * 一条分类规则：每个 anyOf 组至少命中一个关键字，且 noneOf 里的关键字一个都没命中。
+     */
+    public static final class Rule {
+        private final FsEventType type;
+        private final List<List<String>> groups = new ArrayList<>();
+        private final List<String> excluded = new ArrayList<>();
+
+        private Rule(FsEventType type) {
+            this.type = type;
+        }
+
+        public static Rule of(FsEventType type) {
+            return new Rule(type);
+        }
+
+        /** 至少命中其中一个 */
+        public Rule anyOf(String... keywords) {
+            groups.add(List.of(keywords));
+            return this;
+        }
+
+        /** 每一个都要命中 */
+        public Rule allOf(String... keywords) {
+            for (String k : keywords) {
+                groups.add(List.of(k));
+            }
+            return this;
+        }
+
+        /** 一个都不能命中 */
+        public Rule noneOf(String... keywords) {
+            excluded.addAll(List.of(keywords));
+            return this;
+        }
+    }
+
+    /**
+     * 完全展开的 Aho-Corasick 自动机：delta 为 ASCII 上的完整转移表，
+     * out[state] 为该状态（含 fail 链）上所有关键字的 bit。
+     */
+    private static final class Automaton {
+        private final int[] delta;
+        private final long[] out;
+        private final int size;
+
+        Automaton(Map<String, Integer> keywords) {
+            // 1) trie
+            List<int[]> next = new ArrayList<>();
+            List<Long> outs = new ArrayList<>();
+            next.add(newRow());
+            outs.add(0L);
+            for (Map.Entry<String, Integer> kw : keywords.entrySet()) {
+                int s = 0;
+                for (char c : kw.getKey().toCharArray()) {
+                    if (next.get(s)[c] <= 0) {
+                        next.get(s)[c] = next.size();
+                        next.add(newRow());
+                        outs.add(0L);
+                    }
+                    s = next.get(s)[c];
+                }
+                outs.set(s, outs.get(s) | (1L << kw.getValue()));
+            }
+
+            // 2) BFS 计算 fail，同时把缺失的转移补成 fail 的转移
+            size = next.size();
+            delta = new int[size * ALPHABET];
+            out = new long[size];
+            int[] fail = new int[size];
+            Deque<Integer> queue = new ArrayDeque<>();
+            for (int c = 0; c < ALPHABET; c++) {
+                int t = next.get(0)[c];
+                if (t > 0) {
+                    delta[c] = t;
+                    queue.add(t);
+                }
+            }
+            out[0] = outs.get(0);
+            while (!queue.isEmpty()) {
+                int s = queue.poll();
+                out[s] = outs.get(s) | out[fail[s]];
+                for (int c = 0; c < ALPHABET; c++) {
+                    int t = next.get(s)[c];
+                    if (t > 0) {
+                        fail[t] = delta[fail[s] * ALPHABET + c];
+                        delta[s * ALPHABET + c] = t;
+                        queue.add(t);
+                    } else {
+                        delta[s * ALPHABET + c] = delta[fail[s] * ALPHABET + c];
+                    }
+                }
+            }
+        }
+
+        private static int[] newRow() {
+            return new int[ALPHABET];
+        }
+
+        /** 扫描一遍文本，返回命中关键字的位图；大小写不敏感 */
+        long scan(String text) {
+            if (text == null) {
+                return 0;
+            }
+            long hits = 0;
+            int s = 0;
+            for (int i = 0, n = text.length(); i < n; i++) {
+                char c = text.charAt(i);
+                if (c >= 'A' && c <= 'Z') {
+                    c += 'a' - 'A';
+                } else if (c >= ALPHABET) {
+                    c = Character.toLowerCase(c);
+                    if (c >= ALPHABET) {
+                        // 关键字都是 ASCII，非 ASCII 字符只会让匹配回到根
+                        s = 0;
+                        continue;
+                    }
+                }
+                s = delta[s * ALPHABET + c];
+                hits |= out[s];
+            }
+            return hits;
+        }
+    }
+}
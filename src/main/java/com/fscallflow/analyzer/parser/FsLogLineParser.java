@@ -1,11 +1,12 @@
 package com.fscallflow.analyzer.parser;
 
 import com.fscallflow.analyzer.model.RawEvent;
+import com.fscallflow.analyzer.model.UnifiedEvent;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -51,26 +52,65 @@ public class FsLogLineParser {
                     "[^\\s]+)"       // 无引号value
     );
 
-    /** 支持多种时间格式，按优先级尝试解析 */
-    private static final List<DateTimeFormatter> TS_FORMATTERS = new ArrayList<>() {{
-        add(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS"));  // 6位微秒
-        add(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS"));     // 3位毫秒
-        add(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));          // 无毫秒
-    }};
+    /** 非标准格式行里，任意位置的时间片段（如2025-10-23 17:27:09） */
+    private static final Pattern LOOSE_TS_PATTERN = Pattern.compile(
+            "\\b\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}(?:\\.\\d{1,6})?\\b"
+    );
+
+    /** 常见日志级别，命中时直接复用常量，不再 substring */
+    private static final String[] KNOWN_LEVELS = {
+            "DEBUG", "INFO", "NOTICE", "WARNING", "ERR", "CRIT", "ALERT", "CONSOLE", "EMERG"
+    };
+
+    /** scanHeader 的三种结论 */
+    private static final int SCAN_OK = 0;       // 已解析出各字段偏移
+    private static final int SCAN_REJECT = 1;   // LOG_PATTERN 一定匹配不上，直接走非标准格式
+    private static final int SCAN_UNSURE = 2;   // 扫描器拿不准，交给 LOG_PATTERN
+
+    /** 扫描器找到的字段偏移，只有在真正需要时才 substring */
+    private static final class Header {
+        int timeStart;
+        int timeEnd;
+        int levelStart;
+        int levelEnd;
+        int moduleStart;
+        int moduleEnd = -1;
+        int msgStart;
+    }
+
+    /** 时间戳按数字直接解码成 epoch 微秒，时区取 analyzer.log.zone，留空用系统时区 */
+    private final FsTimestampDecoder tsDecoder;
+
+    /**
+     * 模块名去重缓存（直接映射）：同一个模块名在所有行里共用一个 String 实例，命中时不分配。
+     * 并行解析时多线程共用，槽位写入是无锁覆盖，最坏情况只是多 substring 一次。
+     */
+    private final String[] moduleNames = new String[256];
+
+    public FsLogLineParser(@Value("${analyzer.log.zone:}") String zone) {
+        this.tsDecoder = new FsTimestampDecoder(
+                zone == null || zone.isBlank() ? ZoneId.systemDefault() : ZoneId.of(zone.trim()));
+        log.info("FS 日志时区: {}", tsDecoder.zone());
+    }
 
     public RawEvent parse(String line) {
         if (line == null || line.isBlank()) {
             return null;
         }
 
-        Matcher m = LOG_PATTERN.matcher(line);
-        if (m.matches()) {
+        Header h = new Header();
+        int scan = scanHeader(line, h);
+        if (scan == SCAN_OK) {
+            return fromHeader(line, h);
+        }
+
+        Matcher m = scan == SCAN_UNSURE ? LOG_PATTERN.matcher(line) : null;
+        if (m != null && m.matches()) {
             RawEvent ev = new RawEvent();
             ev.setRaw(line);
 
-            // 解析时间戳（多格式尝试）
-            String tsStr = m.group("date") + " " + m.group("time");
-            ev.setTs(parseTimestamp(tsStr));
+            // 解析时间戳
+            ev.setTsMicros(tsDecoder.decode(line, m.start("date"), m.start("time"), m.end("time")));
 
             // 日志级别
             ev.setLevel(m.group("level"));
@@ -110,36 +150,235 @@ public class FsLogLineParser {
         return ev;
     }
 
-    /** 多格式尝试解析时间戳 */
-    private LocalDateTime parseTimestamp(String tsStr) {
-        for (DateTimeFormatter formatter : TS_FORMATTERS) {
-            try {
-                return LocalDateTime.parse(tsStr, formatter);
-            } catch (Exception e) {
-                // 尝试下一种格式
+    /**
+     * 手写的行头扫描器，一遍扫描定位：
+     * 日期 时间 [CPU%] [[线程]] [级别] [模块:行号] 消息
+     *
+     * 接受的范围与 LOG_PATTERN 完全一致（包括两个占有型可选组的行为：
+     * 行头第一个 token 总会被当成 CPU 字段吃掉，紧接着的方括号总会被当成线程 ID），
+     * 这样换成扫描器后解析结果不变，只是大部分行不用再跑正则。
+     */
+    private static int scanHeader(String line, Header h) {
+        final int len = line.length();
+
+        // ---- 日期 yyyy-MM-dd ----
+        if (len < 10
+                || !digits(line, 0, 4) || line.charAt(4) != '-'
+                || !digits(line, 5, 2) || line.charAt(7) != '-'
+                || !digits(line, 8, 2)) {
+            return SCAN_REJECT;
+        }
+        int i = skipSpaces(line, 10);
+        if (i == 10) {
+            return SCAN_REJECT;
+        }
+
+        // ---- 时间 HH:mm:ss[.f{1,6}]，后面必须跟空白 ----
+        h.timeStart = i;
+        if (!digits(line, i, 2) || i + 8 > len
+                || line.charAt(i + 2) != ':' || !digits(line, i + 3, 2)
+                || line.charAt(i + 5) != ':' || !digits(line, i + 6, 2)) {
+            return SCAN_REJECT;
+        }
+        i += 8;
+        if (i < len && line.charAt(i) == '.') {
+            int f = i + 1;
+            while (f < len && isDigit(line.charAt(f))) {
+                f++;
+            }
+            if (f == i + 1 || f - i - 1 > 6) {
+                return SCAN_REJECT;
+            }
+            i = f;
+        }
+        h.timeEnd = i;
+        i = skipSpaces(line, i);
+        if (i == h.timeEnd) {
+            return SCAN_REJECT;
+        }
+
+        // ---- (?:\S+\s+)?+ ：只要第一个 token 后面还有空白，就被当成 CPU 字段 ----
+        int t = skipToken(line, i);
+        if (t > i && t < len) {
+            i = skipSpaces(line, t);
+        }
+
+        // ---- (?:\[.*?\]\s+)?+ ：第一个后面跟空白的 ']' 为止 ----
+        if (i < len && line.charAt(i) == '[') {
+            for (int j = i + 1; j < len; j++) {
+                char c = line.charAt(j);
+                if (isLineTerminator(c)) {
+                    break;
+                }
+                if (c == ']' && j + 1 < len && isSpace(line.charAt(j + 1))) {
+                    i = skipSpaces(line, j + 1);
+                    break;
+                }
+            }
+        }
+
+        // ---- \[(\w+)\]\s+ ----
+        if (i >= len || line.charAt(i) != '[') {
+            return SCAN_REJECT;
+        }
+        int k = i + 1;
+        while (k < len && isWordChar(line.charAt(k))) {
+            k++;
+        }
+        if (k == i + 1 || k + 1 >= len || line.charAt(k) != ']' || !isSpace(line.charAt(k + 1))) {
+            return SCAN_REJECT;
+        }
+        h.levelStart = i + 1;
+        h.levelEnd = k;
+        i = skipSpaces(line, k + 1);
+
+        // ---- (?:([^:]+):(\d+)\s+)?+ ----
+        int colon = line.indexOf(':', i);
+        if (colon > i) {
+            int d = colon + 1;
+            while (d < len && isDigit(line.charAt(d))) {
+                d++;
+            }
+            if (d > colon + 1 && d < len && isSpace(line.charAt(d))) {
+                h.moduleStart = i;
+                h.moduleEnd = colon;
+                i = skipSpaces(line, d);
             }
         }
-        log.debug("无法解析时间戳: {}", tsStr);
-        return null;
+
+        // ---- (.*)$ ：消息里出现行终止符时正则的行为比较绕，交给正则 ----
+        for (int j = i; j < len; j++) {
+            if (isLineTerminator(line.charAt(j))) {
+                return SCAN_UNSURE;
+            }
+        }
+        h.msgStart = i;
+        return SCAN_OK;
+    }
+
+    private RawEvent fromHeader(String line, Header h) {
+        RawEvent ev = new RawEvent();
+        ev.setRaw(line);
+
+        ev.setTsMicros(tsDecoder.decode(line, 0, h.timeStart, h.timeEnd));
+
+        ev.setLevel(levelName(line, h.levelStart, h.levelEnd));
+        if (h.moduleEnd >= 0) {
+            ev.setModule(moduleName(line, h.moduleStart, h.moduleEnd));
+        }
+
+        String msg = line.substring(h.msgStart);
+        ev.setMessage(msg);
+        ev.setMsg(msg);
+
+        extractUuid(line, ev);
+        extractKv(msg, ev);
+
+        return ev;
+    }
+
+    private static String levelName(String line, int start, int end) {
+        int n = end - start;
+        for (String level : KNOWN_LEVELS) {
+            if (level.length() == n && line.regionMatches(start, level, 0, n)) {
+                return level;
+            }
+        }
+        return line.substring(start, end);
+    }
+
+    private String moduleName(String line, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + line.charAt(i);
+        }
+        int slot = (hash ^ (hash >>> 16)) & (moduleNames.length - 1);
+        int n = end - start;
+        String cached = moduleNames[slot];
+        if (cached != null && cached.length() == n && line.regionMatches(start, cached, 0, n)) {
+            return cached;
+        }
+        String name = line.substring(start, end);
+        moduleNames[slot] = name;
+        return name;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /** 与正则 \s 一致的空白判断 */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean digits(String s, int from, int count) {
+        if (count <= 0 || from + count > s.length()) {
+            return false;
+        }
+        for (int k = from; k < from + count; k++) {
+            if (!isDigit(s.charAt(k))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 与正则 \w 一致：[a-zA-Z0-9_] */
+    private static boolean isWordChar(char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    /** 正则 '.' 不匹配的行终止符 */
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static int skipSpaces(String s, int i) {
+        while (i < s.length() && isSpace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipToken(String s, int i) {
+        while (i < s.length() && !isSpace(s.charAt(i))) {
+            i++;
+        }
+        return i;
     }
 
     /** 从原始行中尝试提取时间戳（非标准格式时使用） */
     private void extractTimestampFromRaw(String line, RawEvent ev) {
-        // 简单匹配常见时间格式片段（如2025-10-23 17:27:09）
-        Pattern looseTsPattern = Pattern.compile("\\b\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}(?:\\.\\d{1,6})?\\b");
-        Matcher tsMatcher = looseTsPattern.matcher(line);
+        // 时间片段里日期和时间之间固定一个空格
+        Matcher tsMatcher = LOOSE_TS_PATTERN.matcher(line);
         if (tsMatcher.find()) {
-            String tsStr = tsMatcher.group();
-            ev.setTs(parseTimestamp(tsStr));
+            int start = tsMatcher.start();
+            ev.setTsMicros(tsDecoder.decode(line, start, start + 11, tsMatcher.end()));
         }
     }
 
     /** 提取UUID */
     private void extractUuid(String line, RawEvent ev) {
         Matcher uuidMatcher = UUID_PATTERN.matcher(line);
-        if (uuidMatcher.find()) {
-            ev.setUuid(uuidMatcher.group(1));
+        if (!uuidMatcher.find()) {
+            ev.setUuids(List.of());
+            return;
         }
+        String first = uuidMatcher.group(1);
+        ev.setUuid(first);
+        if (!uuidMatcher.find()) {
+            ev.setUuids(List.of(first));
+            return;
+        }
+
+        // 同一遍扫描把后面引用到的 UUID 也收集起来，关联阶段不用再扫原始行
+        List<String> all = new ArrayList<>(4);
+        all.add(first);
+        do {
+            all.add(uuidMatcher.group(1));
+        } while (uuidMatcher.find());
+        ev.setUuids(all);
     }
 
     /** 提取KV键值对，自动去除引号 */
@@ -0,0 +1,139 @@
+package com.fscallflow.analyzer.parser;
+
+import com.fscallflow.analyzer.model.UnifiedEvent;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+
+/**
+ * 把日志里的 "yyyy-MM-dd HH:mm:ss[.f{1,6}]" 直接按数字解码成 epoch 微秒。
+ *
+ * - 不走 DateTimeFormatter，也不靠异常做格式分支
+ * - 日志时区可配置；按“天”缓存该时区的偏移，同一天内的行不再重复做时区换算
+ * - 当天有夏令时切换时，退回 LocalDateTime.atZone 逐条换算
+ *
+ * 线程安全：缓存是不可变对象 + volatile 引用，并行解析时多线程共用没问题。
+ */
+final class FsTimestampDecoder {
+
+    private static final long MICROS_PER_SECOND = 1_000_000L;
+    private static final int[] FRACTION_SCALE = {0, 100_000, 10_000, 1_000, 100, 10, 1};
+
+    private final ZoneId zone;
+    private final ZoneRules rules;
+
+    /** 最近一次用到的“天”及其偏移 */
+    private volatile DayOffset cached;
+
+    private static final class DayOffset {
+        final int dateKey;          // yyyyMMdd
+        final long dayStartSeconds; // 当天 00:00 的本地秒数（epochDay * 86400）
+        final boolean uniform;      // 当天偏移是否恒定
+        final int offsetSeconds;
+
+        DayOffset(int dateKey, long dayStartSeconds, boolean uniform, int offsetSeconds) {
+            this.dateKey = dateKey;
+            this.dayStartSeconds = dayStartSeconds;
+            this.uniform = uniform;
+            this.offsetSeconds = offsetSeconds;
+        }
+    }
+
+    FsTimestampDecoder(ZoneId zone) {
+        this.zone = zone;
+        this.rules = zone.getRules();
+    }
+
+    ZoneId zone() {
+        return zone;
+    }
+
+    /**
+     * @param s         文本
+     * @param dateStart 日期 yyyy-MM-dd 的起始位置（固定 10 个字符）
+     * @param timeStart 时间 HH:mm:ss 的起始位置
+     * @param timeEnd   时间（含可选小数部分）的结束位置
+     * @return epoch 微秒；格式或取值不合法时返回 {@link UnifiedEvent#NO_TS}
+     */
+    long decode(CharSequence s, int dateStart, int timeStart, int timeEnd) {
+        if (dateStart + 10 > s.length() || timeStart + 8 > timeEnd || timeEnd > s.length()) {
+            return UnifiedEvent.NO_TS;
+        }
+        int year = num(s, dateStart, 4);
+        int month = num(s, dateStart + 5, 2);
+        int day = num(s, dateStart + 8, 2);
+        int hour = num(s, timeStart, 2);
+        int minute = num(s, timeStart + 3, 2);
+        int second = num(s, timeStart + 6, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59
+                || s.charAt(dateStart + 4) != '-' || s.charAt(dateStart + 7) != '-'
+                || s.charAt(timeStart + 2) != ':' || s.charAt(timeStart + 5) != ':') {
+            return UnifiedEvent.NO_TS;
+        }
+
+        // 小数部分 1~6 位，统一换算成微秒
+        int micros = 0;
+        int fracStart = timeStart + 8;
+        if (fracStart < timeEnd) {
+            int fracLen = timeEnd - fracStart - 1;
+            if (s.charAt(fracStart) != '.' || fracLen < 1 || fracLen > 6) {
+                return UnifiedEvent.NO_TS;
+            }
+            int frac = num(s, fracStart + 1, fracLen);
+            if (frac < 0) {
+                return UnifiedEvent.NO_TS;
+            }
+            micros = frac * FRACTION_SCALE[fracLen];
+        }
+
+        DayOffset d = dayOffset(year, month, day);
+        if (d == null) {
+            return UnifiedEvent.NO_TS;
+        }
+        int secondOfDay = hour * 3600 + minute * 60 + second;
+        long epochSeconds;
+        if (d.uniform) {
+            epochSeconds = d.dayStartSeconds + secondOfDay - d.offsetSeconds;
+        } else {
+            epochSeconds = LocalDateTime.of(year, month, day, hour, minute, second)
+                    .atZone(zone)
+                    .toEpochSecond();
+        }
+        return epochSeconds * MICROS_PER_SECOND + micros;
+    }
+
+    private DayOffset dayOffset(int year, int month, int day) {
+        int key = year * 10000 + month * 100 + day;
+        DayOffset d = cached;
+        if (d != null && d.dateKey == key) {
+            return d;
+        }
+        if (day > 28 && day > LocalDate.of(year, month, 1).lengthOfMonth()) {
+            return null;
+        }
+
+        LocalDate date = LocalDate.of(year, month, day);
+        int startOffset = rules.getOffset(date.atStartOfDay()).getTotalSeconds();
+        int endOffset = rules.getOffset(LocalDateTime.of(date, LocalTime.MAX)).getTotalSeconds();
+        d = new DayOffset(key, date.toEpochDay() * 86400L, startOffset == endOffset, startOffset);
+        cached = d;
+        return d;
+    }
+
+    /** 读取 count 位十进制数字，遇到非数字返回 -1 */
+    private static int num(CharSequence s, int from, int count) {
+        int v = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+}
@@ -0,0 +1,91 @@
+package com.fscallflow.analyzer.parser;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 正则前面的字面量过滤：文本里连关键字都没有时，直接跳过对应的正则。
+ *
+ * 关键字比较只忽略 ASCII 大小写，与 Pattern.CASE_INSENSITIVE（未开 UNICODE_CASE）一致，
+ * 所以过滤不会漏掉正则本来能匹配的行。
+ *
+ * 同时统计：检查次数 / 放行次数 / 正则真正命中次数，用来评估过滤效果。
+ * 计数器用 LongAdder，并行解析时多线程共用开销很小。
+ */
+public final class LiteralGate {
+
+    private final String name;
+    private final char[] needle;
+    private final char firstLower;
+    private final char firstUpper;
+
+    private final LongAdder checked = new LongAdder();
+    private final LongAdder passed = new LongAdder();
+    private final LongAdder matched = new LongAdder();
+
+    /**
+     * @param name    统计里显示的名字，一般写被保护的正则
+     * @param literal 正则匹配时必然出现的字面量
+     */
+    public LiteralGate(String name, String literal) {
+        this.name = name;
+        this.needle = literal.toLowerCase(Locale.ROOT).toCharArray();
+        this.firstLower = needle[0];
+        this.firstUpper = Character.toUpperCase(needle[0]);
+    }
+
+    /** 文本中是否含有关键字；返回 false 时调用方可以跳过正则 */
+    public boolean test(String text) {
+        checked.increment();
+        if (text == null || indexOfIgnoreCase(text) < 0) {
+            return false;
+        }
+        passed.increment();
+        return true;
+    }
+
+    /** 放行后正则确实匹配上时调用，只用于统计 */
+    public void hit() {
+        matched.increment();
+    }
+
+    public Stats stats() {
+        return new Stats(name, new String(needle), checked.sum(), passed.sum(), matched.sum());
+    }
+
+    private int indexOfIgnoreCase(String text) {
+        int m = needle.length;
+        int last = text.length() - m;
+        for (int i = 0; i <= last; i++) {
+            char c = text.charAt(i);
+            if (c != firstLower && c != firstUpper) {
+                continue;
+            }
+            int j = 1;
+            while (j < m) {
+                char t = text.charAt(i + j);
+                if (t >= 'A' && t <= 'Z') {
+                    t += 'a' - 'A';
+                }
+                if (t != needle[j]) {
+                    break;
+                }
+                j++;
+            }
+            if (j == m) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 统计快照。
+     *
+     * @param checked 检查次数
+     * @param passed  含关键字、放行给正则的次数
+     * @param matched 正则真正命中的次数
+     */
+    public record Stats(String name, String literal, long checked, long passed, long matched) {
+    }
+}
@@ -0,0 +1,261 @@
+package com.fscallflow.analyzer.parser;
+
+import com.fscallflow.analyzer.correlate.CallIdStrategy;
+import com.fscallflow.analyzer.correlate.EventSource;
+import com.fscallflow.analyzer.model.UnifiedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 多文件 / 压缩包输入：轮转出来的 freeswitch.log、freeswitch.log.1 …，以及它们的 .gz、.tar、.tar.gz。
+ *
+ * - 每个输入按魔数识别：gzip 先解压，解压后（或原本）是 tar 的，每个文件条目落到临时文件各算一条流
+ * - 每条流一个独立线程做解压 + 逐行解析，按批放进有界队列，消费方按需拉取（{@link EventSource}）
+ * - 多条流交给 {@link com.fscallflow.analyzer.correlate.EventMerger} 按时间 k 路归并后再关联，
+ *   跨轮转边界的通话按时间接上
+ *
+ * 每条流必须有自己的线程（k 路归并要同时看到所有流的队头），所以流的条数有上限 maxSources。
+ *
+ * 解析线程读流 / 解压 / 解析出错时，把异常作为最后一批放进队列，消费方取到时在 hasNext 里抛出：
+ * IOException（gzip 截断、tar 损坏、上传中断）包成 UncheckedIOException，其余包成 IllegalStateException，
+ * 不会当成流正常结束、返回读到一半的结果。
+ */
+@Component
+@Slf4j
+public class LogBundleReader {
+
+    /** 每批事件数 */
+    private static final int BATCH = 1024;
+    /** 每条流最多预读的批数 */
+    private static final int QUEUE_BATCHES = 4;
+    private static final List<UnifiedEvent> END = List.of();
+    /** 判断是否 tar 要看的字节数（一个 tar 头） */
+    private static final int TAR_HEADER_BYTES = 512;
+
+    private final FreeSwitchLogAdapter adapter;
+    private final CallIdStrategy callIdStrategy;
+    private final int maxSources;
+
+    public LogBundleReader(FreeSwitchLogAdapter adapter,
+                           CallIdStrategy callIdStrategy,
+                           @Value("${analyzer.ingest.max-sources:32}") int maxSources) {
+        this.adapter = adapter;
+        this.callIdStrategy = callIdStrategy;
+        this.maxSources = maxSources;
+    }
+
+    /**
+     * 打开一个输入：普通 / gzip 文件得到一条流，tar 包里每个文件一条。
+     * 流的解析线程立即启动；调用方用完要关闭返回的每一条流（会删除 tar 条目的临时文件）。
+     *
+     * @param opened 本次已经打开的流数，用于检查上限
+     */
+    public List<EventSource> open(String name, InputStream raw, int opened) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(raw, 64 * 1024);
+        InputStream body = in;
+        if (isGzip(in)) {
+            body = new BufferedInputStream(new GZIPInputStream(in, 64 * 1024), 64 * 1024);
+        }
+
+        body.mark(TAR_HEADER_BYTES);
+        byte[] first = body.readNBytes(TAR_HEADER_BYTES);
+        body.reset();
+        if (!TarReader.looksLikeTar(first, first.length)) {
+            checkLimit(opened + 1);
+            return List.of(start(name, body, null));
+        }
+
+        // tar 只能顺序读，条目先落盘，再各自起线程解析
+        List<EventSource> sources = new ArrayList<>();
+        try (InputStream tarStream = body) {
+            TarReader tar = new TarReader(tarStream);
+            String entry;
+            while ((entry = tar.next()) != null) {
+                checkLimit(opened + sources.size() + 1);
+                Path spool = Files.createTempFile("fs-bundle-", ".log");
+                try (InputStream e = entryBody(tar.entry())) {
+                    Files.copy(e, spool, StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException ex) {
+                    Files.deleteIfExists(spool);
+                    throw ex;
+                }
+                sources.add(start(name + "!" + entry, Files.newInputStream(spool), spool));
+            }
+        } catch (IOException | RuntimeException e) {
+            for (EventSource s : sources) {
+                s.close();
+            }
+            throw e;
+        }
+        log.info("解包 {}: {} 个文件", name, sources.size());
+        return sources;
+    }
+
+    private void checkLimit(int n) {
+        if (n > maxSources) {
+            throw new IllegalArgumentException("输入文件过多（最多 " + maxSources + " 个）");
+        }
+    }
+
+    /** tar 里的条目本身也可能是 .gz（如 freeswitch.log.1.gz） */
+    private static InputStream entryBody(InputStream entry) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(entry, 64 * 1024);
+        return isGzip(in) ? new GZIPInputStream(in, 64 * 1024) : in;
+    }
+
+    private static boolean isGzip(BufferedInputStream in) throws IOException {
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        in.reset();
+        return b1 == 0x1f && b2 == 0x8b;
+    }
+
+    /** 起一个线程解析 in，事件按批放进队列；spool 不为 null 时关闭流后删除 */
+    private EventSource start(String name, InputStream in, Path spool) {
+        Prefetch p = new Prefetch(name, in);
+        Thread t = new Thread(p, "bundle-parse-" + name);
+        t.setDaemon(true);
+        t.start();
+        return new EventSource(name, callIdStrategy, p, () -> {
+            p.closed = true;
+            t.interrupt();
+            try {
+                in.close();
+            } finally {
+                if (spool != null) {
+                    Files.deleteIfExists(spool);
+                }
+            }
+        });
+    }
+
+    /** 一条流的解析线程 + 消费方的迭代器 */
+    private final class Prefetch implements Runnable, Iterator<UnifiedEvent> {
+        final String name;
+        final InputStream in;
+        final BlockingQueue<List<UnifiedEvent>> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        volatile boolean closed;
+
+        /** 解析线程最后放进队列的一批：正常结束为 END，出错时为 Failure */
+        List<UnifiedEvent> end = END;
+
+        List<UnifiedEvent> batch = new ArrayList<>();
+        int pos;
+        boolean done;
+
+        Prefetch(String name, InputStream in) {
+            this.name = name;
+            this.in = in;
+        }
+
+        @Override
+        public void run() {
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                List<UnifiedEvent> out = new ArrayList<>(BATCH);
+                String line;
+                while (!closed && (line = br.readLine()) != null) {
+                    UnifiedEvent e = adapter.parseLine(line);
+                    if (e != null) {
+                        out.add(e);
+                        if (out.size() == BATCH) {
+                            put(out);
+                            out = new ArrayList<>(BATCH);
+                        }
+                    }
+                }
+                if (!out.isEmpty()) {
+                    put(out);
+                }
+            } catch (Exception e) {
+                if (!closed) {
+                    log.error("Error while reading log stream {}", name, e);
+                    end = new Failure(name, e);
+                }
+            } finally {
+                try {
+                    put(end);
+                } catch (InterruptedException ignored) {
+                    // 消费方已经关闭
+                }
+            }
+        }
+
+        /** 队列满时等消费方；消费方关闭后放弃 */
+        private void put(List<UnifiedEvent> b) throws InterruptedException {
+            while (!closed) {
+                if (queue.offer(b, 100, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (pos >= batch.size() && !done) {
+                try {
+                    batch = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    done = true;
+                    throw new IllegalStateException("等待日志流 " + name + " 时被中断", e);
+                }
+                pos = 0;
+                if (batch instanceof Failure f) {
+                    done = true;
+                    throw f.rethrow();
+                }
+                done = batch == END;
+            }
+            return pos < batch.size();
+        }
+
+        @Override
+        public UnifiedEvent next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return batch.get(pos++);
+        }
+    }
+
+    /** 解析线程出错时放进队列的最后一批，带着异常 */
+    private static final class Failure extends AbstractList<UnifiedEvent> {
+        final String name;
+        final Exception cause;
+
+        Failure(String name, Exception cause) {
+            this.name = name;
+            this.cause = cause;
+        }
+
+        RuntimeException rethrow() {
+            if (cause instanceof IOException io) {
+                return new UncheckedIOException("读取日志流 " + name + " 失败: " + io.getMessage(), io);
+            }
+            return new IllegalStateException("解析日志流 " + name + " 失败: " + cause.getMessage(), cause);
+        }
+
+        @Override
+        public UnifiedEvent get(int index) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.fscallflow.analyzer.parser;
+
+import com.fscallflow.analyzer.model.UnifiedEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * 大文件并行解析：
+ * - 把日志文件按换行对齐切成若干分片，每个分片用 mmap 读入
+ * - 分片在 ForkJoinPool 上各自做 FsLogLineParser.parse + mapToUnified
+ * - 按分片顺序（也就是原始行顺序）把事件推给 sink
+ *
+ * 同时在途的分片数有上限，内存只和“并行度 × 分片大小”有关，与文件大小无关。
+ * sink 只会在调用方线程上被调用，不需要线程安全。
+ */
+@Component
+@Slf4j
+public class ParallelLogParser {
+
+    /** 每次从 mmap 分片里批量拷出的字节数 */
+    private static final int BLOCK_BYTES = 64 * 1024;
+
+    private final FreeSwitchLogAdapter adapter;
+    private final int parallelism;
+    private final long chunkBytes;
+    private final ForkJoinPool pool;
+
+    public ParallelLogParser(FreeSwitchLogAdapter adapter,
+                             @Value("${analyzer.parse.parallelism:0}") int parallelism,
+                             @Value("${analyzer.parse.chunk-bytes:8388608}") long chunkBytes) {
+        this.adapter = adapter;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        // 单个分片要能被一次 map 下来，这里给个上下限
+        this.chunkBytes = Math.max(BLOCK_BYTES, Math.min(chunkBytes, Integer.MAX_VALUE / 2));
+        this.pool = new ForkJoinPool(this.parallelism);
+    }
+
+    /**
+     * 并行解析整个文件，事件按原始行顺序推给 sink。
+     *
+     * @return 推给 sink 的事件数
+     */
+    public long parse(Path file, Consumer<UnifiedEvent> sink) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<long[]> chunks = split(ch);
+            log.debug("并行解析 {}: {} 个分片, 并行度 {}", file, chunks.size(), parallelism);
+
+            // 最多同时在途 2 × 并行度 个分片，保证 worker 不空转，又不会把整份文件读进内存
+            int window = parallelism * 2;
+            Deque<ForkJoinTask<List<UnifiedEvent>>> inFlight = new ArrayDeque<>();
+            int next = 0;
+            long count = 0;
+
+            try {
+                while (next < chunks.size() || !inFlight.isEmpty()) {
+                    while (next < chunks.size() && inFlight.size() < window) {
+                        long[] c = chunks.get(next++);
+                        inFlight.add(pool.submit(() -> parseChunk(ch, c[0], c[1])));
+                    }
+                    for (UnifiedEvent e : inFlight.poll().join()) {
+                        sink.accept(e);
+                        count++;
+                    }
+                }
+            } finally {
+                // 异常 / 下游中断时，不再等待剩余分片
+                inFlight.forEach(t -> t.cancel(true));
+            }
+            return count;
+        }
+    }
+
+    /** 按 chunkBytes 切分，每个分片的结束位置向后对齐到下一个换行之后 */
+    private List<long[]> split(FileChannel ch) throws IOException {
+        long size = ch.size();
+        List<long[]> chunks = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(start + chunkBytes, size);
+            if (end < size) {
+                end = nextLineStart(ch, end, probe);
+            }
+            chunks.add(new long[]{start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    private long nextLineStart(FileChannel ch, long pos, ByteBuffer probe) throws IOException {
+        long size = ch.size();
+        while (pos < size) {
+            probe.clear();
+            int n = ch.read(probe, pos);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (probe.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    /** 在 worker 线程上解析一个分片 */
+    private List<UnifiedEvent> parseChunk(FileChannel ch, long start, long end) throws IOException {
+        MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        List<UnifiedEvent> out = new ArrayList<>();
+
+        byte[] block = new byte[BLOCK_BYTES];
+        // 跨 block 的半行先攒在这里
+        byte[] carry = new byte[1024];
+        int carryLen = 0;
+
+        while (buf.hasRemaining()) {
+            int n = Math.min(block.length, buf.remaining());
+            buf.get(block, 0, n);
+
+            int from = 0;
+            for (int i = 0; i < n; i++) {
+                if (block[i] != '\n') {
+                    continue;
+                }
+                if (carryLen == 0) {
+                    emit(block, from, i - from, out);
+                } else {
+                    carry = append(carry, carryLen, block, from, i - from);
+                    carryLen += i - from;
+                    emit(carry, 0, carryLen, out);
+                    carryLen = 0;
+                }
+                from = i + 1;
+            }
+            if (from < n) {
+                carry = append(carry, carryLen, block, from, n - from);
+                carryLen += n - from;
+            }
+        }
+        if (carryLen > 0) {
+            emit(carry, 0, carryLen, out);
+        }
+        return out;
+    }
+
+    private void emit(byte[] bytes, int off, int len, List<UnifiedEvent> out) {
+        // 兼容 \r\n 换行
+        if (len > 0 && bytes[off + len - 1] == '\r') {
+            len--;
+        }
+        UnifiedEvent e = adapter.parseLine(new String(bytes, off, len, StandardCharsets.UTF_8));
+        if (e != null) {
+            out.add(e);
+        }
+    }
+
+    private static byte[] append(byte[] dst, int dstLen, byte[] src, int off, int len) {
+        if (dstLen + len > dst.length) {
+            dst = Arrays.copyOf(dst, Math.max(dst.length * 2, dstLen + len));
+        }
+        System.arraycopy(src, off, dst, dstLen, len);
+        return dst;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,155 @@
+package com.fscallflow.analyzer.parser;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 最小化的 tar 读取：只认普通文件，支持 ustar 前缀和 GNU 长文件名（'L'），
+ * 其他类型（目录、链接、pax 头等）直接跳过。够读 tar / tar.gz 打包的轮转日志，不依赖 commons-compress。
+ */
+final class TarReader {
+
+    private static final int BLOCK = 512;
+
+    private final InputStream in;
+    private final byte[] header = new byte[BLOCK];
+    /** 当前条目还没读完的数据字节数 + 补齐到 512 的填充字节数 */
+    private long remaining;
+    private long padding;
+
+    TarReader(InputStream in) {
+        this.in = in;
+    }
+
+    /** 前 512 字节是否像 tar 头（ustar 魔数） */
+    static boolean looksLikeTar(byte[] first, int len) {
+        return len >= 263 && first[257] == 'u' && first[258] == 's' && first[259] == 't'
+                && first[260] == 'a' && first[261] == 'r';
+    }
+
+    /**
+     * 跳到下一个普通文件，返回文件名；没有了返回 null。之后用 {@link #entry()} 读它的内容。
+     */
+    String next() throws IOException {
+        skip(remaining + padding);
+        remaining = padding = 0;
+
+        String longName = null;
+        while (true) {
+            if (!readHeader()) {
+                return null;
+            }
+            long size = octal(header, 124, 12);
+            char type = (char) header[156];
+            if (type == 'L') {
+                byte[] name = in.readNBytes((int) size);
+                skip(pad(size));
+                longName = cstring(name, 0, name.length);
+                continue;
+            }
+            if (type == '0' || type == '\0') {
+                remaining = size;
+                padding = pad(size);
+                if (longName != null) {
+                    return longName;
+                }
+                String name = cstring(header, 0, 100);
+                String prefix = cstring(header, 345, 155);
+                return prefix.isEmpty() ? name : prefix + "/" + name;
+            }
+            skip(size + pad(size));
+            longName = null;
+        }
+    }
+
+    /** 当前文件的内容，读到文件末尾即 EOF；close 不会关闭底层流 */
+    InputStream entry() {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int b = in.read();
+                if (b >= 0) {
+                    remaining--;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int n = in.read(b, off, (int) Math.min(len, remaining));
+                if (n > 0) {
+                    remaining -= n;
+                }
+                return n;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /** 读一个头；遇到全零块（归档结尾）或流结束返回 false */
+    private boolean readHeader() throws IOException {
+        int n = in.readNBytes(header, 0, BLOCK);
+        if (n < BLOCK) {
+            return false;
+        }
+        for (byte b : header) {
+            if (b != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void skip(long n) throws IOException {
+        while (n > 0) {
+            long s = in.skip(n);
+            if (s <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("tar 条目被截断");
+                }
+                s = 1;
+            }
+            n -= s;
+        }
+    }
+
+    private static long pad(long size) {
+        return (BLOCK - size % BLOCK) % BLOCK;
+    }
+
+    private static long octal(byte[] b, int off, int len) {
+        long v = 0;
+        for (int i = off; i < off + len; i++) {
+            byte c = b[i];
+            if (c == 0 || c == ' ') {
+                if (v > 0) break;
+                continue;
+            }
+            if (c < '0' || c > '7') {
+                break;
+            }
+            v = v * 8 + (c - '0');
+        }
+        return v;
+    }
+
+    private static String cstring(byte[] b, int off, int len) {
+        int end = off;
+        while (end < off + len && b[end] != 0) {
+            end++;
+        }
+        return new String(b, off, end - off, StandardCharsets.UTF_8);
+    }
+}
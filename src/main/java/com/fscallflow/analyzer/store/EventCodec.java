@@ -0,0 +1,107 @@
+package com.fscallflow.analyzer.store;
+
+import com.fscallflow.analyzer.model.FsEventType;
+import com.fscallflow.analyzer.model.UnifiedEvent;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UnifiedEvent 的二进制编码，段文件里一条事件一条记录：
+ *
+ * tsMicros(long) | sourceSystem | callId | legId | category | verb | type | raw
+ * | refUuids 个数(int, -1 为 null) + 各字符串 | attrs 个数(int, -1 为 null) + 各 key/value
+ *
+ * 字符串为 int 字节长度（-1 为 null）+ UTF-8 字节。rawRef 不落盘，原始行直接内联。
+ */
+final class EventCodec {
+
+    private static final FsEventType[] TYPES = FsEventType.values();
+
+    private EventCodec() {
+    }
+
+    static void write(DataOutputStream out, UnifiedEvent e) throws IOException {
+        out.writeLong(e.getTsMicros());
+        writeString(out, e.getSourceSystem());
+        writeString(out, e.getCallId());
+        writeString(out, e.getLegId());
+        writeString(out, e.getCategory());
+        writeString(out, e.getVerb());
+        out.writeByte(e.getType() == null ? -1 : e.getType().ordinal());
+        writeString(out, e.getRaw());
+
+        List<String> refs = e.getRefUuids();
+        out.writeInt(refs == null ? -1 : refs.size());
+        if (refs != null) {
+            for (String r : refs) {
+                writeString(out, r);
+            }
+        }
+        Map<String, String> attrs = e.getAttrs();
+        out.writeInt(attrs == null ? -1 : attrs.size());
+        if (attrs != null) {
+            for (Map.Entry<String, String> a : attrs.entrySet()) {
+                writeString(out, a.getKey());
+                writeString(out, a.getValue());
+            }
+        }
+    }
+
+    static UnifiedEvent read(ByteBuffer in) {
+        UnifiedEvent e = new UnifiedEvent();
+        e.setTsMicros(in.getLong());
+        e.setSourceSystem(readString(in));
+        e.setCallId(readString(in));
+        e.setLegId(readString(in));
+        e.setCategory(readString(in));
+        e.setVerb(readString(in));
+        int type = in.get();
+        e.setType(type < 0 || type >= TYPES.length ? null : TYPES[type]);
+        e.setRaw(readString(in));
+
+        int refCount = in.getInt();
+        if (refCount >= 0) {
+            List<String> refs = new ArrayList<>(refCount);
+            for (int i = 0; i < refCount; i++) {
+                refs.add(readString(in));
+            }
+            e.setRefUuids(refs);
+        }
+        int attrCount = in.getInt();
+        if (attrCount >= 0) {
+            Map<String, String> attrs = new LinkedHashMap<>(Math.max(4, attrCount * 2));
+            for (int i = 0; i < attrCount; i++) {
+                attrs.put(readString(in), readString(in));
+            }
+            e.setAttrs(attrs);
+        }
+        return e;
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    static String readString(ByteBuffer in) {
+        int len = in.getInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] b = new byte[len];
+        in.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,108 @@
+package com.fscallflow.analyzer.store;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 持久化的事件段目录：每次分析可以把解析好的 UnifiedEvent 存成一个只追加、提交后不变的段（{@link Segment}），
+ * 之后查同一份日志（按通话下钻、按时间范围重新构图）直接读段，不用重新上传、重新解析。
+ *
+ * 目录结构：dir/段ID/{events.seg, calls.idx, time.idx}；写入中的段在每个写入器独有的
+ * dir/.段ID.tmp-随机后缀/ 下，同 ID 的并发上传互不覆盖，以 . 开头的目录不算段。
+ * 没有配置 analyzer.segments.dir 时不启用。
+ */
+@Component
+@Slf4j
+public class EventSegmentStore {
+
+    private static final Pattern ID_PATTERN = Pattern.compile("[A-Za-z0-9._-]{1,128}");
+
+    private final Path dir;
+
+    public EventSegmentStore(@Value("${analyzer.segments.dir:}") String dir) {
+        this.dir = dir == null || dir.isBlank() ? null : Path.of(dir.trim());
+    }
+
+    public boolean enabled() {
+        return dir != null;
+    }
+
+    public boolean exists(String id) {
+        return enabled() && Files.isDirectory(dir.resolve(checkId(id)));
+    }
+
+    /**
+     * 新建一个段的写入器；同 ID 的段已经存在时抛 IllegalStateException（段提交后不可修改）。
+     */
+    public SegmentWriter create(String id) throws IOException {
+        requireEnabled();
+        Path target = dir.resolve(checkId(id));
+        if (Files.exists(target)) {
+            throw new IllegalStateException("事件段已存在: " + id);
+        }
+        Files.createDirectories(dir);
+        return new SegmentWriter(Files.createTempDirectory(dir, "." + id + ".tmp-"), target);
+    }
+
+    /**
+     * 打开一个已提交的段，用完要 close。
+     *
+     * @throws NoSuchFileException 段不存在
+     */
+    public Segment open(String id) throws IOException {
+        requireEnabled();
+        Path segDir = dir.resolve(checkId(id));
+        if (!Files.isDirectory(segDir)) {
+            throw new NoSuchFileException(segDir.toString());
+        }
+        return new Segment(id, segDir);
+    }
+
+    /** 所有已提交的段，按创建时间从新到旧 */
+    public List<Segment.Info> list() throws IOException {
+        if (!enabled() || !Files.isDirectory(dir)) {
+            return List.of();
+        }
+        List<Segment.Info> infos = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, Files::isDirectory)) {
+            for (Path p : ds) {
+                String id = p.getFileName().toString();
+                if (id.startsWith(".")) {
+                    continue;
+                }
+                try (Segment s = new Segment(id, p)) {
+                    infos.add(s.info());
+                } catch (IOException e) {
+                    log.warn("跳过无法读取的事件段 {}: {}", p, e.getMessage());
+                }
+            }
+        }
+        infos.sort(Comparator.comparingLong(Segment.Info::createdAt).reversed());
+        return infos;
+    }
+
+    /** 段 ID 只允许字母数字和 . _ -，防止路径穿越 */
+    public static String checkId(String id) {
+        if (id == null || !ID_PATTERN.matcher(id).matches() || id.endsWith(".tmp") || id.startsWith(".")) {
+            throw new IllegalArgumentException("非法的事件段 ID: " + id);
+        }
+        return id;
+    }
+
+    private void requireEnabled() {
+        if (!enabled()) {
+            throw new IllegalStateException("没有配置 analyzer.segments.dir，事件段存储未开启");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.fscallflow.analyzer.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 原始日志行的堆外存储：行文本按 UTF-8 追加写进 mmap 的临时文件，事件里只保留一个 long 引用。
+ *
+ * - 引用 = 文件偏移（高 40 位）+ 字节长度（低 24 位），单行超过 16MB 时只保留前 16MB
+ * - 文件按 64MB 分段映射，一行不会跨段，读的时候直接按偏移从映射区拷出来
+ * - 需要看原文（明细、前端展示）时再用 {@link #line(long)} 物化成 String
+ *
+ * 一个实例对应一次分析，写入要在单线程上做；close 时删除临时文件。
+ */
+public final class RawLineStore implements Closeable {
+
+    /** 没有原始行时的引用值 */
+    public static final long NO_REF = -1L;
+
+    private static final int LENGTH_BITS = 24;
+    private static final int MAX_LINE_BYTES = (1 << LENGTH_BITS) - 1;
+    private static final long SEGMENT_BYTES = 64L << 20;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    /** 下一行写入的全局偏移 */
+    private long writePos;
+    private long lines;
+
+    private RawLineStore(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * 在 dir 下建一个临时 spool 文件，dir 为 null 时用系统临时目录。
+     */
+    public static RawLineStore create(Path dir) throws IOException {
+        Path file = dir == null
+                ? Files.createTempFile("fs-raw-", ".spool")
+                : Files.createTempFile(Files.createDirectories(dir), "fs-raw-", ".spool");
+        return new RawLineStore(file);
+    }
+
+    /**
+     * 追加一行，返回引用；line 为 null 时返回 {@link #NO_REF}。
+     */
+    public long append(String line) throws IOException {
+        if (line == null) {
+            return NO_REF;
+        }
+
+        byte[] utf8 = null;
+        int len = line.length();
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) >= 0x80) {
+                utf8 = line.getBytes(StandardCharsets.UTF_8);
+                len = utf8.length;
+                break;
+            }
+        }
+        len = Math.min(len, MAX_LINE_BYTES);
+
+        // 一行不跨段：当前段放不下就从下一段开头写
+        long segStart = writePos - writePos % SEGMENT_BYTES;
+        if (writePos + len > segStart + SEGMENT_BYTES) {
+            writePos = segStart + SEGMENT_BYTES;
+        }
+        MappedByteBuffer seg = segment((int) (writePos / SEGMENT_BYTES));
+        int pos = (int) (writePos % SEGMENT_BYTES);
+
+        if (utf8 != null) {
+            seg.put(pos, utf8, 0, len);
+        } else {
+            for (int i = 0; i < len; i++) {
+                seg.put(pos + i, (byte) line.charAt(i));
+            }
+        }
+
+        long ref = (writePos << LENGTH_BITS) | len;
+        writePos += len;
+        lines++;
+        return ref;
+    }
+
+    /**
+     * 按引用取回原始行；{@link #NO_REF} 返回 null。
+     */
+    public String line(long ref) {
+        if (ref == NO_REF) {
+            return null;
+        }
+        long offset = ref >>> LENGTH_BITS;
+        int len = (int) (ref & MAX_LINE_BYTES);
+        int segIndex = (int) (offset / SEGMENT_BYTES);
+        if (segIndex >= segments.size() || offset + len > writePos) {
+            throw new IllegalArgumentException("无效的原始行引用: " + ref);
+        }
+
+        byte[] bytes = new byte[len];
+        segments.get(segIndex).get((int) (offset % SEGMENT_BYTES), bytes, 0, len);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** 已写入的行数 */
+    public long lineCount() {
+        return lines;
+    }
+
+    /** 当前写入位置（含换段时留下的段尾空洞） */
+    public long byteSize() {
+        return writePos;
+    }
+
+    private MappedByteBuffer segment(int index) throws IOException {
+        while (segments.size() <= index) {
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE,
+                    segments.size() * SEGMENT_BYTES, SEGMENT_BYTES));
+        }
+        return segments.get(index);
+    }
+
+    @Override
+    public void close() throws IOException {
+        segments.clear();
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+}
@@ -0,0 +1,276 @@
+package com.fscallflow.analyzer.store;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fscallflow.analyzer.model.AnalyzeResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 分析结果缓存：key 为上传内容的 SHA-256 + 分析器版本 + 构建标识 + 配置指纹 + 分析模式，
+ * 同一份日志重复上传时直接返回上次的结果。
+ *
+ * - 构建标识默认是构建时间，重新打包后旧结果（包括落盘的）不再命中；CI 可以用 commit id 覆盖
+ * - 配置指纹覆盖会改变结果的配置（hub 阈值、日志时区、分片窗口），改配置重启后不会命中旧结果
+ * - 内存部分按结果序列化后的 JSON 字节数计重，超过 maxBytes 时按 LRU 淘汰
+ * - 配置了 spillDir 时，淘汰下来的结果 gzip 后落盘，内存没命中再查磁盘，命中后放回内存；
+ *   磁盘总量超过 maxDiskBytes 时按最后访问时间删最旧的文件
+ * - 命中的结果是同一组对象，调用方不要修改
+ *
+ * 线程安全：内存 LRU 在锁内维护，序列化和磁盘读写在锁外做。
+ */
+@Component
+@Slf4j
+public class ResultCache {
+
+    private static final TypeReference<List<AnalyzeResult>> RESULTS = new TypeReference<>() {
+    };
+    private static final String SPILL_SUFFIX = ".json.gz";
+
+    private final ObjectMapper mapper;
+    private final String version;
+    private final long maxBytes;
+    private final Path spillDir;
+    private final long maxDiskBytes;
+
+    /** access-order 的 LinkedHashMap，迭代顺序即从最久未用到最近使用 */
+    private final LinkedHashMap<String, Entry> lru = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder spills = new LongAdder();
+
+    public ResultCache(ObjectMapper mapper,
+                       @Value("${analyzer.version:dev}") String version,
+                       @Value("${analyzer.build-id:dev}") String buildId,
+                       @Value("${analyzer.correlate.hub-fanout:32}") int hubFanout,
+                       @Value("${analyzer.correlate.hub-max-events:20000}") int hubMaxEvents,
+                       @Value("${analyzer.log.zone:}") String zone,
+                       @Value("${analyzer.shard.window-ms:900000}") long shardWindowMs,
+                       @Value("${analyzer.shard.margin-ms:600000}") long shardMarginMs,
+                       @Value("${analyzer.cache.max-bytes:268435456}") long maxBytes,
+                       @Value("${analyzer.cache.spill-dir:}") String spillDir,
+                       @Value("${analyzer.cache.max-disk-bytes:2147483648}") long maxDiskBytes) {
+        this.mapper = mapper;
+        String config = "hubFanout=" + hubFanout
+                + ";hubMaxEvents=" + hubMaxEvents
+                + ";zone=" + (zone == null || zone.isBlank() ? ZoneId.systemDefault().getId() : zone.trim())
+                + ";shardWindowMs=" + shardWindowMs
+                + ";shardMarginMs=" + shardMarginMs;
+        this.version = (version + "-" + buildId).replaceAll("[^A-Za-z0-9._-]", "_") + "-" + fingerprint(config);
+        log.info("结果缓存版本: {} ({})", this.version, config);
+        this.maxBytes = maxBytes;
+        this.spillDir = spillDir == null || spillDir.isBlank() ? null : Path.of(spillDir.trim());
+        this.maxDiskBytes = maxDiskBytes;
+    }
+
+    /** 缓存是否启用（max-bytes 为 0 时关闭） */
+    public boolean enabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * @param sha256 上传内容的 SHA-256（十六进制）
+     * @param mode   分析模式，不同模式的结果不能混用
+     */
+    public String key(String sha256, String mode) {
+        return sha256 + "-" + version + "-" + mode;
+    }
+
+    /** 查缓存，没有时返回 null */
+    public List<AnalyzeResult> get(String key) {
+        if (!enabled()) {
+            return null;
+        }
+        synchronized (this) {
+            Entry e = lru.get(key);
+            if (e != null) {
+                hits.increment();
+                return e.results;
+            }
+        }
+
+        List<AnalyzeResult> fromDisk = readSpill(key);
+        if (fromDisk == null) {
+            misses.increment();
+            return null;
+        }
+        diskHits.increment();
+        put(key, fromDisk);
+        return fromDisk;
+    }
+
+    /** 放入缓存；单个结果比整个内存预算还大时只落盘 */
+    public void put(String key, List<AnalyzeResult> results) {
+        if (!enabled()) {
+            return;
+        }
+        long weight;
+        try {
+            // 只要字节数，不必拼出整份 JSON 的 byte[]
+            CountingOutputStream counter = new CountingOutputStream();
+            mapper.writeValue(counter, results);
+            weight = counter.count;
+        } catch (IOException e) {
+            log.warn("结果序列化失败，不缓存: key={}", key, e);
+            return;
+        }
+        if (weight > maxBytes) {
+            spill(key, results);
+            return;
+        }
+
+        List<Map.Entry<String, Entry>> evicted = new ArrayList<>();
+        synchronized (this) {
+            Entry old = lru.put(key, new Entry(results, weight));
+            bytes += weight - (old != null ? old.weight : 0);
+            Iterator<Map.Entry<String, Entry>> it = lru.entrySet().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, Entry> eldest = it.next();
+                if (eldest.getKey().equals(key)) {
+                    continue;
+                }
+                it.remove();
+                bytes -= eldest.getValue().weight;
+                evicted.add(eldest);
+            }
+        }
+        for (Map.Entry<String, Entry> e : evicted) {
+            evictions.increment();
+            spill(e.getKey(), e.getValue().results);
+        }
+    }
+
+    public Stats stats() {
+        synchronized (this) {
+            return new Stats(hits.sum(), diskHits.sum(), misses.sum(), evictions.sum(), spills.sum(),
+                    lru.size(), bytes, maxBytes);
+        }
+    }
+
+    // ===== 磁盘部分 =====
+
+    private void spill(String key, List<AnalyzeResult> results) {
+        if (spillDir == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(spillDir);
+            Path tmp = Files.createTempFile(spillDir, "spill-", ".tmp");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                mapper.writeValue(out, results);
+            }
+            Files.move(tmp, spillFile(key), StandardCopyOption.REPLACE_EXISTING);
+            spills.increment();
+            trimDisk();
+        } catch (IOException e) {
+            log.warn("结果落盘失败: key={}", key, e);
+        }
+    }
+
+    private List<AnalyzeResult> readSpill(String key) {
+        if (spillDir == null) {
+            return null;
+        }
+        Path file = spillFile(key);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            List<AnalyzeResult> results = mapper.readValue(in, RESULTS);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return results;
+        } catch (IOException e) {
+            log.warn("读取落盘结果失败，按未命中处理: {}", file, e);
+            return null;
+        }
+    }
+
+    /** 磁盘超出上限时按最后访问时间删最旧的 */
+    private synchronized void trimDisk() throws IOException {
+        List<Path> files = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(spillDir, "*" + SPILL_SUFFIX)) {
+            for (Path p : ds) {
+                files.add(p);
+                total += Files.size(p);
+            }
+        }
+        if (total <= maxDiskBytes) {
+            return;
+        }
+        files.sort(Comparator.comparingLong(p -> p.toFile().lastModified()));
+        for (Path p : files) {
+            if (total <= maxDiskBytes) {
+                break;
+            }
+            long size = Files.size(p);
+            Files.deleteIfExists(p);
+            total -= size;
+        }
+    }
+
+    private Path spillFile(String key) {
+        return spillDir.resolve(key + SPILL_SUFFIX);
+    }
+
+    /** 配置串的 SHA-256 前 12 位十六进制 */
+    private static String fingerprint(String config) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(config.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 6);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Entry(List<AnalyzeResult> results, long weight) {
+    }
+
+    /** 只计字节数、丢弃内容的输出流 */
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    /**
+     * @param hits      内存命中
+     * @param diskHits  内存没命中、磁盘命中
+     * @param misses    都没命中
+     * @param evictions 内存 LRU 淘汰次数
+     * @param spills    落盘次数
+     */
+    public record Stats(long hits, long diskHits, long misses, long evictions, long spills,
+                        int entries, long bytes, long maxBytes) {
+    }
+}
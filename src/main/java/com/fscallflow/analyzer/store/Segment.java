@@ -0,0 +1,218 @@
+package com.fscallflow.analyzer.store;
+
+import com.fscallflow.analyzer.model.UnifiedEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * 一个已提交的事件段（目录）：
+ *
+ * - events.seg：按通话分组连续存放的事件记录（{@link EventCodec}），只读 mmap，按 256MB 分块懒映射
+ * - calls.idx ：分组索引，按第一条事件时间排序：groupId、时间范围、在 events.seg 里的偏移 / 长度 / 事件数
+ * - time.idx  ：稀疏时间索引，每 {@link #TIME_STRIDE} 个分组一个点，带 lastTs 的前缀最大值，
+ *   按时间范围查分组时先二分跳过整块不可能重叠的分组
+ *
+ * 打开时只读两个索引文件，事件数据按需映射，读一通电话只碰它自己那一段字节。
+ * 一个实例只给一个请求用，不是线程安全的。
+ */
+public final class Segment implements Closeable {
+
+    static final String EVENTS_FILE = "events.seg";
+    static final String CALLS_FILE = "calls.idx";
+    static final String TIME_FILE = "time.idx";
+    static final int EVENTS_MAGIC = 0x46534547;   // "FSEG"
+    static final int CALLS_MAGIC = 0x46534349;    // "FSCI"
+    static final int TIME_MAGIC = 0x46535449;     // "FSTI"
+    static final int FORMAT_VERSION = 1;
+    static final int TIME_STRIDE = 64;
+
+    static final long CHUNK_BYTES = 256L << 20;
+
+    private final String id;
+    /** 分块大小，单次映射的上限 */
+    private final long chunkBytes;
+    private final FileChannel channel;
+    private final long size;
+    private final MappedByteBuffer[] chunks;
+
+    private final long createdAt;
+    private final long events;
+    /** 按 firstTs 排序 */
+    private final List<CallEntry> calls;
+    private final Map<String, CallEntry> byGroup;
+
+    /** 稀疏时间索引：采样点的分组序号和 lastTs 前缀最大值 */
+    private final int[] sampleOrdinal;
+    private final long[] sampleMaxLast;
+
+    Segment(String id, Path dir) throws IOException {
+        this(id, dir, CHUNK_BYTES);
+    }
+
+    /** 指定分块大小，测试用小分块覆盖跨窗口的读取 */
+    Segment(String id, Path dir, long chunkBytes) throws IOException {
+        this.id = id;
+        this.chunkBytes = chunkBytes;
+
+        ByteBuffer idx = ByteBuffer.wrap(Files.readAllBytes(dir.resolve(CALLS_FILE)));
+        check(idx.getInt() == CALLS_MAGIC && idx.getInt() == FORMAT_VERSION, dir, CALLS_FILE);
+        this.createdAt = idx.getLong();
+        this.events = idx.getLong();
+        int n = idx.getInt();
+        List<CallEntry> list = new ArrayList<>(n);
+        Map<String, CallEntry> map = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            CallEntry c = new CallEntry(EventCodec.readString(idx), idx.getLong(), idx.getLong(),
+                    idx.getLong(), idx.getLong(), idx.getInt());
+            list.add(c);
+            map.put(c.groupId(), c);
+        }
+        this.calls = Collections.unmodifiableList(list);
+        this.byGroup = map;
+
+        ByteBuffer time = ByteBuffer.wrap(Files.readAllBytes(dir.resolve(TIME_FILE)));
+        check(time.getInt() == TIME_MAGIC && time.getInt() == TIME_STRIDE, dir, TIME_FILE);
+        int samples = time.getInt();
+        this.sampleOrdinal = new int[samples];
+        this.sampleMaxLast = new long[samples];
+        for (int i = 0; i < samples; i++) {
+            sampleOrdinal[i] = time.getInt();
+            time.getLong();
+            sampleMaxLast[i] = time.getLong();
+        }
+
+        this.channel = FileChannel.open(dir.resolve(EVENTS_FILE), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.chunks = new MappedByteBuffer[(int) ((size + chunkBytes - 1) / chunkBytes)];
+        ByteBuffer head = range(0, 8);
+        check(head.getInt() == EVENTS_MAGIC && head.getInt() == FORMAT_VERSION, dir, EVENTS_FILE);
+    }
+
+    public Info info() {
+        long first = UnifiedEvent.NO_TS;
+        long last = UnifiedEvent.NO_TS;
+        for (CallEntry c : calls) {
+            if (c.firstTs() != UnifiedEvent.NO_TS) {
+                first = first == UnifiedEvent.NO_TS ? c.firstTs() : Math.min(first, c.firstTs());
+            }
+            last = Math.max(last, c.lastTs());
+        }
+        return new Info(id, createdAt, events, calls.size(), first, last, size);
+    }
+
+    /** 全部分组，按第一条事件时间排序 */
+    public List<CallEntry> calls() {
+        return calls;
+    }
+
+    /**
+     * 时间范围 [fromMicros, toMicros] 内有事件的分组（按第一条事件时间排序）。
+     * 没有时间戳的分组不会命中有界的查询。
+     */
+    public List<CallEntry> calls(long fromMicros, long toMicros) {
+        // 最后一个 lastTs 前缀最大值仍小于 from 的采样点之前（含）的分组都不可能重叠
+        int lo = 0;
+        int hi = sampleMaxLast.length - 1;
+        int start = 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sampleMaxLast[mid] < fromMicros) {
+                start = sampleOrdinal[mid] + 1;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        List<CallEntry> hits = new ArrayList<>();
+        for (int i = start; i < calls.size(); i++) {
+            CallEntry c = calls.get(i);
+            if (c.firstTs() > toMicros) {
+                break;
+            }
+            if (c.lastTs() >= fromMicros) {
+                hits.add(c);
+            }
+        }
+        return hits;
+    }
+
+    /** 按分组 ID 查，没有时返回 null */
+    public CallEntry call(String groupId) {
+        return byGroup.get(groupId);
+    }
+
+    /**
+     * 读出一个分组的事件（已按时间排好），只映射这一段。
+     * 一次最多映射 {@link #CHUNK_BYTES}，超过的分组（单次 map 有 2GB 上限）按窗口依次映射，
+     * 记录跨过窗口末尾时从这条记录开头重新映射。
+     */
+    public List<UnifiedEvent> events(CallEntry call) {
+        long end = call.offset() + call.bytes();
+        long base = call.offset();
+        ByteBuffer in = range(base, Math.min(chunkBytes, end - base));
+        List<UnifiedEvent> out = new ArrayList<>(call.events());
+        for (int i = 0; i < call.events(); i++) {
+            int start = in.position();
+            try {
+                out.add(EventCodec.read(in));
+            } catch (BufferUnderflowException e) {
+                base += start;
+                in = range(base, Math.min(chunkBytes, end - base));
+                out.add(EventCodec.read(in));
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /** events.seg 里 [offset, offset + len) 的只读视图；落在一个分块里时复用分块映射 */
+    private ByteBuffer range(long offset, long len) {
+        try {
+            int ci = (int) (offset / chunkBytes);
+            if (offset + len <= (ci + 1) * chunkBytes) {
+                if (chunks[ci] == null) {
+                    long start = ci * chunkBytes;
+                    chunks[ci] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(chunkBytes, size - start));
+                }
+                int pos = (int) (offset - ci * chunkBytes);
+                return chunks[ci].duplicate().position(pos).limit(pos + (int) len).slice();
+            }
+            // 跨分块的范围单独映射
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, len);
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取事件段失败: " + id, e);
+        }
+    }
+
+    private static void check(boolean ok, Path dir, String file) throws IOException {
+        if (!ok) {
+            throw new IOException("不是可识别的事件段文件: " + dir.resolve(file));
+        }
+    }
+
+    /**
+     * @param firstTs 第一条事件的时间（epoch 微秒），没有时间戳时为 NO_TS
+     * @param offset  在 events.seg 里的起始偏移
+     * @param bytes   占用的字节数
+     */
+    public record CallEntry(String groupId, long firstTs, long lastTs, long offset, long bytes, int events) {
+    }
+
+    public record Info(String id, long createdAt, long events, int calls, long firstTs, long lastTs, long bytes) {
+    }
+}
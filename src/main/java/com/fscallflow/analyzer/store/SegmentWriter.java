@@ -0,0 +1,158 @@
+package com.fscallflow.analyzer.store;
+
+import com.fscallflow.analyzer.model.UnifiedEvent;
+
+import java.io.*;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 写一个事件段：按通话分组顺序追加事件，同组事件在文件里连续存放，最后写分组索引和稀疏时间索引。
+ *
+ * 先写到每个写入器独有的临时目录，{@link #commit()} 时整体改名成 id，没 commit 就 close 会删掉半成品；
+ * 同 ID 并发写入时先提交的生效，后提交的抛 FileAlreadyExistsException。
+ * 段一旦提交就不再修改。不是线程安全的。
+ */
+public final class SegmentWriter implements Closeable {
+
+    private final Path tmpDir;
+    private final Path finalDir;
+    private final CountingOutputStream counter;
+    private final DataOutputStream out;
+    private final List<Segment.CallEntry> calls = new ArrayList<>();
+    private long events;
+    private boolean committed;
+
+    SegmentWriter(Path tmpDir, Path finalDir) throws IOException {
+        this.tmpDir = Files.createDirectories(tmpDir);
+        this.finalDir = finalDir;
+        this.counter = new CountingOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmpDir.resolve(Segment.EVENTS_FILE)), 256 * 1024));
+        this.out = new DataOutputStream(counter);
+        out.writeInt(Segment.EVENTS_MAGIC);
+        out.writeInt(Segment.FORMAT_VERSION);
+    }
+
+    /**
+     * 追加一个通话分组，sorted 已按时间排好。
+     * 大分组可以分片连续调用多次（同一个 groupId、片与片之间按时间有序），合并成索引里的一项。
+     */
+    public void add(String groupId, List<UnifiedEvent> sorted) throws IOException {
+        long offset = counter.count;
+        long first = UnifiedEvent.NO_TS;
+        long last = UnifiedEvent.NO_TS;
+        int count = sorted.size();
+        Segment.CallEntry prev = calls.isEmpty() ? null : calls.get(calls.size() - 1);
+        if (prev != null && prev.groupId().equals(groupId) && prev.offset() + prev.bytes() == offset) {
+            calls.remove(calls.size() - 1);
+            offset = prev.offset();
+            first = prev.firstTs();
+            last = prev.lastTs();
+            count += prev.events();
+        }
+        for (UnifiedEvent e : sorted) {
+            EventCodec.write(out, e);
+            long ts = e.getTsMicros();
+            if (ts != UnifiedEvent.NO_TS) {
+                first = first == UnifiedEvent.NO_TS ? ts : Math.min(first, ts);
+                last = Math.max(last, ts);
+            }
+        }
+        calls.add(new Segment.CallEntry(groupId, first, last, offset, counter.count - offset, count));
+        events += sorted.size();
+    }
+
+    /**
+     * 写索引并提交。分组索引按第一条事件的时间排序，稀疏时间索引每 {@link Segment#TIME_STRIDE} 个分组取一个点。
+     */
+    public void commit() throws IOException {
+        out.close();
+        calls.sort(Comparator.comparingLong(Segment.CallEntry::firstTs));
+
+        try (DataOutputStream idx = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(tmpDir.resolve(Segment.CALLS_FILE)), 64 * 1024))) {
+            idx.writeInt(Segment.CALLS_MAGIC);
+            idx.writeInt(Segment.FORMAT_VERSION);
+            idx.writeLong(System.currentTimeMillis());
+            idx.writeLong(events);
+            idx.writeInt(calls.size());
+            for (Segment.CallEntry c : calls) {
+                EventCodec.writeString(idx, c.groupId());
+                idx.writeLong(c.firstTs());
+                idx.writeLong(c.lastTs());
+                idx.writeLong(c.offset());
+                idx.writeLong(c.bytes());
+                idx.writeInt(c.events());
+            }
+        }
+
+        // 稀疏时间索引：(分组序号, 该分组的 firstTs, 0..该分组的 lastTs 前缀最大值)
+        try (DataOutputStream time = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(tmpDir.resolve(Segment.TIME_FILE))))) {
+            time.writeInt(Segment.TIME_MAGIC);
+            time.writeInt(Segment.TIME_STRIDE);
+            int samples = (calls.size() + Segment.TIME_STRIDE - 1) / Segment.TIME_STRIDE;
+            time.writeInt(samples);
+            long maxLast = UnifiedEvent.NO_TS;
+            for (int i = 0; i < calls.size(); i++) {
+                maxLast = Math.max(maxLast, calls.get(i).lastTs());
+                if (i % Segment.TIME_STRIDE == Segment.TIME_STRIDE - 1 || i == calls.size() - 1) {
+                    time.writeInt(i);
+                    time.writeLong(calls.get(i).firstTs());
+                    time.writeLong(maxLast);
+                }
+            }
+        }
+
+        try {
+            Files.move(tmpDir, finalDir, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // 目标已经是个非空目录：同 ID 的段被并发请求抢先提交了（ATOMIC_MOVE 时各平台报的异常类型不一）
+            if (Files.isDirectory(finalDir)) {
+                throw new FileAlreadyExistsException(finalDir.toString());
+            }
+            throw e;
+        }
+        committed = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (committed) {
+            return;
+        }
+        out.close();
+        try (Stream<Path> files = Files.list(tmpDir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(p);
+            }
+        }
+        Files.deleteIfExists(tmpDir);
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
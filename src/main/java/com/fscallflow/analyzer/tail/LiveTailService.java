@@ -0,0 +1,218 @@
+package com.fscallflow.analyzer.tail;
+
+import com.fscallflow.analyzer.correlate.EventCorrelator;
+import com.fscallflow.analyzer.correlate.IncrementalCorrelator;
+import com.fscallflow.analyzer.model.AnalyzeResult;
+import com.fscallflow.analyzer.model.UnifiedEvent;
+import com.fscallflow.analyzer.parser.FreeSwitchLogAdapter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 实时跟读本机的 freeswitch.log：配置了 analyzer.tail.path 时启动一个跟读线程，
+ * 每 pollMs 读一次新追加的行，经 FreeSwitchLogAdapter 解析后喂给 {@link IncrementalCorrelator}，
+ * 结束的通话和进行中通话的最新构图通过 SSE 推给前端。
+ *
+ * - 只读新写入的字节（见 {@link LogFollower}），CPU 开销只和日志增量有关
+ * - 日志安静时按墙上时间流逝推进日志时间，已挂机的通话照样收尾；
+ *   推进量取“上一行的日志时间 + 之后经过的墙上时间”，日志时区配错也不会提前收尾
+ * - 进行中的通话每 progressMs 检查一次，只推有新事件的；大通话按事件数限流（见 IncrementalCorrelator#drainUpdated）
+ * - SSE 发送在单独的发送线程上按顺序做，慢客户端不会卡住跟读线程；
+ *   发送队列满时丢弃新消息并计数，前端下次收到该通话的推送时自然补上
+ *
+ * SSE 事件：call（结束的通话）、progress（进行中的通话）、
+ * removed（推过的进行中通话被并进别的通话或作为噪声丢掉，data 为 {"globalId": ...}）、status（连接时的跟读状态）。
+ */
+@Component
+@Slf4j
+public class LiveTailService {
+
+    /** 发送队列上限（条），超出时丢弃 */
+    private static final int SEND_QUEUE = 10_000;
+
+    private final FreeSwitchLogAdapter adapter;
+    private final EventCorrelator correlator;
+    private final String path;
+    private final long pollMs;
+    private final long progressMs;
+    private final boolean fromStart;
+
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+    private ScheduledExecutorService worker;
+    private ThreadPoolExecutor sender;
+    private LogFollower follower;
+    private IncrementalCorrelator incremental;
+
+    /** 最近一行的日志时间，以及读到它时的墙上时间（毫秒） */
+    private long lastLogTs = UnifiedEvent.NO_TS;
+    private long lastLogWallMs;
+    private long lastProgressMs;
+    private volatile long events;
+    private volatile long droppedSends;
+
+    public LiveTailService(FreeSwitchLogAdapter adapter,
+                           EventCorrelator correlator,
+                           @Value("${analyzer.tail.path:}") String path,
+                           @Value("${analyzer.tail.poll-ms:500}") long pollMs,
+                           @Value("${analyzer.tail.progress-ms:2000}") long progressMs,
+                           @Value("${analyzer.tail.from-start:false}") boolean fromStart) {
+        this.adapter = adapter;
+        this.correlator = correlator;
+        this.path = path == null ? "" : path.trim();
+        this.pollMs = Math.max(50, pollMs);
+        this.progressMs = progressMs;
+        this.fromStart = fromStart;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled()) {
+            return;
+        }
+        follower = new LogFollower(Path.of(path), fromStart);
+        sender = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(SEND_QUEUE),
+                r -> {
+                    Thread t = new Thread(r, "live-tail-sse");
+                    t.setDaemon(true);
+                    return t;
+                },
+                (r, executor) -> {
+                    if (droppedSends++ % 1000 == 0) {
+                        log.warn("实时跟读 SSE 发送队列已满，丢弃推送（累计 {} 条）", droppedSends);
+                    }
+                });
+        incremental = correlator.incremental(r -> broadcast("call", r));
+        incremental.onRetired(label -> broadcast("removed", Map.of("globalId", label)));
+        worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "live-tail");
+            t.setDaemon(true);
+            return t;
+        });
+        worker.scheduleWithFixedDelay(this::tick, 0, pollMs, TimeUnit.MILLISECONDS);
+        log.info("实时跟读已启动: path={}, poll={}ms, fromStart={}", path, pollMs, fromStart);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (worker != null) {
+            worker.shutdownNow();
+        }
+        if (sender != null) {
+            sender.shutdownNow();
+        }
+        if (follower != null) {
+            follower.close();
+        }
+        emitters.forEach(SseEmitter::complete);
+    }
+
+    public boolean enabled() {
+        return !path.isEmpty();
+    }
+
+    /** 新的 SSE 订阅，先推一条 status */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(0L);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+        emitters.add(emitter);
+        try {
+            emitter.send(SseEmitter.event().name("status").data(status(), MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            emitters.remove(emitter);
+        }
+        return emitter;
+    }
+
+    public Status status() {
+        LogFollower f = follower;
+        IncrementalCorrelator inc = incremental;
+        return new Status(enabled(), path,
+                f != null ? f.position() : 0,
+                f != null ? f.bytesRead() : 0,
+                events,
+                inc != null ? inc.emitted() : 0,
+                emitters.size());
+    }
+
+    private void tick() {
+        try {
+            long n = follower.poll(this::onLine);
+            long wall = System.currentTimeMillis();
+            if (n == 0 && lastLogTs != UnifiedEvent.NO_TS) {
+                incremental.advanceTo(lastLogTs + (wall - lastLogWallMs) * 1000L);
+            }
+            if (progressMs > 0 && wall - lastProgressMs >= progressMs && !emitters.isEmpty()) {
+                lastProgressMs = wall;
+                for (AnalyzeResult r : incremental.drainUpdated(wall, progressMs)) {
+                    broadcast("progress", r);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("跟读 {} 失败，下次重新打开: {}", path, e.getMessage());
+            try {
+                follower.close();
+            } catch (IOException ignored) {
+                // 已经出错，关闭失败不影响重开
+            }
+        } catch (RuntimeException e) {
+            log.error("实时跟读处理异常", e);
+        }
+    }
+
+    private void onLine(String line) {
+        UnifiedEvent e = adapter.parseLine(line);
+        if (e == null) {
+            return;
+        }
+        events++;
+        if (e.getTsMicros() != UnifiedEvent.NO_TS) {
+            lastLogTs = e.getTsMicros();
+            lastLogWallMs = System.currentTimeMillis();
+        }
+        incremental.accept(e);
+    }
+
+    /** 交给发送线程推给所有订阅者；跟读线程只负责排队，不等网络 */
+    private void broadcast(String name, Object data) {
+        if (emitters.isEmpty()) {
+            return;
+        }
+        sender.execute(() -> {
+            for (SseEmitter emitter : emitters) {
+                try {
+                    emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+                } catch (IOException | IllegalStateException e) {
+                    emitters.remove(emitter);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param position   当前文件的读取位置
+     * @param bytesRead  启动以来读过的字节数
+     * @param emitted    已结束并推送的通话数
+     */
+    public record Status(boolean enabled, String path, long position, long bytesRead,
+                         long events, long emitted, int subscribers) {
+    }
+}
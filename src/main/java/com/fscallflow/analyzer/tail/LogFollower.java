@@ -0,0 +1,161 @@
+package com.fscallflow.analyzer.tail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * 跟读一个不断追加的日志文件（tail -F）：记住读到的位置，每次 poll 只读新追加的字节，不重读文件。
+ *
+ * - 轮转：路径上的文件身份（inode，取不到时用创建时间）变了，先把旧文件剩下的读完，再从头读新文件
+ * - 截断：文件比已读位置还短（copytruncate），从头开始读
+ * - 不完整的最后一行先缓存，等换行到了再输出
+ *
+ * 不是线程安全的，由一个跟读线程调用。
+ */
+final class LogFollower implements Closeable {
+
+    private final Path path;
+    private final ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+    /** 还没遇到换行的半行 */
+    private final ByteArrayOutputStream partial = new ByteArrayOutputStream(256);
+
+    private FileChannel channel;
+    private Object fileKey;
+    private long position;
+    private boolean fromStart;
+    private long bytesRead;
+
+    /**
+     * @param fromStart 第一次打开时是否从头读；false 时从文件末尾开始，只看之后新写的行
+     */
+    LogFollower(Path path, boolean fromStart) {
+        this.path = path;
+        this.fromStart = fromStart;
+    }
+
+    /**
+     * 读出自上次以来新写入的完整行。
+     *
+     * @return 本次读到的字节数
+     */
+    long poll(Consumer<String> lines) throws IOException {
+        if (channel == null && !open()) {
+            return 0;
+        }
+
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            // 轮转中间：旧文件已改名、新文件还没建，先把旧文件读完
+            return drain(lines);
+        }
+
+        if (!Objects.equals(identity(attrs), fileKey)) {
+            long n = drain(lines);
+            flushPartial(lines);
+            closeChannel();
+            fromStart = true;
+            return open() ? n + drain(lines) : n;
+        }
+        if (channel.size() < position) {
+            position = 0;
+            partial.reset();
+        }
+        return drain(lines);
+    }
+
+    long position() {
+        return position;
+    }
+
+    long bytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeChannel();
+    }
+
+    private boolean open() throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        Object key = identity(Files.readAttributes(path, BasicFileAttributes.class));
+        if (key.equals(fileKey) && position <= channel.size()) {
+            // 读出错后重开的还是同一个文件：接着上次的位置读
+            return true;
+        }
+        fileKey = key;
+        position = fromStart ? 0 : channel.size();
+        partial.reset();
+        return true;
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /** 从 position 读到当前文件末尾，按换行切行 */
+    private long drain(Consumer<String> lines) throws IOException {
+        long total = 0;
+        while (true) {
+            buf.clear();
+            int n = channel.read(buf, position);
+            if (n <= 0) {
+                break;
+            }
+            position += n;
+            total += n;
+            byte[] a = buf.array();
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                if (a[i] == '\n') {
+                    partial.write(a, start, i - start);
+                    emit(lines);
+                    start = i + 1;
+                }
+            }
+            partial.write(a, start, n - start);
+        }
+        bytesRead += total;
+        return total;
+    }
+
+    /** 旧文件最后一行没有换行时，轮转后也要输出 */
+    private void flushPartial(Consumer<String> lines) {
+        if (partial.size() > 0) {
+            emit(lines);
+        }
+    }
+
+    private void emit(Consumer<String> lines) {
+        byte[] b = partial.toByteArray();
+        int len = b.length;
+        if (len > 0 && b[len - 1] == '\r') {
+            len--;
+        }
+        partial.reset();
+        lines.accept(new String(b, 0, len, StandardCharsets.UTF_8));
+    }
+
+    private static Object identity(BasicFileAttributes attrs) {
+        return attrs.fileKey() != null ? attrs.fileKey() : attrs.creationTime();
+    }
+}
@@ -0,0 +1,128 @@
+package com.fscallflow.analyzer.correlate;
+
+import com.fscallflow.analyzer.model.FsEventType;
+import com.fscallflow.analyzer.model.UnifiedEvent;
+import com.fscallflow.analyzer.parser.FreeSwitchLogAdapter;
+import com.fscallflow.analyzer.parser.FsLogLineParser;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * 构图（{@link CallFeatureAccumulator} + Mermaid）的基准：分组和排序在计时之外做好，
+ * 每轮只量 {@link EventCorrelator#toResult(String, List)}，单线程，报告耗时和本线程分配的字节数。
+ *
+ * 不带参数时用合成的通话（INVITE / ANSWER / BRIDGE / DTMF / HANGUP，每通两条腿）；
+ * 给出日志文件时按 FS 日志解析、按 CallJoiner 分组后再量。只用到改动前后都有的接口，
+ * 可以在改动前的提交上跑同一份代码对比。
+ *
+ * 不是单元测试，不随 mvn test 运行，手动跑：
+ * <pre>
+ * mvn -q test-compile
+ * java -cp target/classes:target/test-classes:... com.fscallflow.analyzer.correlate.BuildGraphBench [freeswitch.log | 通话数]
+ * </pre>
+ */
+public final class BuildGraphBench {
+
+    private static final int ROUNDS = 6;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, List<UnifiedEvent>> groups;
+        if (args.length > 0 && Files.isRegularFile(Path.of(args[0]))) {
+            groups = parse(Path.of(args[0]));
+        } else {
+            groups = synthetic(args.length > 0 ? Integer.parseInt(args[0]) : 20_000, 42);
+        }
+        int events = 0;
+        for (List<UnifiedEvent> g : groups.values()) {
+            events += g.size();
+        }
+        System.out.printf("%d 个分组, %d 个事件%n", groups.size(), events);
+
+        EventCorrelator correlator = new EventCorrelator(1);
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        int sink = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            long bytes0 = mx.getThreadAllocatedBytes(tid);
+            long t0 = System.nanoTime();
+            for (Map.Entry<String, List<UnifiedEvent>> g : groups.entrySet()) {
+                sink += correlator.toResult(g.getKey(), g.getValue()).getGraph().getEdges().size();
+            }
+            long ms = (System.nanoTime() - t0) / 1_000_000;
+            long mb = (mx.getThreadAllocatedBytes(tid) - bytes0) >> 20;
+            System.out.printf("  第 %d 轮 %5d ms, 分配 %4d MB%n", r + 1, ms, mb);
+        }
+        if (sink == 42) {
+            System.out.print("");
+        }
+        correlator.shutdown();
+    }
+
+    /** 解析日志文件并分组，每组按时间排好 */
+    private static Map<String, List<UnifiedEvent>> parse(Path log) throws Exception {
+        FreeSwitchLogAdapter adapter = new FreeSwitchLogAdapter(new FsLogLineParser(""), new DefaultFsCallIdStrategy());
+        CallJoiner joiner = new CallJoiner();
+        try (InputStream in = Files.newInputStream(log)) {
+            adapter.parse(in, joiner);
+        }
+        Map<String, List<UnifiedEvent>> groups = new LinkedHashMap<>();
+        joiner.groups().forEach((id, evts) -> {
+            evts.sort(Comparator.comparingLong(UnifiedEvent::getTsMicros));
+            groups.put(id, evts);
+        });
+        return groups;
+    }
+
+    /** 每通电话两条腿，一条呼入一条呼出，中间几个按键（含重复日志） */
+    private static Map<String, List<UnifiedEvent>> synthetic(int calls, long seed) {
+        Random rnd = new Random(seed);
+        Map<String, List<UnifiedEvent>> groups = new LinkedHashMap<>();
+        long ts = 1_700_000_000_000_000L;
+        for (int c = 0; c < calls; c++) {
+            String a = uuid(rnd);
+            String b = uuid(rnd);
+            String caller = String.valueOf(13_800_000_000L + rnd.nextInt(100_000_000));
+            String callee = String.valueOf(1000 + rnd.nextInt(9000));
+            List<UnifiedEvent> g = new ArrayList<>();
+            g.add(event(a, FsEventType.INVITE_INBOUND, ts += 1000, Map.of("callerNumber", caller, "calleeNumber", callee)));
+            for (int i = 0; i < 6; i++) {
+                g.add(event(a, FsEventType.DIALPLAN_STEP, ts += 500, Map.of()));
+            }
+            g.add(event(a, FsEventType.CALLCENTER_EVENT, ts += 1000, Map.of("queueName", "q" + (c % 8) + "@default")));
+            g.add(event(b, FsEventType.INVITE_OUTBOUND, ts += 1000, Map.of("agentId", callee)));
+            g.add(event(b, FsEventType.ANSWER, ts += 3_000_000, Map.of()));
+            g.add(event(a, FsEventType.BRIDGE, ts += 1000, Map.of()));
+            int digits = rnd.nextInt(6);
+            for (int i = 0; i < digits; i++) {
+                String digit = String.valueOf(rnd.nextInt(10));
+                g.add(event(a, FsEventType.DTMF, ts += 800_000, Map.of("digit", digit)));
+                g.add(event(a, FsEventType.DTMF, ts += 20_000, Map.of("digit", digit)));
+            }
+            g.add(event(b, FsEventType.HANGUP, ts += 60_000_000, Map.of()));
+            g.add(event(a, FsEventType.HANGUP, ts += 1000, Map.of()));
+            groups.put(a, g);
+        }
+        return groups;
+    }
+
+    private static UnifiedEvent event(String leg, FsEventType type, long tsMicros, Map<String, String> attrs) {
+        UnifiedEvent e = new UnifiedEvent();
+        e.setLegId(leg);
+        e.setType(type);
+        e.setTsMicros(tsMicros);
+        e.setSourceSystem("FS");
+        e.setAttrs(new LinkedHashMap<>(attrs));
+        e.setRaw(type + " " + leg);
+        return e;
+    }
+
+    private static String uuid(Random rnd) {
+        String h = String.format("%016x%016x", rnd.nextLong(), rnd.nextLong());
+        return h.substring(0, 8) + "-" + h.substring(8, 12) + "-" + h.substring(12, 16)
+                + "-" + h.substring(16, 20) + "-" + h.substring(20, 32);
+    }
+}
@@ -0,0 +1,224 @@
+package com.fscallflow.analyzer.correlate;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+/**
+ * CallJoiner 并查集的对比基准：基线的 HashMap&lt;String, String&gt; + 递归 find，
+ * 对比现在的 {@link SymbolTable} + {@link CallJoiner.Dsu}（按秩合并、迭代路径减半）。
+ *
+ * 两边喂同样的、预先提取好的 key（legId / SIP Call-ID / 引用 UUID）。每轮开始前（不计时）
+ * 给每个事件生成新的 String 实例，和解析器每行产出新字符串一致，哈希值不会被上一轮缓存；
+ * 只量 key 登记 + 合并 + 建桶时的 find，不含解析和 EventStore。
+ *
+ * 不是单元测试，不随 mvn test 运行，手动跑：
+ * <pre>
+ * mvn -q test-compile
+ * java -cp target/classes:target/test-classes com.fscallflow.analyzer.correlate.CallJoinerBench [事件数] [通话数]
+ * </pre>
+ */
+public final class CallJoinerBench {
+
+    private static final int ROUNDS = 7;
+
+    public static void main(String[] args) {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int calls = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+
+        Workload typical = typical(events, calls, 42);
+        System.out.printf("典型负载: %d 事件, %d 通话%n", events, calls);
+        long base = best(typical, CallJoinerBench::baseline);
+        long cur = best(typical, CallJoinerBench::current);
+        System.out.printf("  HashMap+递归     %5d ms%n  int+按秩+路径减半 %5d ms  (%+.0f%%)%n",
+                base, cur, (cur - base) * 100.0 / base);
+
+        Workload chain = chain(events);
+        System.out.printf("引用链: 长度 %d%n", events);
+        try {
+            System.out.printf("  HashMap+递归     %5d ms%n", best(chain, CallJoinerBench::baseline));
+        } catch (StackOverflowError e) {
+            System.out.println("  HashMap+递归     StackOverflowError");
+        }
+        System.out.printf("  int+按秩+路径减半 %5d ms%n", best(chain, CallJoinerBench::current));
+    }
+
+    /** 预先提取好的 key；sip[i] / ref[i] 为 null 表示该事件没有 */
+    private record Workload(char[][] leg, char[][] sip, char[][] ref) {
+
+        /** 每个事件一份新的 String，模拟解析器的输出 */
+        Keys materialize() {
+            int n = leg.length;
+            String[] l = new String[n];
+            String[] s = new String[n];
+            String[] r = new String[n];
+            for (int i = 0; i < n; i++) {
+                l[i] = fresh(leg[i]);
+                s[i] = fresh(sip[i]);
+                r[i] = fresh(ref[i]);
+            }
+            return new Keys(l, s, r);
+        }
+    }
+
+    private record Keys(String[] leg, String[] sip, String[] ref) {
+    }
+
+    /** 每通电话两条腿共用一个 SIP Call-ID，其中约一成事件在行里引用另一条腿 */
+    private static Workload typical(int events, int calls, long seed) {
+        Random rnd = new Random(seed);
+        char[][] legA = new char[calls][];
+        char[][] legB = new char[calls][];
+        char[][] sipOf = new char[calls][];
+        for (int c = 0; c < calls; c++) {
+            legA[c] = uuid(rnd).toCharArray();
+            legB[c] = uuid(rnd).toCharArray();
+            sipOf[c] = (Long.toHexString(rnd.nextLong()) + "@10.0.0." + (c & 0xff)).toCharArray();
+        }
+        char[][] leg = new char[events][];
+        char[][] sip = new char[events][];
+        char[][] ref = new char[events][];
+        for (int i = 0; i < events; i++) {
+            int c = rnd.nextInt(calls);
+            boolean a = rnd.nextBoolean();
+            leg[i] = a ? legA[c] : legB[c];
+            int kind = rnd.nextInt(10);
+            if (kind < 2) {
+                sip[i] = sipOf[c];
+            } else if (kind == 2) {
+                ref[i] = a ? legB[c] : legA[c];
+            }
+        }
+        return new Workload(leg, sip, ref);
+    }
+
+    /** 第 i+1 条腿引用第 i 条腿，基线的父指针连成一条长链，整条链最后合成一组 */
+    private static Workload chain(int events) {
+        Random rnd = new Random(7);
+        char[][] uuids = new char[events + 1][];
+        for (int i = 0; i <= events; i++) {
+            uuids[i] = uuid(rnd).toCharArray();
+        }
+        char[][] leg = new char[events][];
+        char[][] ref = new char[events][];
+        for (int i = 0; i < events; i++) {
+            leg[i] = uuids[i + 1];
+            ref[i] = uuids[i];
+        }
+        return new Workload(leg, new char[events][], ref);
+    }
+
+    private static String uuid(Random rnd) {
+        String h = String.format("%016x%016x", rnd.nextLong(), rnd.nextLong());
+        return h.substring(0, 8) + "-" + h.substring(8, 12) + "-" + h.substring(12, 16)
+                + "-" + h.substring(16, 20) + "-" + h.substring(20, 32);
+    }
+
+    private static String fresh(char[] key) {
+        return key == null ? null : new String(key);
+    }
+
+    // ===== 基线：与改动前 CallJoiner 的两轮合并 + 建桶相同 =====
+
+    private static int baseline(Keys w) {
+        Map<String, String> parent = new HashMap<>();
+        int n = w.leg().length;
+        for (int i = 0; i < n; i++) {
+            String leg = w.leg()[i];
+            String sip = w.sip()[i];
+            find(parent, leg);
+            if (sip != null) {
+                find(parent, sip);
+                union(parent, leg, sip);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            String ref = w.ref()[i];
+            if (ref != null) {
+                union(parent, w.leg()[i], ref);
+            }
+        }
+        Map<String, Integer> buckets = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            buckets.merge(find(parent, w.leg()[i]), 1, Integer::sum);
+        }
+        return buckets.size();
+    }
+
+    private static String find(Map<String, String> parent, String x) {
+        String p = parent.get(x);
+        if (p == null) {
+            parent.put(x, x);
+            return x;
+        }
+        if (p.equals(x)) {
+            return x;
+        }
+        String r = find(parent, p);
+        parent.put(x, r);
+        return r;
+    }
+
+    private static void union(Map<String, String> parent, String a, String b) {
+        String ra = find(parent, a);
+        String rb = find(parent, b);
+        if (!ra.equals(rb)) {
+            parent.put(rb, ra);
+        }
+    }
+
+    // ===== 现在：符号表 + int 并查集，合并先记下来建桶时重放 =====
+
+    private static int current(Keys w) {
+        SymbolTable symbols = new SymbolTable();
+        CallJoiner.Dsu dsu = new CallJoiner.Dsu();
+        int n = w.leg().length;
+        int[] legs = new int[n];
+        int[] opA = new int[n];
+        int[] opB = new int[n];
+        int ops = 0;
+        for (int i = 0; i < n; i++) {
+            int leg = symbols.intern(w.leg()[i]);
+            legs[i] = leg;
+            int sip = symbols.intern(w.sip()[i]);
+            if (sip != SymbolTable.NONE) {
+                opA[ops] = leg;
+                opB[ops++] = sip;
+            }
+            String ref = w.ref()[i];
+            if (ref != null) {
+                opA[ops] = leg;
+                opB[ops++] = ~symbols.intern(ref);
+            }
+        }
+        dsu.ensure(symbols.size() - 1);
+        for (int i = 0; i < ops; i++) {
+            if (opB[i] >= 0) dsu.union(opA[i], opB[i]);
+        }
+        for (int i = 0; i < ops; i++) {
+            if (opB[i] < 0) dsu.union(opA[i], ~opB[i]);
+        }
+        int[] count = new int[symbols.size()];
+        int groups = 0;
+        for (int i = 0; i < n; i++) {
+            if (count[dsu.find(legs[i])]++ == 0) groups++;
+        }
+        return groups;
+    }
+
+    private static long best(Workload w, ToIntFunction<Keys> run) {
+        long best = Long.MAX_VALUE;
+        int sink = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            Keys keys = w.materialize();
+            long t0 = System.nanoTime();
+            sink += run.applyAsInt(keys);
+            best = Math.min(best, (System.nanoTime() - t0) / 1_000_000);
+        }
+        if (sink == 42) {
+            System.out.print("");
+        }
+        return best;
+    }
+}
@@ -0,0 +1,96 @@
+package com.fscallflow.analyzer.correlate;
+
+import com.fscallflow.analyzer.model.AnalyzeResult;
+import com.fscallflow.analyzer.model.FsEventType;
+import com.fscallflow.analyzer.model.HubUuid;
+import com.fscallflow.analyzer.model.UnifiedEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * hub UUID 识别：批量的 CallJoiner 和增量的 IncrementalCorrelator 要得到同样的分组。
+ */
+class HubDetectionTest {
+
+    static final String HUB = "ffffffff-0000-0000-0000-000000000000";
+    static final int HUB_FANOUT = 32;
+    static final long HUB_MAX_EVENTS = 20000;
+
+    /**
+     * lua 脚本 / 录音会话：hub 自己是 leg，它的日志行带上各通电话的 UUID。
+     */
+    @Test
+    void legSideHubIsDetected() {
+        List<UnifiedEvent> events = new ArrayList<>();
+        long ts = 1_000_000;
+        for (int i = 0; i < 200; i++) {
+            String call = uuid("bbbbbbbb", i);
+            events.add(event(call, FsEventType.INVITE_INBOUND, ts += 1000));
+            events.add(event(HUB, FsEventType.OTHER, ts += 1000, call));
+            events.add(event(call, FsEventType.HANGUP, ts += 1000));
+        }
+
+        CallJoiner joiner = new CallJoiner(null, HUB_FANOUT, HUB_MAX_EVENTS);
+        events.forEach(joiner);
+        assertEquals(201, joiner.groupRows().size());
+        assertEquals(List.of(HUB), joiner.hubs().stream().map(HubUuid::getUuid).toList());
+        assertEquals(1, joiner.hubsOf(uuid("bbbbbbbb", 7)).size());
+
+        List<AnalyzeResult> results = new ArrayList<>();
+        IncrementalCorrelator incremental = new IncrementalCorrelator(new EventCorrelator(1),
+                5000, 7_200_000, 0, HUB_FANOUT, HUB_MAX_EVENTS, results::add);
+        events.forEach(incremental);
+        incremental.finish();
+        assertEquals(joiner.groupRows().keySet(), groupIds(results));
+    }
+
+    /** 会议 / 录音：很多通电话的 leg 引用同一个 UUID */
+    @Test
+    void referencedHubIsDetected() {
+        List<UnifiedEvent> events = new ArrayList<>();
+        long ts = 1_000_000;
+        events.add(event(HUB, FsEventType.INVITE_INBOUND, ts));
+        for (int i = 0; i < 100; i++) {
+            String call = uuid("bbbbbbbb", i);
+            events.add(event(call, FsEventType.INVITE_INBOUND, ts += 1000));
+            events.add(event(call, FsEventType.OTHER, ts += 1000, HUB));
+            events.add(event(call, FsEventType.HANGUP, ts += 1000));
+        }
+
+        CallJoiner joiner = new CallJoiner(null, HUB_FANOUT, HUB_MAX_EVENTS);
+        events.forEach(joiner);
+        assertEquals(101, joiner.groupRows().size());
+        assertEquals(List.of(HUB), joiner.hubs().stream().map(HubUuid::getUuid).toList());
+
+        List<AnalyzeResult> results = new ArrayList<>();
+        IncrementalCorrelator incremental = new IncrementalCorrelator(new EventCorrelator(1),
+                5000, 7_200_000, 0, HUB_FANOUT, HUB_MAX_EVENTS, results::add);
+        events.forEach(incremental);
+        incremental.finish();
+        assertEquals(joiner.groupRows().keySet(), groupIds(results));
+    }
+
+    static Set<String> groupIds(List<AnalyzeResult> results) {
+        Set<String> ids = new TreeSet<>();
+        results.forEach(r -> ids.add(r.getGraph().getGlobalId()));
+        return ids;
+    }
+
+    static String uuid(String prefix, int i) {
+        return String.format("%s-0000-0000-0000-%012d", prefix, i);
+    }
+
+    static UnifiedEvent event(String leg, FsEventType type, long tsMicros, String... refs) {
+        UnifiedEvent e = new UnifiedEvent();
+        e.setLegId(leg);
+        e.setType(type);
+        e.setTsMicros(tsMicros);
+        e.setSourceSystem("FS");
+        e.setRefUuids(List.of(refs));
+        e.setAttrs(new LinkedHashMap<>());
+        return e;
+    }
+}
@@ -0,0 +1,99 @@
+package com.fscallflow.analyzer.correlate;
+
+import com.fscallflow.analyzer.model.AnalyzeResult;
+import com.fscallflow.analyzer.model.FsEventType;
+import com.fscallflow.analyzer.model.UnifiedEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static com.fscallflow.analyzer.correlate.HubDetectionTest.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 分片关联和不分片的批量关联要得到同样的分组，hub 的引用分散在很多分片里时也一样。
+ */
+class ShardedCorrelatorTest {
+
+    static final long WINDOW_MS = 900_000;
+    static final long MARGIN_MS = 600_000;
+    static final long MINUTE = 60_000_000L;
+
+    /** 60 通电话分散在 3 个小时里引用同一个脚本 UUID，每个分片只看得到几通 */
+    @Test
+    void referencedHubAcrossShards() {
+        List<UnifiedEvent> events = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            long ts = i * 3 * MINUTE;
+            String call = uuid("bbbbbbbb", i);
+            events.add(event(call, FsEventType.INVITE_INBOUND, ts));
+            events.add(event(call, FsEventType.OTHER, ts + 1000, HUB));
+            events.add(event(call, FsEventType.HANGUP, ts + 2000));
+        }
+        assertEquals(60, assertSameAsBatch(events).size());
+    }
+
+    /** lua 脚本自己是 leg，3 个小时里陆续带上各通电话的 UUID */
+    @Test
+    void legSideHubAcrossShards() {
+        List<UnifiedEvent> events = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            long ts = i * 3 * MINUTE;
+            String call = uuid("bbbbbbbb", i);
+            events.add(event(call, FsEventType.INVITE_INBOUND, ts));
+            events.add(event(HUB, FsEventType.OTHER, ts + 1000, call));
+            events.add(event(call, FsEventType.HANGUP, ts + 2000));
+        }
+        assertEquals(61, assertSameAsBatch(events).size());
+    }
+
+    /** 引用数没到阈值的 UUID 照常把通话合成一组，跨了分片也一样 */
+    @Test
+    void sharedUuidBelowThresholdStillJoins() {
+        List<UnifiedEvent> events = new ArrayList<>();
+        String conference = uuid("cccccccc", 0);
+        events.add(event(conference, FsEventType.INVITE_INBOUND, 10 * MINUTE));
+        for (int i = 0; i < 10; i++) {
+            long ts = 10 * MINUTE + i * 3 * MINUTE;
+            String call = uuid("bbbbbbbb", i);
+            events.add(event(call, FsEventType.INVITE_INBOUND, ts));
+            events.add(event(call, FsEventType.OTHER, ts + 1000, conference));
+            events.add(event(call, FsEventType.HANGUP, ts + 2000));
+        }
+        assertEquals(1, assertSameAsBatch(events).size());
+    }
+
+    /** 普通的桥接：A 腿引用 B 腿，B 腿的事件落在下一个分片里 */
+    @Test
+    void bridgeAcrossBoundary() {
+        List<UnifiedEvent> events = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            long ts = 14 * MINUTE + i * 15 * MINUTE;
+            String a = uuid("aaaaaaaa", i);
+            String b = uuid("bbbbbbbb", i);
+            events.add(event(a, FsEventType.INVITE_INBOUND, ts));
+            events.add(event(a, FsEventType.OTHER, ts + 1000, b));
+            events.add(event(b, FsEventType.INVITE_OUTBOUND, ts + 2 * MINUTE));
+            events.add(event(b, FsEventType.HANGUP, ts + 3 * MINUTE));
+            events.add(event(a, FsEventType.HANGUP, ts + 3 * MINUTE + 1000));
+        }
+        assertEquals(20, assertSameAsBatch(events).size());
+    }
+
+    private static Set<String> assertSameAsBatch(List<UnifiedEvent> events) {
+        CallJoiner batch = new CallJoiner(null, HUB_FANOUT, HUB_MAX_EVENTS);
+        events.forEach(batch);
+
+        ShardedCorrelator sharded = new ShardedCorrelator(new EventCorrelator(1), Runnable::run, 1, null,
+                WINDOW_MS, MARGIN_MS, HUB_FANOUT, HUB_MAX_EVENTS);
+        events.forEach(sharded);
+        List<AnalyzeResult> results = sharded.finish();
+
+        Set<String> ids = groupIds(results);
+        assertEquals(batch.groupRows().keySet(), ids);
+        assertEquals(ids.size(), results.size());
+        return ids;
+    }
+}
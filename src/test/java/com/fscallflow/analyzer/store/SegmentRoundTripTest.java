@@ -0,0 +1,128 @@
+package com.fscallflow.analyzer.store;
+
+import com.fscallflow.analyzer.model.FsEventType;
+import com.fscallflow.analyzer.model.UnifiedEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 事件段写进去再读出来要逐字段一致：用 4KB 的小分块，让大分组跨好几个映射窗口、记录跨窗口末尾。
+ */
+class SegmentRoundTripTest {
+
+    static final long CHUNK = 4096;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void groupsLargerThanAChunkReadBack() throws Exception {
+        Map<String, List<UnifiedEvent>> groups = new LinkedHashMap<>();
+        groups.put("small-1", events("small-1", 3, 1_000_000, 40));
+        // 约 300 字节一条，200 条远超一个分块
+        groups.put("big", events("big", 200, 2_000_000, 200));
+        groups.put("small-2", events("small-2", 5, 3_000_000, 10));
+        // 大分组分两片写入，合成索引里的一项
+        List<UnifiedEvent> sliced = events("sliced", 120, 4_000_000, 150);
+        groups.put("sliced", sliced);
+
+        try (SegmentWriter writer = new SegmentWriter(dir.resolve(".s.tmp"), dir.resolve("s"))) {
+            for (Map.Entry<String, List<UnifiedEvent>> g : groups.entrySet()) {
+                if (g.getKey().equals("sliced")) {
+                    writer.add("sliced", sliced.subList(0, 70));
+                    writer.add("sliced", sliced.subList(70, sliced.size()));
+                } else {
+                    writer.add(g.getKey(), g.getValue());
+                }
+            }
+            writer.commit();
+        }
+
+        try (Segment segment = new Segment("s", dir.resolve("s"), CHUNK)) {
+            assertEquals(groups.size(), segment.calls().size());
+            boolean straddled = false;
+            for (Map.Entry<String, List<UnifiedEvent>> g : groups.entrySet()) {
+                Segment.CallEntry call = segment.call(g.getKey());
+                assertNotNull(call, g.getKey());
+                assertEquals(g.getValue().size(), call.events());
+                straddled |= call.offset() / CHUNK != (call.offset() + call.bytes() - 1) / CHUNK;
+                assertSame(g.getValue(), segment.events(call));
+            }
+            assertTrue(straddled, "至少一个分组要跨过分块边界");
+            assertTrue(segment.call("big").bytes() > 2 * CHUNK);
+        }
+    }
+
+    /** 一条记录跨过第一个读取窗口的末尾：读到一半时从这条记录开头重新映射 */
+    @Test
+    void recordStraddlingWindowEnd() throws Exception {
+        List<UnifiedEvent> events = events("g", 40, 1_000_000, 100);
+        // 分组从文件头 8 字节之后开始，第一个窗口是 [8, 8 + 4096)，确认确实有一条记录横跨窗口末尾
+        long pos = 8;
+        long windowEnd = pos + CHUNK;
+        boolean straddles = false;
+        for (UnifiedEvent e : events) {
+            long end = pos + recordBytes(e);
+            straddles |= pos < windowEnd && end > windowEnd;
+            pos = end;
+        }
+        assertTrue(straddles);
+
+        try (SegmentWriter writer = new SegmentWriter(dir.resolve(".w.tmp"), dir.resolve("w"))) {
+            writer.add("g", events);
+            writer.commit();
+        }
+        try (Segment segment = new Segment("w", dir.resolve("w"), CHUNK)) {
+            Segment.CallEntry call = segment.call("g");
+            assertEquals(pos, call.offset() + call.bytes());
+            assertSame(events, segment.events(call));
+        }
+    }
+
+    private static long recordBytes(UnifiedEvent e) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        EventCodec.write(new DataOutputStream(bytes), e);
+        return bytes.size();
+    }
+
+    private static void assertSame(List<UnifiedEvent> expected, List<UnifiedEvent> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            UnifiedEvent a = expected.get(i);
+            UnifiedEvent b = actual.get(i);
+            assertEquals(a.getTsMicros(), b.getTsMicros());
+            assertEquals(a.getSourceSystem(), b.getSourceSystem());
+            assertEquals(a.getCallId(), b.getCallId());
+            assertEquals(a.getLegId(), b.getLegId());
+            assertEquals(a.getType(), b.getType());
+            assertEquals(a.getRaw(), b.getRaw());
+            assertEquals(a.getRefUuids(), b.getRefUuids());
+            assertEquals(a.getAttrs(), b.getAttrs());
+        }
+    }
+
+    private static List<UnifiedEvent> events(String leg, int n, long ts, int rawChars) {
+        List<UnifiedEvent> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            UnifiedEvent e = new UnifiedEvent();
+            e.setTsMicros(ts + i * 1000L);
+            e.setSourceSystem("FS");
+            e.setCallId(leg + "@sip");
+            e.setLegId(leg);
+            e.setType(FsEventType.values()[i % FsEventType.values().length]);
+            e.setRaw("第" + i + "行 " + "x".repeat(rawChars));
+            e.setRefUuids(i % 3 == 0 ? List.of("ref-" + i) : null);
+            e.setAttrs(i % 2 == 0 ? new LinkedHashMap<>(Map.of("digit", String.valueOf(i % 10))) : null);
+            list.add(e);
+        }
+        return list;
+    }
+}